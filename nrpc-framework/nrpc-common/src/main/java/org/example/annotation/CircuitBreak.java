@@ -0,0 +1,24 @@
+package org.example.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 为单个方法配置熔断参数，小于等于0的项使用全局配置
+ * 熔断器按照服务地址和方法分别创建，一个方法熔断不影响同一地址上的其他方法
+ * @author xiaonaol
+ * @date 2024/12/8
+ **/
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CircuitBreak {
+
+    long windowMillis() default -1;
+    int minRequests() default -1;
+    float errorRate() default -1;
+    long openMillis() default -1;
+    int halfOpenProbes() default -1;
+
+}
@@ -0,0 +1,17 @@
+package org.example.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 使用一致性hash负载均衡时，标注的参数作为hash的key，key相同的调用会落到同一个服务节点上
+ * 可以标注多个参数；方法上没有标注时，按照全局配置的参数下标计算
+ * @author xiaonaol
+ * @date 2025/1/19
+ **/
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface HashKey {
+}
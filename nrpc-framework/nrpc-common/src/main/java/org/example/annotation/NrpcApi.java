@@ -15,4 +15,19 @@ public @interface NrpcApi {
 
     // 分组名称
     String group() default "default";
+
+    // 业务线程模型 pool（有界线程池） virtual（每个请求一个虚拟线程，需要jdk21） inline（直接在io线程中执行）
+    String executor() default "pool";
+
+    // 业务线程数，pool模式下生效
+    int threads() default 64;
+
+    // 等待队列的长度（virtual模式下为最大并发数），超出后请求会被拒绝
+    int queues() default 1024;
+
+    // 权重，发布到注册中心，加权负载均衡时使用
+    int weight() default 100;
+
+    // 预热时间（毫秒），启动后的这段时间内权重从很小线性增长到weight，0表示不预热
+    int warmup() default 600000;
 }
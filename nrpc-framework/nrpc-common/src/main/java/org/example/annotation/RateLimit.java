@@ -0,0 +1,23 @@
+package org.example.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 服务提供方的限流配置，标注在服务实现类上对整个服务生效，标注在方法上对单个方法生效，方法上的优先
+ * 每个调用方（按ip区分）的每个方法使用独立的令牌桶，小于等于0的项使用全局配置
+ * @author xiaonaol
+ * @date 2024/12/8
+ **/
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimit {
+
+    // 桶的容量，即允许的突发请求数
+    int capacity() default -1;
+    // 每秒发放的令牌数
+    double rate() default -1;
+
+}
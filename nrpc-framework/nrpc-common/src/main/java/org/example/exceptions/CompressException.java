@@ -13,5 +13,10 @@ public class CompressException extends RuntimeException {
     }
 
     public CompressException(String message) {
+        super(message);
+    }
+
+    public CompressException(String message, Throwable cause) {
+        super(message, cause);
     }
 }
@@ -13,5 +13,10 @@ public class SerializeException extends RuntimeException {
     }
 
     public SerializeException(String message) {
+        super(message);
+    }
+
+    public SerializeException(String message, Throwable cause) {
+        super(message, cause);
     }
 }
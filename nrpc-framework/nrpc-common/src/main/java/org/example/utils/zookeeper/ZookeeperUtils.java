@@ -128,4 +128,22 @@ public class ZookeeperUtils {
             throw new ZookeeperException(e);
         }
     }
+
+    /**
+     * 查询一个节点的数据
+     * @param zooKeeper zk实例
+     * @param node      节点路径
+     * @return 节点数据，节点不存在时返回null
+     * @author xiaonaol
+     */
+    public static byte[] getData(ZooKeeper zooKeeper, String node, Watcher watcher) {
+        try {
+            return zooKeeper.getData(node, watcher, null);
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        } catch (KeeperException | InterruptedException e) {
+            log.error("获取节点【{}】的数据失败", node);
+            throw new ZookeeperException(e);
+        }
+    }
 }
@@ -7,12 +7,19 @@ import lombok.extern.slf4j.Slf4j;
 import org.example.annotation.NrpcApi;
 import org.example.config.Configuration;
 import org.example.core.HeartbeatDetector;
+import org.example.core.MethodInvoker;
+import org.example.core.ServiceExecutors;
 import org.example.discovery.RegistryConfig;
 import org.example.loadbalancer.LoadBalancer;
+import org.example.netty.NrpcChannelPool;
+import org.example.netty.PendingRequestRegistry;
 import org.example.netty.initializer.NettyServerBootstrapInitializer;
+import org.example.protection.ConcurrencyLimiter;
+import org.example.serialize.TypeAllowlist;
 import org.example.transport.message.NrpcRequest;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetSocketAddress;
 import java.net.URL;
@@ -21,6 +28,10 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 /**
  * @author xiaonaol
  * @date 2024/10/27
@@ -36,15 +47,22 @@ public class NrpcBootstrap {
     // 保存request对象，可以在当前线程中随时获取
     public static final ThreadLocal<NrpcRequest> REQUEST_THREAD_LOCAL = new ThreadLocal<>();
 
+    // 异步调用模式下，保存最近一次调用的future，通过getFuture()获取
+    private static final ThreadLocal<CompletableFuture<?>> FUTURE_THREAD_LOCAL = new ThreadLocal<>();
+
     // 维护已经发布且暴露的服务列表 key -> interface的全限定名
     public static final Map<String, ServiceConfig<?>> SERVERS_LIST = new HashMap<>(16);
 
-    public static final Map<InetSocketAddress, Channel> CHANNEL_CACHE = new ConcurrentHashMap<>(16);
+    // 每个服务提供方地址对应一个连接池
+    public static final Map<InetSocketAddress, NrpcChannelPool> CHANNEL_CACHE = new ConcurrentHashMap<>(16);
+
+    // 每个引用的服务最近一次拉取到的服务列表，多个服务可能共用同一个提供方地址的连接池
+    public static final Map<String, List<InetSocketAddress>> SERVICE_ADDRESS_CACHE = new ConcurrentHashMap<>(16);
 
     public static final TreeMap<Long, Channel> ANSWER_TIME_CHANNEL_CACHE = new TreeMap<>();
 
     // 定义全局的对外挂起的 completableFuture
-    public final static Map<Long, CompletableFuture<Object>> PENDING_QUEST = new ConcurrentHashMap<>(128);
+    public final static PendingRequestRegistry PENDING_QUEST = new PendingRequestRegistry();
 
     private NrpcBootstrap() {
         // 构造启动引导程序，需要做什么
@@ -55,6 +73,26 @@ public class NrpcBootstrap {
         return nrpcBootstrap;
     }
 
+    /**
+     * 异步调用模式下，获取当前线程最近一次调用的future，获取后即清除，线程池中的线程不会一直持有它
+     * @param <T> 调用的返回值类型
+     * @return 调用结果的future，没有调用或已经获取过时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CompletableFuture<T> getFuture() {
+        CompletableFuture<?> future = FUTURE_THREAD_LOCAL.get();
+        FUTURE_THREAD_LOCAL.remove();
+        return (CompletableFuture<T>) future;
+    }
+
+    /**
+     * 异步调用模式下，保存本次调用的future，由代理对象调用
+     * @param future 调用结果的future
+     */
+    public static void setFuture(CompletableFuture<?> future) {
+        FUTURE_THREAD_LOCAL.set(future);
+    }
+
 
     /**
      * 定义当前应用的名字
@@ -101,12 +139,51 @@ public class NrpcBootstrap {
      * @author xiaonaol
      */
     public void publish(ServiceConfig<?> service) {
+        // 一次性解析服务的所有方法，生成调用表
+        service.setMethodInvokers(MethodInvoker.resolve(service.getInterface(), service.getRef()));
+        // 接口中声明的类型才允许反序列化
+        TypeAllowlist.register(service.getInterface());
+
+        // 为服务创建业务线程池，方法调用不在io线程中执行
+        if(service.getExecutor() == null) {
+            service.setExecutor(ServiceExecutors.create(service));
+        }
+
+        // 根据服务耗时自动调整的并发限制
+        if(service.getConcurrencyLimiter() == null && configuration.isConcurrencyLimit()) {
+            service.setConcurrencyLimiter(createConcurrencyLimiter(service));
+        }
+
         // 我们抽象了注册中心的概念，使用注册中心的一个实现完成注册
         configuration.getRegistryConfig().getRegistry().register(service);
 
         SERVERS_LIST.put(service.getInterface().getName(), service);
     }
 
+    /**
+     * 创建服务的并发限制，并通过jmx暴露当前的并发上限
+     * @param service 服务
+     * @return 并发限制
+     */
+    private ConcurrencyLimiter createConcurrencyLimiter(ServiceConfig<?> service) {
+        String serviceName = service.getInterface().getName();
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(serviceName,
+                configuration.getConcurrencyInitialLimit(), configuration.getConcurrencyMinLimit(),
+                configuration.getConcurrencyMaxLimit(), configuration.getConcurrencyTolerance());
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("org.example.nrpc:type=ConcurrencyLimiter,service="
+                    + ObjectName.quote(serviceName));
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+            mBeanServer.registerMBean(concurrencyLimiter, objectName);
+        } catch (JMException e) {
+            log.warn("服务【{}】的并发限制指标注册失败", serviceName, e);
+        }
+        return concurrencyLimiter;
+    }
+
     /**
      * 批量发布
      * @param services 需要发布的服务集合
@@ -129,11 +206,17 @@ public class NrpcBootstrap {
             // 配置Netty服务器
             ServerBootstrap serverBootstrap = NettyServerBootstrapInitializer.getServerBootstrap();
 
-            // 绑定端口
-            ChannelFuture channelFuture = serverBootstrap.bind(configuration.getPort()).sync();
+            // 绑定端口，开启SO_REUSEPORT时同一端口会绑定多次，每个boss线程各自accept
+            List<Channel> serverChannels = new ArrayList<>();
+            for (int i = 0; i < NettyServerBootstrapInitializer.getBindTimes(); i++) {
+                ChannelFuture channelFuture = serverBootstrap.bind(configuration.getPort()).sync();
+                serverChannels.add(channelFuture.channel());
+            }
 
             // 阻塞等待应用关闭
-            channelFuture.channel().closeFuture().sync();
+            for (Channel serverChannel : serverChannels) {
+                serverChannel.closeFuture().sync();
+            }
         } catch (InterruptedException e){
             log.error("服务提供方运行过程中出现错误", e);
         }
@@ -149,6 +232,9 @@ public class NrpcBootstrap {
         // 开启对这个服务的心跳检测
         HeartbeatDetector.detectHeartbeat(reference.getInterface().getName());
 
+        // 接口中声明的类型才允许反序列化
+        TypeAllowlist.register(reference.getInterface());
+
         // 在这个方法里是否可以拿到相关配置项
         // 配置reference，将来调用get方法时，方便生成代理对象
         // 1、reference需要一个注册中心
@@ -167,7 +253,7 @@ public class NrpcBootstrap {
 
     /**
      * 配置压缩类型
-     * @param compressType 压缩类型
+     * @param compressType 压缩类型：none、gzip、lz4、snappy、dict
      */
     public NrpcBootstrap compress(String compressType) {
         configuration.setCompressType(compressType);
@@ -216,6 +302,11 @@ public class NrpcBootstrap {
                 serviceConfig.setInterface(anInterface);
                 serviceConfig.setRef(instance);
                 serviceConfig.setGroup(group);
+                serviceConfig.setExecutorType(nrpcApi.executor());
+                serviceConfig.setThreads(nrpcApi.threads());
+                serviceConfig.setQueues(nrpcApi.queues());
+                serviceConfig.setWeight(nrpcApi.weight());
+                serviceConfig.setWarmup(nrpcApi.warmup());
 
                 if (log.isDebugEnabled()) {
                     log.debug("已经通过包扫描，将服务【{}】发布", anInterface);
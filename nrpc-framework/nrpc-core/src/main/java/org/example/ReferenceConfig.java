@@ -26,6 +26,8 @@ public class ReferenceConfig<T> {
     private Class<T> interfaceRef;
     private Registry registry;
     private String group;
+    // 异步调用模式，方法调用立即返回，结果通过NrpcBootstrap.getFuture()获取
+    private boolean async = false;
 
     public void setInterface(Class<T> interfaceRef) {
         this.interfaceRef = interfaceRef;
@@ -39,7 +41,7 @@ public class ReferenceConfig<T> {
         // 使用动态代理完成了一些工作
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         Class[] classes = new Class[]{interfaceRef};
-        InvocationHandler handler = new RpcConsumerInvocationHandler(registry, interfaceRef, group);
+        InvocationHandler handler = new RpcConsumerInvocationHandler(registry, interfaceRef, group, async);
 
         // 使用动态代理生成代理对象
         Object helloProxy = Proxy.newProxyInstance(classLoader, classes, handler);
@@ -66,4 +68,12 @@ public class ReferenceConfig<T> {
     public void setGroup(String group) {
         this.group = group;
     }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
 }
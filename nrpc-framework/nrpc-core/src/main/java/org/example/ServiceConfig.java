@@ -1,5 +1,12 @@
 package org.example;
 
+import org.example.core.MethodInvoker;
+import org.example.core.ServiceExecutors;
+import org.example.protection.ConcurrencyLimiter;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+
 /**
  * @author xiaonaol
  * @date 2024/10/27
@@ -8,6 +15,23 @@ public class ServiceConfig<T> {
     private Class<?> interfaceProvider;
     private Object ref;
     private String group = "default";
+
+    // 业务线程模型，方法调用不在netty的io线程中执行
+    private String executorType = ServiceExecutors.POOL;
+    private int threads = 64;
+    private int queues = 1024;
+    private Executor executor;
+
+    // 权重和预热时间（毫秒），随服务一起发布到注册中心
+    private int weight = 100;
+    private int warmup = 600000;
+
+    // 方法调用表 方法名 -> 同名的重载方法，发布时生成
+    private Map<String, MethodInvoker[]> methodInvokers;
+
+    // 自适应并发限制，未开启时为null
+    private ConcurrencyLimiter concurrencyLimiter;
+
     public Class<?> getInterface() {
         return interfaceProvider;
     }
@@ -31,4 +55,87 @@ public class ServiceConfig<T> {
     public String getGroup() {
         return group;
     }
+
+    public String getExecutorType() {
+        return executorType;
+    }
+
+    public void setExecutorType(String executorType) {
+        this.executorType = executorType;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueues() {
+        return queues;
+    }
+
+    public void setQueues(int queues) {
+        this.queues = queues;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    public int getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public Map<String, MethodInvoker[]> getMethodInvokers() {
+        return methodInvokers;
+    }
+
+    public void setMethodInvokers(Map<String, MethodInvoker[]> methodInvokers) {
+        this.methodInvokers = methodInvokers;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * 查找方法调用器，按方法名查找后在重载方法中比较参数类型，不需要拼接签名
+     * @param methodName     方法名
+     * @param parametersType 参数类型
+     * @return 调用器，不存在时返回null
+     */
+    public MethodInvoker getMethodInvoker(String methodName, Class<?>[] parametersType) {
+        MethodInvoker[] overloads = methodInvokers == null ? null : methodInvokers.get(methodName);
+        if (overloads == null) {
+            return null;
+        }
+        for (MethodInvoker invoker : overloads) {
+            if (invoker.matches(parametersType)) {
+                return invoker;
+            }
+        }
+        return null;
+    }
 }
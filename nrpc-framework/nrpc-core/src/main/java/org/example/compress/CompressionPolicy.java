@@ -0,0 +1,114 @@
+package org.example.compress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import org.example.NrpcBootstrap;
+import org.example.compress.impl.NoneCompressor;
+import org.example.config.Configuration;
+import org.example.config.ObjectWrapper;
+import org.example.serialize.Serializer;
+import org.example.serialize.SerializerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 决定消息体是否压缩
+ * 1、消息体先不压缩地序列化到byteBuf中，小于阈值的直接发送
+ * 2、超过阈值的压缩一次，压缩结果直接写在原文后面预留的空间里，没有变小就保留原文，变小了再挪到原文的位置
+ * 3、开启自适应时，按照key（请求为接口+方法，响应为返回值类型）统计压缩比，
+ *    压缩比超过配置的上限说明压缩不划算，之后不再压缩，每PROBE_INTERVAL条消息重新试一次
+ * 报文头中的压缩类型由编码器按照返回值回填，解码器总能按照实际的方式解压
+ * @author xiaonaol
+ * @date 2025/1/15
+ **/
+public final class CompressionPolicy {
+
+    private static final int PROBE_INTERVAL = 64;
+    // 压缩比的平滑系数，越大越看重最近的结果
+    private static final double ALPHA = 0.2;
+
+    private static final Map<String, RatioStats> STATS = new ConcurrentHashMap<>(64);
+
+    private CompressionPolicy() {
+    }
+
+    /**
+     * 序列化消息体写入byteBuf，按需压缩
+     * @param byteBuf       目标
+     * @param body          消息体
+     * @param serializeType 序列化方式
+     * @param compressType  期望的压缩方式
+     * @param key           自适应统计的维度
+     * @return 实际使用的压缩方式
+     */
+    public static byte writeBody(ByteBuf byteBuf, Object body, byte serializeType, byte compressType, String key) throws IOException {
+        Serializer serializer = SerializerFactory.getSerializer(serializeType).getImpl();
+        int bodyStart = byteBuf.writerIndex();
+        try (OutputStream outputStream = new ByteBufOutputStream(byteBuf)) {
+            serializer.serialize(body, outputStream);
+        }
+        int length = byteBuf.writerIndex() - bodyStart;
+
+        Configuration configuration = NrpcBootstrap.getInstance().getConfiguration();
+        if (compressType == NoneCompressor.CODE || length < configuration.getCompressThreshold()) {
+            return NoneCompressor.CODE;
+        }
+        RatioStats stats = configuration.isAdaptiveCompress()
+                ? STATS.computeIfAbsent(key, k -> new RatioStats()) : null;
+        if (stats != null && !stats.shouldCompress(configuration.getMaxCompressRatio())) {
+            return NoneCompressor.CODE;
+        }
+
+        ObjectWrapper<Compressor> compressorWrapper = CompressorFactory.getCompressor(compressType);
+        // 在原文后面预留和原文一样大的空间，压缩过程中byteBuf不会扩容，读取原文时内存不会被换掉
+        // 压缩结果不小于原文就没有意义，写满预留空间时直接放弃
+        byteBuf.ensureWritable(length);
+        int compressedStart = bodyStart + length;
+        ByteBuf compressed = byteBuf.slice(compressedStart, length).clear();
+        int compressedLength;
+        try (OutputStream outputStream = compressorWrapper.getImpl().compress(new ByteBufOutputStream(compressed))) {
+            byteBuf.getBytes(bodyStart, outputStream, length);
+        } catch (IndexOutOfBoundsException e) {
+            if (stats != null) {
+                stats.record(1);
+            }
+            return NoneCompressor.CODE;
+        }
+        compressedLength = compressed.writerIndex();
+        if (stats != null) {
+            stats.record((double) compressedLength / length);
+        }
+        if (compressedLength >= length) {
+            return NoneCompressor.CODE;
+        }
+        // 压缩结果比原文短，挪到原文的位置时两段内存不会重叠
+        byteBuf.setBytes(bodyStart, byteBuf, compressedStart, compressedLength);
+        byteBuf.writerIndex(bodyStart + compressedLength);
+        return compressorWrapper.getCode();
+    }
+
+    /**
+     * 一个维度上的压缩比统计，并发更新时丢失个别样本无关紧要
+     */
+    private static final class RatioStats {
+        private volatile double ratio;
+        private final AtomicInteger skipped = new AtomicInteger();
+
+        private boolean shouldCompress(double maxRatio) {
+            if (ratio <= maxRatio) {
+                return true;
+            }
+            // 压缩效果不好，定期重新试一次，数据的特征可能已经变了
+            return skipped.incrementAndGet() % PROBE_INTERVAL == 0;
+        }
+
+        private void record(double sample) {
+            double current = ratio;
+            ratio = current == 0 ? sample : current + ALPHA * (sample - current);
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package org.example.compress;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * @author xiaonaol
  * @date 2024/11/23
@@ -7,4 +13,30 @@ package org.example.compress;
 public interface Compressor {
     byte[] compress(byte[] data);
     byte[] decompress(byte[] data);
+
+    /**
+     * 包装一个输出流，写入其中的数据会被压缩后写到目标流，关闭返回的流即完成压缩
+     * 默认实现适配只实现了字节数组版本的压缩器：先缓冲，关闭时一次性压缩写出
+     * @param outputStream 目标输出流
+     * @return 压缩输出流
+     */
+    default OutputStream compress(OutputStream outputStream) {
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                outputStream.write(compress(toByteArray()));
+                outputStream.close();
+            }
+        };
+    }
+
+    /**
+     * 包装一个输入流，从返回的流中读取到的是解压后的数据
+     * 默认实现适配只实现了字节数组版本的压缩器：先读出全部数据，一次性解压
+     * @param inputStream 源输入流
+     * @return 解压输入流
+     */
+    default InputStream decompress(InputStream inputStream) throws IOException {
+        return new ByteArrayInputStream(decompress(inputStream.readAllBytes()));
+    }
 }
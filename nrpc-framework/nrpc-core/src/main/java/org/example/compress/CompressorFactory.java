@@ -1,6 +1,10 @@
 package org.example.compress;
 
+import org.example.compress.impl.DictionaryCompressor;
 import org.example.compress.impl.GzipCompressor;
+import org.example.compress.impl.Lz4Compressor;
+import org.example.compress.impl.NoneCompressor;
+import org.example.compress.impl.SnappyCompressor;
 import org.example.config.ObjectWrapper;
 
 import java.util.concurrent.ConcurrentHashMap;
@@ -14,9 +18,23 @@ public class CompressorFactory {
     private final static ConcurrentHashMap<Byte, ObjectWrapper<Compressor>> COMPRESSOR_CACHE_CODE = new ConcurrentHashMap<>();
 
     static {
+        ObjectWrapper<Compressor> none = new ObjectWrapper<>(NoneCompressor.CODE, "none", new NoneCompressor());
         ObjectWrapper<Compressor> gzip = new ObjectWrapper<>((byte) 1, "gzip", new GzipCompressor());
+        ObjectWrapper<Compressor> lz4 = new ObjectWrapper<>((byte) 2, "lz4", new Lz4Compressor());
+        ObjectWrapper<Compressor> snappy = new ObjectWrapper<>((byte) 3, "snappy", new SnappyCompressor());
+        ObjectWrapper<Compressor> dict = new ObjectWrapper<>((byte) 4, "dict", new DictionaryCompressor());
+
+        COMPRESSOR_CACHE.put("none", none);
         COMPRESSOR_CACHE.put("gzip", gzip);
+        COMPRESSOR_CACHE.put("lz4", lz4);
+        COMPRESSOR_CACHE.put("snappy", snappy);
+        COMPRESSOR_CACHE.put("dict", dict);
+
+        COMPRESSOR_CACHE_CODE.put(NoneCompressor.CODE, none);
         COMPRESSOR_CACHE_CODE.put((byte) 1, gzip);
+        COMPRESSOR_CACHE_CODE.put((byte) 2, lz4);
+        COMPRESSOR_CACHE_CODE.put((byte) 3, snappy);
+        COMPRESSOR_CACHE_CODE.put((byte) 4, dict);
     }
 
     /**
@@ -33,7 +51,7 @@ public class CompressorFactory {
     }
 
     public static ObjectWrapper<Compressor> getCompressor(byte compressCode) {
-        ObjectWrapper<Compressor> compressorWrapper = COMPRESSOR_CACHE.get(compressCode);
+        ObjectWrapper<Compressor> compressorWrapper = COMPRESSOR_CACHE_CODE.get(compressCode);
         if(compressorWrapper == null) {
             return COMPRESSOR_CACHE_CODE.get((byte) 1);
         }
@@ -0,0 +1,124 @@
+package org.example.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * 从抓取的报文中训练压缩字典
+ * 1、统计每个8字节片段出现在多少条报文中（同一条报文里重复出现只算一次）
+ * 2、把样本数据平均分成若干段，每段中选出片段得分之和最高的一个64字节窗口放入字典，
+ *    选中窗口里的片段得分清零，后面就会优先选择别的内容
+ * 3、得分高的窗口放在字典末尾，离数据更近，引用的距离更短
+ * 离线使用：java org.example.compress.DictionaryTrainer 输出文件 字典大小 报文文件...
+ * @author xiaonaol
+ * @date 2025/1/15
+ **/
+public final class DictionaryTrainer {
+
+    private static final int GRAM_LENGTH = 8;
+    private static final int SEGMENT_LENGTH = 64;
+    // deflate的窗口是32KB，再大的字典也引用不到
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+    // 参与统计的数据上限，避免样本太多时占用过多内存
+    private static final int MAX_SAMPLE_BYTES = 8 * 1024 * 1024;
+
+    private DictionaryTrainer() {
+    }
+
+    /**
+     * @param samples 样本报文（序列化之后、压缩之前的数据）
+     * @param maxSize 字典的最大字节数
+     * @return 字典内容
+     */
+    public static byte[] train(Collection<byte[]> samples, int maxSize) {
+        int size = Math.min(maxSize, MAX_DICTIONARY_SIZE);
+
+        ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        Map<Long, Integer> counts = new HashMap<>(4096);
+        for (byte[] sample : samples) {
+            if (concatenated.size() + sample.length > MAX_SAMPLE_BYTES) {
+                break;
+            }
+            concatenated.writeBytes(sample);
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + GRAM_LENGTH <= sample.length; i++) {
+                long gram = gram(sample, i);
+                if (seen.add(gram)) {
+                    counts.merge(gram, 1, Integer::sum);
+                }
+            }
+        }
+        byte[] data = concatenated.toByteArray();
+        if (data.length < SEGMENT_LENGTH) {
+            return data;
+        }
+
+        int segments = Math.max(1, size / SEGMENT_LENGTH);
+        int epochSize = Math.max(SEGMENT_LENGTH, data.length / segments);
+        int gramsPerSegment = SEGMENT_LENGTH - GRAM_LENGTH + 1;
+        List<int[]> selected = new ArrayList<>();
+        for (int epoch = 0; epoch + SEGMENT_LENGTH <= data.length && selected.size() < segments; epoch += epochSize) {
+            int last = Math.min(epoch + epochSize, data.length) - SEGMENT_LENGTH;
+
+            // 滑动窗口计算每个位置的得分
+            long score = 0;
+            for (int j = 0; j < gramsPerSegment; j++) {
+                score += count(counts, data, epoch + j);
+            }
+            long bestScore = score;
+            int best = epoch;
+            for (int start = epoch + 1; start <= last; start++) {
+                score += count(counts, data, start + gramsPerSegment - 1) - count(counts, data, start - 1);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = start;
+                }
+            }
+            // 只出现在一条报文里的内容对其他报文没有帮助
+            if (bestScore <= gramsPerSegment) {
+                continue;
+            }
+            selected.add(new int[]{best, (int) Math.min(bestScore, Integer.MAX_VALUE)});
+            for (int j = 0; j < gramsPerSegment; j++) {
+                counts.put(gram(data, best + j), 0);
+            }
+        }
+
+        // 得分低的在前，得分高的在后
+        selected.sort(Comparator.comparingInt(segment -> segment[1]));
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(selected.size() * SEGMENT_LENGTH);
+        for (int[] segment : selected) {
+            dictionary.write(data, segment[0], SEGMENT_LENGTH);
+        }
+        return dictionary.toByteArray();
+    }
+
+    private static int count(Map<Long, Integer> counts, byte[] data, int index) {
+        return counts.getOrDefault(gram(data, index), 0);
+    }
+
+    private static long gram(byte[] data, int index) {
+        long gram = 0;
+        for (int i = 0; i < GRAM_LENGTH; i++) {
+            gram = (gram << 8) | (data[index + i] & 0xFF);
+        }
+        return gram;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("用法：DictionaryTrainer 输出文件 字典大小 报文文件...");
+            return;
+        }
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            samples.add(Files.readAllBytes(Path.of(args[i])));
+        }
+        byte[] dictionary = train(samples, Integer.parseInt(args[1]));
+        Files.write(Path.of(args[0]), dictionary);
+        System.out.println("字典已写入【" + args[0] + "】，大小【" + dictionary.length + "】字节");
+    }
+}
@@ -0,0 +1,166 @@
+package org.example.compress.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.NrpcBootstrap;
+import org.example.compress.Compressor;
+import org.example.exceptions.CompressException;
+import org.example.transport.message.MessageFormatConstant;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 带预置字典的deflate压缩，rpc报文里反复出现的类名、字段名、接口名都能从字典中直接引用，小报文也能压得动
+ * 格式：字典版本（1B） + 原始长度（varint） + raw deflate
+ * 字典版本随每条报文发送，解压方按照版本找到同一份字典；版本1为内置字典，其他版本通过
+ * {@link #registerDictionary(int, byte[])} 注册，可以用 {@link org.example.compress.DictionaryTrainer} 从抓取的报文中训练
+ * @author xiaonaol
+ * @date 2025/1/15
+ **/
+@Slf4j
+public class DictionaryCompressor implements Compressor {
+
+    public static final int BUILT_IN_VERSION = 1;
+
+    // 内置字典，越常用的内容越靠后，离数据越近引用越短；内容一旦发布就不能修改，只能新增版本
+    private static final byte[] BUILT_IN_DICTIONARY = ("java.lang.Shortjava.lang.Bytejava.lang.Characterjava.lang.Float"
+            + "java.math.BigDecimaljava.util.Datejava.util.LinkedHashMapjava.util.HashSetjava.util.Set"
+            + "java.lang.Doublejava.lang.Booleanjava.util.Mapjava.util.Listjava.util.HashMapjava.util.ArrayList"
+            + "java.lang.Objectjava.lang.Longjava.lang.Integervoidint"
+            + "{\"@type\":\"\",\"@value\":\"interfaceName\":\"methodName\":\"parametersType\":[\"parametersValue\":["
+            + "\"returnType\":\"java.lang.String\"}"
+            + "C0,org.example.transport.message.RequestPayload"
+            + "interfaceNamemethodNamereturnTypeparametersTypeparametersValue"
+            + "org.example.java.lang.Classname[java.lang.Class[objectjava.lang.String")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final Map<Integer, byte[]> DICTIONARIES = new ConcurrentHashMap<>(8);
+
+    static {
+        DICTIONARIES.put(BUILT_IN_VERSION, BUILT_IN_DICTIONARY);
+    }
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final ThreadLocal<byte[]> CHUNKS = ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
+
+    /**
+     * 注册一个字典，通信的双方需要注册同一份
+     * @param version    字典版本，1到255，1为内置字典
+     * @param dictionary 字典内容
+     */
+    public static void registerDictionary(int version, byte[] dictionary) {
+        if (version <= BUILT_IN_VERSION || version > 255) {
+            throw new CompressException("字典版本必须在2到255之间【" + version + "】");
+        }
+        DICTIONARIES.put(version, dictionary);
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        int version = NrpcBootstrap.getInstance().getConfiguration().getCompressDictionaryVersion();
+        byte[] dictionary = dictionary(version);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length / 2 + 8);
+        baos.write(version);
+        int length = bytes.length;
+        while ((length & ~0x7F) != 0) {
+            baos.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        baos.write(length);
+
+        byte[] chunk = CHUNKS.get();
+        Deflater deflater = ZlibPool.acquireDeflater();
+        try {
+            deflater.setDictionary(dictionary);
+            deflater.setInput(bytes);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int count = deflater.deflate(chunk);
+                baos.write(chunk, 0, count);
+            }
+        } finally {
+            ZlibPool.releaseDeflater(deflater);
+        }
+
+        byte[] result = baos.toByteArray();
+        if (log.isDebugEnabled()) {
+            log.debug("对报文进行压缩长度由【{}】压缩至【{}】", bytes.length, result.length);
+        }
+        return result;
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes.length < 2) {
+            throw new CompressException("字典压缩的报文长度错误【" + bytes.length + "】");
+        }
+        byte[] dictionary = dictionary(bytes[0] & 0xFF);
+        int offset = 1;
+        int originalLength = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (shift > 28 || offset >= bytes.length) {
+                throw new CompressException("字典压缩的报文长度字段错误");
+            }
+            int b = bytes[offset++];
+            originalLength |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        // 原始长度来自对端，分配内存前先确认它是可能的
+        if (originalLength < 0 || originalLength > MessageFormatConstant.MAX_BODY_LENGTH
+                || originalLength > (long) (bytes.length - offset) * GzipCompressor.MAX_DEFLATE_RATIO) {
+            throw new CompressException("字典压缩的报文原始长度错误【" + originalLength + "】");
+        }
+
+        byte[] result = new byte[originalLength];
+        Inflater inflater = ZlibPool.acquireInflater();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            inflater.setDictionary(dictionary);
+            int length = 0;
+            while (length < originalLength) {
+                int count = inflater.inflate(result, length, originalLength - length);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                length += count;
+            }
+            if (length != originalLength) {
+                throw new CompressException("字典压缩的报文解压后的长度与原始长度【" + originalLength + "】不一致");
+            }
+        } catch (DataFormatException e) {
+            log.error("报文解压时发生异常", e);
+            throw new CompressException(e);
+        } finally {
+            ZlibPool.releaseInflater(inflater);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("对报文进行了解压长度由【{}】变为【{}】", bytes.length, result.length);
+        }
+        return result;
+    }
+
+    /**
+     * @param version 字典版本
+     * @return 是否注册了这个版本的字典
+     */
+    public static boolean hasDictionary(int version) {
+        return DICTIONARIES.containsKey(version);
+    }
+
+    private static byte[] dictionary(int version) {
+        byte[] dictionary = DICTIONARIES.get(version);
+        if (dictionary == null) {
+            throw new CompressException("没有注册版本为【" + version + "】的压缩字典");
+        }
+        return dictionary;
+    }
+}
@@ -1,58 +1,237 @@
 package org.example.compress.impl;
 
-import ch.qos.logback.core.pattern.color.BoldYellowCompositeConverter;
 import lombok.extern.slf4j.Slf4j;
 import org.example.compress.Compressor;
 import org.example.exceptions.CompressException;
+import org.example.transport.message.MessageFormatConstant;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * 用gzip算法进行解压缩的具体实现
+ * Deflater和Inflater按线程复用（见 {@link ZlibPool}），gzip的头和尾自己写，不再为每条报文创建GZIPOutputStream/GZIPInputStream
+ * 解压时按照尾部记录的原始长度一次分配好结果数组，原始长度不能超过 {@link MessageFormatConstant#MAX_BODY_LENGTH}
  * @author xiaonaol
  * @date 2024/11/23
  **/
 @Slf4j
 public class GzipCompressor implements Compressor {
-    @Override
-    public byte[] compress(byte[] bytes) {
 
-        try(ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            GZIPOutputStream gzip = new GZIPOutputStream(baos);
-        ) {
-            gzip.write(bytes);
-            gzip.finish();
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final byte[] HEADER = {
+            (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+    private static final int HEADER_LENGTH = 10;
+    private static final int TRAILER_LENGTH = 8;
 
-            byte[] result = baos.toByteArray();
-            if (log.isDebugEnabled()) {
-                log.debug("对报文进行压缩长度由【{}】压缩至【{}】", bytes.length, result.length);
-            }
-            return result;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    // deflate理论上的最大压缩比
+    static final int MAX_DEFLATE_RATIO = 1032;
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final ThreadLocal<byte[]> CHUNKS = ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length / 2 + HEADER_LENGTH + TRAILER_LENGTH);
+        try (OutputStream outputStream = compress(baos)) {
+            outputStream.write(bytes);
         } catch (IOException e) {
             log.error("报文压缩时发生异常", e);
             throw new CompressException(e);
         }
+        byte[] result = baos.toByteArray();
+        if (log.isDebugEnabled()) {
+            log.debug("对报文进行压缩长度由【{}】压缩至【{}】", bytes.length, result.length);
+        }
+        return result;
     }
 
     @Override
     public byte[] decompress(byte[] bytes) {
-        log.info("【{}】", bytes.length);
-        try(ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-            GZIPInputStream gzip = new GZIPInputStream(bais);
-        ) {
-            byte[] result = gzip.readAllBytes();
-            if(log.isDebugEnabled()) {
-                log.error("对报文进行了解压长度由【{}】变为【{}】", bytes.length, result.length);
-            }
+        if (bytes.length < HEADER_LENGTH + TRAILER_LENGTH
+                || (bytes[0] & 0xFF | (bytes[1] & 0xFF) << 8) != GZIP_MAGIC || bytes[2] != Deflater.DEFLATED) {
+            throw new CompressException("不是gzip格式的报文");
+        }
+        int offset = skipHeader(bytes);
+        int trailer = bytes.length - TRAILER_LENGTH;
+        int expectedCrc = readIntLE(bytes, trailer);
+        int originalLength = readIntLE(bytes, trailer + 4);
+        // 原始长度来自对端，不校验就分配内存，一个20字节的报文就能申请2GB；deflate的压缩比不会超过1032:1
+        if (originalLength < 0 || originalLength > MessageFormatConstant.MAX_BODY_LENGTH
+                || originalLength > (long) (trailer - offset) * MAX_DEFLATE_RATIO) {
+            throw new CompressException("gzip报文的原始长度错误【" + originalLength + "】");
+        }
 
-            return result;
-        } catch (IOException e) {
+        byte[] result = new byte[originalLength];
+        Inflater inflater = ZlibPool.acquireInflater();
+        try {
+            inflater.setInput(bytes, offset, trailer - offset);
+            int length = 0;
+            while (length < originalLength) {
+                int count = inflater.inflate(result, length, originalLength - length);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += count;
+            }
+            if (length != originalLength || !inflater.finished() && inflater.inflate(CHUNKS.get()) > 0) {
+                throw new CompressException("gzip报文解压后的长度与原始长度【" + originalLength + "】不一致");
+            }
+        } catch (DataFormatException e) {
             log.error("报文解压时发生异常", e);
             throw new CompressException(e);
+        } finally {
+            ZlibPool.releaseInflater(inflater);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(result);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new CompressException("gzip报文的crc校验失败");
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("对报文进行了解压长度由【{}】变为【{}】", bytes.length, result.length);
+        }
+        return result;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream outputStream) {
+        return new GzipOutputStream(outputStream);
+    }
+
+    @Override
+    public InputStream decompress(InputStream inputStream) throws IOException {
+        // 解码器传入的是长度确定的一帧，一次读出后按照原始长度解压
+        return new ByteArrayInputStream(decompress(inputStream.readAllBytes()));
+    }
+
+    /**
+     * @return 压缩数据开始的位置
+     */
+    private static int skipHeader(byte[] bytes) {
+        int flags = bytes[3] & 0xFF;
+        int offset = HEADER_LENGTH;
+        if ((flags & FEXTRA) != 0) {
+            offset += 2 + (bytes[offset] & 0xFF | (bytes[offset + 1] & 0xFF) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            offset = skipZeroTerminated(bytes, offset);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            offset = skipZeroTerminated(bytes, offset);
+        }
+        if ((flags & FHCRC) != 0) {
+            offset += 2;
+        }
+        if (offset > bytes.length - TRAILER_LENGTH) {
+            throw new CompressException("gzip报文的头部格式错误");
+        }
+        return offset;
+    }
+
+    private static int skipZeroTerminated(byte[] bytes, int offset) {
+        while (offset < bytes.length && bytes[offset] != 0) {
+            offset++;
+        }
+        return offset + 1;
+    }
+
+    private static int readIntLE(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * 直接用复用的Deflater压缩写出，关闭时写出gzip的尾部并归还Deflater
+     */
+    private static final class GzipOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final CRC32 crc = new CRC32();
+        private final byte[] chunk = CHUNKS.get();
+        private Deflater deflater;
+        private int length;
+        private boolean closed;
+
+        private GzipOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            if (count == 0) {
+                return;
+            }
+            if (deflater == null) {
+                deflater = ZlibPool.acquireDeflater();
+                out.write(HEADER);
+            }
+            crc.update(bytes, offset, count);
+            length += count;
+            deflater.setInput(bytes, offset, count);
+            while (!deflater.needsInput()) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            int count = deflater.deflate(chunk, 0, chunk.length, Deflater.NO_FLUSH);
+            if (count > 0) {
+                out.write(chunk, 0, count);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (deflater == null) {
+                    deflater = ZlibPool.acquireDeflater();
+                    out.write(HEADER);
+                }
+                deflater.finish();
+                while (!deflater.finished()) {
+                    drain();
+                }
+                byte[] trailer = new byte[TRAILER_LENGTH];
+                writeIntLE(trailer, 0, (int) crc.getValue());
+                writeIntLE(trailer, 4, length);
+                out.write(trailer);
+                out.close();
+            } finally {
+                if (deflater != null) {
+                    ZlibPool.releaseDeflater(deflater);
+                    deflater = null;
+                }
+            }
+        }
+
+        private static void writeIntLE(byte[] bytes, int offset, int value) {
+            bytes[offset] = (byte) value;
+            bytes[offset + 1] = (byte) (value >> 8);
+            bytes[offset + 2] = (byte) (value >> 16);
+            bytes[offset + 3] = (byte) (value >> 24);
         }
     }
 }
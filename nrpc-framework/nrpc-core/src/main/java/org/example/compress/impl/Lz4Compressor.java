@@ -0,0 +1,255 @@
+package org.example.compress.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.compress.Compressor;
+import org.example.exceptions.CompressException;
+import org.example.transport.message.MessageFormatConstant;
+
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * lz4块压缩的纯java实现，压缩比不如gzip，但是压缩和解压都快得多，适合小报文
+ * 格式：原始长度（4B，大端） + 原始数据的crc32c（4B，大端） + 标准的lz4 block
+ * lz4 block本身没有校验，损坏的数据可能解压出错误的内容而不报错，所以和gzip一样带上原始数据的校验和
+ * @author xiaonaol
+ * @date 2025/1/15
+ **/
+@Slf4j
+public class Lz4Compressor implements Compressor {
+
+    private static final int MIN_MATCH = 4;
+    // 最后5个字节必须是字面量，最后一个匹配必须在距离结尾12个字节之前开始
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int HASH_LOG = 12;
+    private static final int RUN_MASK = 15;
+    // 连续这么多次没有命中后，查找的步长开始增大，跳过不可压缩的数据
+    private static final int SKIP_TRIGGER = 6;
+    private static final int HEADER_LENGTH = 8;
+    // 每个压缩后的字节最多展开为255个字节
+    private static final int MAX_RATIO = 255;
+
+    private static final ThreadLocal<int[]> HASH_TABLES = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        byte[] out = new byte[HEADER_LENGTH + maxCompressedLength(bytes.length)];
+        writeInt(out, 0, bytes.length);
+        writeInt(out, 4, checksum(bytes));
+        int length = compress(bytes, out, HEADER_LENGTH, HASH_TABLES.get());
+        byte[] result = Arrays.copyOf(out, length);
+        if (log.isDebugEnabled()) {
+            log.debug("对报文进行压缩长度由【{}】压缩至【{}】", bytes.length, result.length);
+        }
+        return result;
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes.length <= HEADER_LENGTH) {
+            throw new CompressException("lz4报文长度错误【" + bytes.length + "】");
+        }
+        try {
+            int originalLength = readIntBE(bytes, 0);
+            // 原始长度来自对端，分配内存前先确认它是可能的
+            if (originalLength < 0 || originalLength > MessageFormatConstant.MAX_BODY_LENGTH
+                    || originalLength > (long) (bytes.length - HEADER_LENGTH) * MAX_RATIO) {
+                throw new CompressException("lz4报文的原始长度错误【" + originalLength + "】");
+            }
+            byte[] result = new byte[originalLength];
+            decompress(bytes, HEADER_LENGTH, result);
+            if (checksum(result) != readIntBE(bytes, 4)) {
+                throw new CompressException("lz4报文的crc校验失败");
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("对报文进行了解压长度由【{}】变为【{}】", bytes.length, result.length);
+            }
+            return result;
+        } catch (IndexOutOfBoundsException e) {
+            log.error("报文解压时发生异常", e);
+            throw new CompressException("lz4报文格式错误", e);
+        }
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * @return 写完之后dest中的位置
+     */
+    private static int compress(byte[] src, byte[] dest, int destOffset, int[] table) {
+        int srcLength = src.length;
+        int anchor = 0;
+        int op = destOffset;
+
+        if (srcLength > MF_LIMIT) {
+            int matchStartLimit = srcLength - MF_LIMIT;
+            int matchEndLimit = srcLength - LAST_LITERALS;
+            Arrays.fill(table, -1);
+
+            int ip = 0;
+            int searchCount = 1 << SKIP_TRIGGER;
+            while (ip < matchStartLimit) {
+                int sequence = readInt(src, ip);
+                int hash = hash(sequence);
+                int ref = table[hash];
+                table[hash] = ip;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    ip += searchCount++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                searchCount = 1 << SKIP_TRIGGER;
+
+                // 向前扩展匹配
+                while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchEndLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, dest, op, ip - ref, matchLength);
+                ip += matchLength;
+                anchor = ip;
+                if (ip - 2 < matchStartLimit) {
+                    table[hash(readInt(src, ip - 2))] = ip - 2;
+                }
+            }
+        }
+
+        // 剩下的全部是字面量
+        int literalLength = srcLength - anchor;
+        int token = op++;
+        if (literalLength >= RUN_MASK) {
+            dest[token] = (byte) (RUN_MASK << 4);
+            op = writeLength(dest, op, literalLength - RUN_MASK);
+        } else {
+            dest[token] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(src, anchor, dest, op, literalLength);
+        return op + literalLength;
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literalLength,
+                                     byte[] dest, int op, int offset, int matchLength) {
+        int token = op++;
+        int tokenValue;
+        if (literalLength >= RUN_MASK) {
+            tokenValue = RUN_MASK << 4;
+            op = writeLength(dest, op, literalLength - RUN_MASK);
+        } else {
+            tokenValue = literalLength << 4;
+        }
+        System.arraycopy(src, literalStart, dest, op, literalLength);
+        op += literalLength;
+
+        dest[op++] = (byte) offset;
+        dest[op++] = (byte) (offset >>> 8);
+
+        int matchCode = matchLength - MIN_MATCH;
+        if (matchCode >= RUN_MASK) {
+            tokenValue |= RUN_MASK;
+            op = writeLength(dest, op, matchCode - RUN_MASK);
+        } else {
+            tokenValue |= matchCode;
+        }
+        dest[token] = (byte) tokenValue;
+        return op;
+    }
+
+    private static int writeLength(byte[] dest, int op, int length) {
+        while (length >= 255) {
+            dest[op++] = (byte) 255;
+            length -= 255;
+        }
+        dest[op++] = (byte) length;
+        return op;
+    }
+
+    private static void decompress(byte[] src, int srcOffset, byte[] dest) {
+        int ip = srcOffset;
+        int op = 0;
+        int srcEnd = src.length;
+        while (true) {
+            int token = src[ip++] & 0xFF;
+
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK) {
+                int b;
+                do {
+                    b = src[ip++] & 0xFF;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, ip, dest, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+            if (ip >= srcEnd) {
+                break;
+            }
+
+            int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+            ip += 2;
+            int ref = op - offset;
+            if (offset == 0 || ref < 0) {
+                throw new CompressException("lz4报文的匹配偏移量错误【" + offset + "】");
+            }
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int b;
+                do {
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (op + matchLength > dest.length) {
+                throw new CompressException("lz4报文解压后的长度超过原始长度");
+            }
+            if (offset >= matchLength) {
+                System.arraycopy(dest, ref, dest, op, matchLength);
+                op += matchLength;
+            } else {
+                // 重叠的匹配只能逐字节复制
+                for (int end = op + matchLength; op < end; ) {
+                    dest[op++] = dest[ref++];
+                }
+            }
+        }
+        if (op != dest.length) {
+            throw new CompressException("lz4报文解压后的长度【" + op + "】与原始长度【" + dest.length + "】不一致");
+        }
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int readInt(byte[] bytes, int index) {
+        return (bytes[index] & 0xFF) | ((bytes[index + 1] & 0xFF) << 8)
+                | ((bytes[index + 2] & 0xFF) << 16) | ((bytes[index + 3] & 0xFF) << 24);
+    }
+
+    private static int readIntBE(byte[] bytes, int index) {
+        return ((bytes[index] & 0xFF) << 24) | ((bytes[index + 1] & 0xFF) << 16)
+                | ((bytes[index + 2] & 0xFF) << 8) | (bytes[index + 3] & 0xFF);
+    }
+
+    private static void writeInt(byte[] bytes, int index, int value) {
+        bytes[index] = (byte) (value >>> 24);
+        bytes[index + 1] = (byte) (value >>> 16);
+        bytes[index + 2] = (byte) (value >>> 8);
+        bytes[index + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.compress.impl;
+
+import org.example.compress.Compressor;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 不压缩，报文太小或者压缩没有效果时使用
+ * @author xiaonaol
+ * @date 2025/1/15
+ **/
+public class NoneCompressor implements Compressor {
+
+    public static final byte CODE = 0;
+
+    @Override
+    public byte[] compress(byte[] data) {
+        return data;
+    }
+
+    @Override
+    public byte[] decompress(byte[] data) {
+        return data;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream outputStream) {
+        return outputStream;
+    }
+
+    @Override
+    public InputStream decompress(InputStream inputStream) {
+        return inputStream;
+    }
+}
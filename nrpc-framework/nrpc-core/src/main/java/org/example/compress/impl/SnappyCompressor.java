@@ -0,0 +1,93 @@
+package org.example.compress.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.compression.DecompressionException;
+import io.netty.handler.codec.compression.Snappy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.compress.Compressor;
+import org.example.exceptions.CompressException;
+import org.example.transport.message.MessageFormatConstant;
+
+import java.util.zip.CRC32C;
+
+/**
+ * snappy块压缩，使用netty自带的纯java实现，不依赖本地库
+ * netty的snappy每次只能处理不超过32KB的数据，所以先分块：
+ * 格式：若干个 [块压缩后的长度（4B）][块原始数据的crc32c（4B）][snappy块]
+ * snappy块本身没有校验，和snappy的framing格式一样对每个块的原始数据做crc32c，损坏的报文在解压时报错
+ * @author xiaonaol
+ * @date 2025/1/15
+ **/
+@Slf4j
+public class SnappyCompressor implements Compressor {
+
+    private static final int BLOCK_SIZE = 32 * 1024;
+
+    private static final ThreadLocal<Snappy> SNAPPY = ThreadLocal.withInitial(Snappy::new);
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        Snappy snappy = SNAPPY.get();
+        ByteBuf in = Unpooled.wrappedBuffer(bytes);
+        ByteBuf out = Unpooled.buffer(bytes.length / 2 + 16);
+        try {
+            while (in.isReadable()) {
+                int blockLength = Math.min(in.readableBytes(), BLOCK_SIZE);
+                int lengthIndex = out.writerIndex();
+                out.writeInt(0);
+                out.writeInt(checksum(in, in.readerIndex(), blockLength));
+                snappy.encode(in.readSlice(blockLength), out, blockLength);
+                snappy.reset();
+                out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 8);
+            }
+            byte[] result = new byte[out.readableBytes()];
+            out.readBytes(result);
+            if (log.isDebugEnabled()) {
+                log.debug("对报文进行压缩长度由【{}】压缩至【{}】", bytes.length, result.length);
+            }
+            return result;
+        } finally {
+            out.release();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        Snappy snappy = SNAPPY.get();
+        ByteBuf in = Unpooled.wrappedBuffer(bytes);
+        // 块头里的长度来自对端，限制解压结果的容量，超过时抛出IndexOutOfBoundsException
+        ByteBuf out = Unpooled.buffer(Math.min(bytes.length * 2, MessageFormatConstant.MAX_BODY_LENGTH),
+                MessageFormatConstant.MAX_BODY_LENGTH);
+        try {
+            while (in.isReadable()) {
+                int blockLength = in.readInt();
+                int expectedCrc = in.readInt();
+                int blockStart = out.writerIndex();
+                snappy.decode(in.readSlice(blockLength), out);
+                snappy.reset();
+                if (checksum(out, blockStart, out.writerIndex() - blockStart) != expectedCrc) {
+                    throw new CompressException("snappy报文的crc校验失败");
+                }
+            }
+            byte[] result = new byte[out.readableBytes()];
+            out.readBytes(result);
+            if (log.isDebugEnabled()) {
+                log.debug("对报文进行了解压长度由【{}】变为【{}】", bytes.length, result.length);
+            }
+            return result;
+        } catch (DecompressionException | IndexOutOfBoundsException e) {
+            snappy.reset();
+            log.error("报文解压时发生异常", e);
+            throw new CompressException("snappy报文格式错误", e);
+        } finally {
+            out.release();
+        }
+    }
+
+    private static int checksum(ByteBuf buf, int index, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buf.nioBuffer(index, length));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.compress.impl;
+
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 按线程复用Deflater和Inflater，它们持有本地内存，频繁创建的代价很高
+ * 每个线程缓存一个实例，同一线程同时需要多个时（比如压缩流还没关闭又压缩了别的报文），多出来的用完即释放
+ * 只使用raw deflate（nowrap），gzip等格式的头尾由调用方自己写
+ * @author xiaonaol
+ * @date 2025/1/15
+ **/
+final class ZlibPool {
+
+    private static final ThreadLocal<Slot<Deflater>> DEFLATERS = ThreadLocal.withInitial(
+            () -> new Slot<>(new Deflater(Deflater.DEFAULT_COMPRESSION, true)));
+    private static final ThreadLocal<Slot<Inflater>> INFLATERS = ThreadLocal.withInitial(
+            () -> new Slot<>(new Inflater(true)));
+
+    private ZlibPool() {
+    }
+
+    static Deflater acquireDeflater() {
+        Slot<Deflater> slot = DEFLATERS.get();
+        if (slot.inUse) {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+        slot.inUse = true;
+        return slot.value;
+    }
+
+    static void releaseDeflater(Deflater deflater) {
+        Slot<Deflater> slot = DEFLATERS.get();
+        if (slot.value == deflater) {
+            deflater.reset();
+            slot.inUse = false;
+        } else {
+            deflater.end();
+        }
+    }
+
+    static Inflater acquireInflater() {
+        Slot<Inflater> slot = INFLATERS.get();
+        if (slot.inUse) {
+            return new Inflater(true);
+        }
+        slot.inUse = true;
+        return slot.value;
+    }
+
+    static void releaseInflater(Inflater inflater) {
+        Slot<Inflater> slot = INFLATERS.get();
+        if (slot.value == inflater) {
+            inflater.reset();
+            slot.inUse = false;
+        } else {
+            inflater.end();
+        }
+    }
+
+    private static final class Slot<T> {
+        private final T value;
+        private boolean inUse;
+
+        private Slot(T value) {
+            this.value = value;
+        }
+    }
+}
@@ -5,16 +5,19 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.example.IdGenerator;
 import org.example.compress.Compressor;
+import org.example.compress.impl.DictionaryCompressor;
 import org.example.compress.impl.GzipCompressor;
 import org.example.discovery.RegistryConfig;
 import org.example.loadbalancer.LoadBalancer;
 import org.example.loadbalancer.impl.RoundRobinLoadBalancer;
+import org.example.netty.NrpcChannelPool;
 import org.example.protection.CircuitBreaker;
-import org.example.protection.RateLimiter;
 import org.example.serialize.Serializer;
 import org.example.serialize.impl.JdkSerializer;
+import org.example.transport.message.MessageFormatConstant;
 
-import java.net.SocketAddress;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -41,21 +44,90 @@ public class Configuration {
     // 配置信息-->序列化方式
     private String serializeType = "hessian";
     private Serializer serializer = new JdkSerializer();
+    // 除了服务接口中声明的类型以外，允许反序列化的包名或类名前缀
+    private String[] serializeAllowlist = {};
 
     // 配置信息-->压缩方式
     private String compressType = "gzip";
     private Compressor compressor = new GzipCompressor();
+    // 消息体小于这个字节数时不压缩
+    private int compressThreshold = 512;
+    // 自适应压缩：按方法统计压缩比，超过maxCompressRatio（压缩后/压缩前）时不再压缩
+    private boolean adaptiveCompress = true;
+    private double maxCompressRatio = 0.9;
+    // 字典压缩时使用的字典版本，1为内置字典
+    private int compressDictionaryVersion = DictionaryCompressor.BUILT_IN_VERSION;
 
     // 配置信息-->负载均衡策略
     private LoadBalancer loadBalancer = new RoundRobinLoadBalancer();
+    // 一致性hash每个节点的虚拟节点数，以及默认参与hash的参数下标（方法上没有@HashKey时使用）
+    private int consistentHashVirtualNodes = 160;
+    private int[] consistentHashArguments = {0};
 
     // 分组信息
     private String group = "default";
 
-    // 为每一个ip配置一个限流器
-    private final Map<SocketAddress, RateLimiter> ipRateLimiter = new ConcurrentHashMap<>(16);
-    // 为每一个ip配置一个断路器
-    private final Map<SocketAddress, CircuitBreaker> ipCircuitBreaker = new ConcurrentHashMap<>(16);
+    // 所在的可用区和主机标签，服务提供方发布到注册中心，服务调用方用来优先选择同可用区的节点；主机为null时使用本机的主机名
+    private String zone;
+    private String host;
+    // 同可用区的节点平均每个正在处理的请求数达到这个值时，认为本可用区已经饱和，请求分流到其他可用区
+    private int localityMaxInflight = 64;
+    // 节点连续失败多少次后认为不健康，不健康的节点recoveryTime毫秒内不会被优先选择
+    private int localityFailureThreshold = 3;
+    private long localityRecoveryTime = 5000;
+
+    // 服务调用方发送请求使用的协议版本，1 或 2（紧凑协议），服务提供方总是按照请求的版本响应
+    private int protocolVersion = MessageFormatConstant.VERSION;
+
+    // 请求超时时间（毫秒）
+    private long requestTimeout = 10000;
+
+    // 每个服务提供方地址最多建立的连接数
+    private int channelPoolSize = 4;
+    // 连接池中选择连接的策略 roundRobin / leastPending
+    private String channelPoolStrategy = NrpcChannelPool.LEAST_PENDING;
+
+    // 配置信息-->传输层，epoll可用时优先使用epoll
+    private boolean epoll = true;
+    private int bossThreads = 2;
+    private int workerThreads = 10;
+    // 开启后每个boss线程都绑定一次端口，仅epoll支持；同一用户的其他进程也能绑定同一个端口分走连接，所以默认关闭
+    private boolean reusePort = false;
+    private boolean tcpNoDelay = true;
+    // 仅epoll支持
+    private boolean tcpQuickAck = false;
+
+    // 配置信息-->合并flush，最多累计多少次flush后必须真正flush一次
+    private boolean flushConsolidation = true;
+    private int explicitFlushAfterFlushes = 256;
+
+    // 配置信息-->限流，服务实现类或方法上的@RateLimit可以覆盖
+    // 令牌桶的容量和每秒发放的令牌数
+    private int rateLimitCapacity = 200;
+    private double rateLimitRate = 100;
+    // 限流器空闲多久（毫秒）后回收
+    private long rateLimiterIdleTimeout = 60000;
+
+    // 配置信息-->服务提供方的自适应并发限制，根据服务耗时调整每个服务的并发上限
+    private boolean concurrencyLimit = false;
+    private int concurrencyInitialLimit = 20;
+    private int concurrencyMinLimit = 4;
+    private int concurrencyMaxLimit = 1000;
+    // 耗时增长到无负载时的多少倍以内不降低上限
+    private double concurrencyTolerance = 1.5;
+    // 为每一个服务地址的每一个方法配置一个断路器，接口方法 -> 服务地址 -> 断路器，重载的方法各自独立
+    private final Map<Method, Map<InetSocketAddress, CircuitBreaker>> circuitBreakers = new ConcurrentHashMap<>(16);
+
+    // 配置信息-->熔断，方法上的@CircuitBreak可以覆盖
+    // 统计窗口的长度（毫秒）和划分的桶数
+    private long circuitBreakerWindow = 10000;
+    private int circuitBreakerBuckets = 10;
+    // 窗口内请求数达到minRequests后，失败比例达到errorRate时熔断
+    private int circuitBreakerMinRequests = 20;
+    private float circuitBreakerErrorRate = 0.5F;
+    // 熔断持续的时间（毫秒），之后放行halfOpenProbes个探测请求
+    private long circuitBreakerOpenTime = 5000;
+    private int circuitBreakerHalfOpenProbes = 3;
 
     // 读xml
     public Configuration() {
@@ -5,7 +5,9 @@ import org.example.IdGenerator;
 import org.example.ProtocolConfig;
 import org.example.compress.Compressor;
 import org.example.compress.CompressorFactory;
+import org.example.compress.impl.DictionaryCompressor;
 import org.example.discovery.RegistryConfig;
+import org.example.exceptions.CompressException;
 import org.example.loadbalancer.LoadBalancer;
 import org.example.serialize.Serializer;
 import org.example.serialize.SerializerFactory;
@@ -21,6 +23,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -78,6 +81,32 @@ public class XmlResolver {
 
             configuration.setLoadBalancer(resolveLoadBalancer(doc, xPath));
 
+            resolveProtocol(doc, xPath, configuration);
+            resolveRequestTimeout(doc, xPath, configuration);
+            resolveChannelPool(doc, xPath, configuration);
+            resolveTransport(doc, xPath, configuration);
+            resolveFlushConsolidation(doc, xPath, configuration);
+            resolveCompression(doc, xPath, configuration);
+            resolveCompressDictionary(doc, xPath, configuration);
+
+            // 熔断
+            resolveCircuitBreaker(doc, xPath, configuration);
+
+            // 限流
+            resolveRateLimiter(doc, xPath, configuration);
+
+            // 自适应并发限制
+            resolveConcurrencyLimit(doc, xPath, configuration);
+
+            // 一致性hash
+            resolveConsistentHash(doc, xPath, configuration);
+
+            // 反序列化白名单
+            resolveSerializeAllowlist(doc, xPath, configuration);
+
+            // 可用区
+            resolveLocality(doc, xPath, configuration);
+
             // 如果有新增的标签从这里添加
 
         } catch (ParserConfigurationException | SAXException | IOException | XPathExpressionException |
@@ -128,6 +157,247 @@ public class XmlResolver {
         return parseObject(xPath, doc, expression, null);
     }
 
+    private void resolveProtocol(Document doc, XPath xPath, Configuration configuration) {
+        // 可选标签，没有配置时使用第1版协议
+        String expression = "/configuration/protocol";
+        String version = parseString(xPath, doc, expression, "version");
+        if (version != null) {
+            configuration.setProtocolVersion(Integer.parseInt(version));
+        }
+    }
+
+    private void resolveRequestTimeout(Document doc, XPath xPath, Configuration configuration) {
+        // 可选标签，没有配置时使用默认值
+        String expression = "/configuration/requestTimeout";
+        String millis = parseString(xPath, doc, expression, "millis");
+        if (millis != null) {
+            configuration.setRequestTimeout(Long.parseLong(millis));
+        }
+    }
+
+    private void resolveChannelPool(Document doc, XPath xPath, Configuration configuration) {
+        // 可选标签，没有配置时使用默认值
+        String expression = "/configuration/channelPool";
+        String size = parseString(xPath, doc, expression, "size");
+        if (size != null) {
+            configuration.setChannelPoolSize(Integer.parseInt(size));
+        }
+        String strategy = parseString(xPath, doc, expression, "strategy");
+        if (strategy != null) {
+            configuration.setChannelPoolStrategy(strategy);
+        }
+    }
+
+    private void resolveTransport(Document doc, XPath xPath, Configuration configuration) {
+        // 可选标签，没有配置的属性使用默认值
+        String expression = "/configuration/transport";
+        String epoll = parseString(xPath, doc, expression, "epoll");
+        if (epoll != null) {
+            configuration.setEpoll(Boolean.parseBoolean(epoll));
+        }
+        String bossThreads = parseString(xPath, doc, expression, "bossThreads");
+        if (bossThreads != null) {
+            configuration.setBossThreads(Integer.parseInt(bossThreads));
+        }
+        String workerThreads = parseString(xPath, doc, expression, "workerThreads");
+        if (workerThreads != null) {
+            configuration.setWorkerThreads(Integer.parseInt(workerThreads));
+        }
+        String reusePort = parseString(xPath, doc, expression, "reusePort");
+        if (reusePort != null) {
+            configuration.setReusePort(Boolean.parseBoolean(reusePort));
+        }
+        String tcpNoDelay = parseString(xPath, doc, expression, "tcpNoDelay");
+        if (tcpNoDelay != null) {
+            configuration.setTcpNoDelay(Boolean.parseBoolean(tcpNoDelay));
+        }
+        String tcpQuickAck = parseString(xPath, doc, expression, "tcpQuickAck");
+        if (tcpQuickAck != null) {
+            configuration.setTcpQuickAck(Boolean.parseBoolean(tcpQuickAck));
+        }
+    }
+
+    private void resolveFlushConsolidation(Document doc, XPath xPath, Configuration configuration) {
+        // 可选标签，没有配置的属性使用默认值
+        String expression = "/configuration/flushConsolidation";
+        String enabled = parseString(xPath, doc, expression, "enabled");
+        if (enabled != null) {
+            configuration.setFlushConsolidation(Boolean.parseBoolean(enabled));
+        }
+        String explicitFlushAfterFlushes = parseString(xPath, doc, expression, "explicitFlushAfterFlushes");
+        if (explicitFlushAfterFlushes != null) {
+            configuration.setExplicitFlushAfterFlushes(Integer.parseInt(explicitFlushAfterFlushes));
+        }
+    }
+
+    private void resolveCompression(Document doc, XPath xPath, Configuration configuration) {
+        // 可选标签，没有配置的属性使用默认值
+        String expression = "/configuration/compression";
+        String threshold = parseString(xPath, doc, expression, "threshold");
+        if (threshold != null) {
+            configuration.setCompressThreshold(Integer.parseInt(threshold));
+        }
+        String adaptive = parseString(xPath, doc, expression, "adaptive");
+        if (adaptive != null) {
+            configuration.setAdaptiveCompress(Boolean.parseBoolean(adaptive));
+        }
+        String maxRatio = parseString(xPath, doc, expression, "maxRatio");
+        if (maxRatio != null) {
+            configuration.setMaxCompressRatio(Double.parseDouble(maxRatio));
+        }
+    }
+
+    private void resolveCompressDictionary(Document doc, XPath xPath, Configuration configuration) {
+        // 可选标签，内置以外的字典需要从classpath加载后注册，加载失败时双方的字典会不一致，直接报错
+        String expression = "/configuration/compressDictionary";
+        String version = parseString(xPath, doc, expression, "version");
+        if (version == null) {
+            return;
+        }
+        int dictionaryVersion = Integer.parseInt(version);
+        String resource = parseString(xPath, doc, expression, "resource");
+        if (resource != null) {
+            try (InputStream inputStream = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource)) {
+                if (inputStream == null) {
+                    throw new CompressException("找不到压缩字典【" + resource + "】");
+                }
+                DictionaryCompressor.registerDictionary(dictionaryVersion, inputStream.readAllBytes());
+            } catch (IOException e) {
+                throw new CompressException("加载压缩字典【" + resource + "】失败", e);
+            }
+        }
+        // 没有配置resource时只能使用已经注册过的字典，否则要到第一次压缩时才会报错
+        if (!DictionaryCompressor.hasDictionary(dictionaryVersion)) {
+            throw new CompressException("没有注册版本为【" + dictionaryVersion + "】的压缩字典，请通过resource属性指定字典文件");
+        }
+        configuration.setCompressDictionaryVersion(dictionaryVersion);
+    }
+
+    private void resolveCircuitBreaker(Document doc, XPath xPath, Configuration configuration) {
+        // 可选标签，没有配置的属性使用默认值
+        String expression = "/configuration/circuitBreaker";
+        String window = parseString(xPath, doc, expression, "window");
+        if (window != null) {
+            configuration.setCircuitBreakerWindow(Long.parseLong(window));
+        }
+        String buckets = parseString(xPath, doc, expression, "buckets");
+        if (buckets != null) {
+            configuration.setCircuitBreakerBuckets(Integer.parseInt(buckets));
+        }
+        String minRequests = parseString(xPath, doc, expression, "minRequests");
+        if (minRequests != null) {
+            configuration.setCircuitBreakerMinRequests(Integer.parseInt(minRequests));
+        }
+        String errorRate = parseString(xPath, doc, expression, "errorRate");
+        if (errorRate != null) {
+            configuration.setCircuitBreakerErrorRate(Float.parseFloat(errorRate));
+        }
+        String openTime = parseString(xPath, doc, expression, "openTime");
+        if (openTime != null) {
+            configuration.setCircuitBreakerOpenTime(Long.parseLong(openTime));
+        }
+        String halfOpenProbes = parseString(xPath, doc, expression, "halfOpenProbes");
+        if (halfOpenProbes != null) {
+            configuration.setCircuitBreakerHalfOpenProbes(Integer.parseInt(halfOpenProbes));
+        }
+    }
+
+    private void resolveRateLimiter(Document doc, XPath xPath, Configuration configuration) {
+        // 可选标签，没有配置的属性使用默认值
+        String expression = "/configuration/rateLimiter";
+        String capacity = parseString(xPath, doc, expression, "capacity");
+        if (capacity != null) {
+            configuration.setRateLimitCapacity(Integer.parseInt(capacity));
+        }
+        String rate = parseString(xPath, doc, expression, "rate");
+        if (rate != null) {
+            configuration.setRateLimitRate(Double.parseDouble(rate));
+        }
+        String idleTimeout = parseString(xPath, doc, expression, "idleTimeout");
+        if (idleTimeout != null) {
+            configuration.setRateLimiterIdleTimeout(Long.parseLong(idleTimeout));
+        }
+    }
+
+    private void resolveConcurrencyLimit(Document doc, XPath xPath, Configuration configuration) {
+        // 可选标签，没有配置的属性使用默认值
+        String expression = "/configuration/concurrencyLimit";
+        String enabled = parseString(xPath, doc, expression, "enabled");
+        if (enabled != null) {
+            configuration.setConcurrencyLimit(Boolean.parseBoolean(enabled));
+        }
+        String initial = parseString(xPath, doc, expression, "initial");
+        if (initial != null) {
+            configuration.setConcurrencyInitialLimit(Integer.parseInt(initial));
+        }
+        String min = parseString(xPath, doc, expression, "min");
+        if (min != null) {
+            configuration.setConcurrencyMinLimit(Integer.parseInt(min));
+        }
+        String max = parseString(xPath, doc, expression, "max");
+        if (max != null) {
+            configuration.setConcurrencyMaxLimit(Integer.parseInt(max));
+        }
+        String tolerance = parseString(xPath, doc, expression, "tolerance");
+        if (tolerance != null) {
+            configuration.setConcurrencyTolerance(Double.parseDouble(tolerance));
+        }
+    }
+
+    private void resolveConsistentHash(Document doc, XPath xPath, Configuration configuration) {
+        // 可选标签，没有配置的属性使用默认值
+        String expression = "/configuration/consistentHash";
+        String virtualNodes = parseString(xPath, doc, expression, "virtualNodes");
+        if (virtualNodes != null) {
+            configuration.setConsistentHashVirtualNodes(Integer.parseInt(virtualNodes));
+        }
+        String arguments = parseString(xPath, doc, expression, "arguments");
+        if (arguments != null) {
+            configuration.setConsistentHashArguments(Arrays.stream(arguments.split(","))
+                    .map(String::trim)
+                    .filter(argument -> !argument.isEmpty())
+                    .mapToInt(Integer::parseInt)
+                    .toArray());
+        }
+    }
+
+    private void resolveSerializeAllowlist(Document doc, XPath xPath, Configuration configuration) {
+        // 可选标签，逗号分隔的包名或类名前缀
+        String expression = "/configuration/serializeAllowlist";
+        String packages = parseString(xPath, doc, expression, "packages");
+        if (packages != null) {
+            configuration.setSerializeAllowlist(Arrays.stream(packages.split(","))
+                    .map(String::trim)
+                    .filter(prefix -> !prefix.isEmpty())
+                    .toArray(String[]::new));
+        }
+    }
+
+    private void resolveLocality(Document doc, XPath xPath, Configuration configuration) {
+        // 可选标签，没有配置的属性使用默认值
+        String expression = "/configuration/locality";
+        String zone = parseString(xPath, doc, expression, "zone");
+        if (zone != null && !zone.isBlank()) {
+            configuration.setZone(zone.trim());
+        }
+        String host = parseString(xPath, doc, expression, "host");
+        if (host != null && !host.isBlank()) {
+            configuration.setHost(host.trim());
+        }
+        String maxInflight = parseString(xPath, doc, expression, "maxInflight");
+        if (maxInflight != null) {
+            configuration.setLocalityMaxInflight(Integer.parseInt(maxInflight));
+        }
+        String failureThreshold = parseString(xPath, doc, expression, "failureThreshold");
+        if (failureThreshold != null) {
+            configuration.setLocalityFailureThreshold(Integer.parseInt(failureThreshold));
+        }
+        String recoveryTime = parseString(xPath, doc, expression, "recoveryTime");
+        if (recoveryTime != null) {
+            configuration.setLocalityRecoveryTime(Long.parseLong(recoveryTime));
+        }
+    }
+
     private String resolveCompressType(Document doc, XPath xPath) throws XPathExpressionException {
         String expression = "/configuration/compressType";
         return parseString(xPath, doc, expression, "type");
@@ -174,13 +444,16 @@ public class XmlResolver {
      * @param xpath         xpath解析器
      * @param expression    xpath表达式
      * @param AttributeName 节点名称
-     * @return 节点的值
+     * @return 节点的值，节点或属性不存在时返回null
      */
     private String parseString(XPath xpath, Document doc, String expression, String AttributeName) {
         try {
             XPathExpression expr = xpath.compile(expression);
             // 我们的表达式可以帮我们获取节点
             Node targetNode = (Node) expr.evaluate(doc, XPathConstants.NODE);
+            if (targetNode == null || targetNode.getAttributes().getNamedItem(AttributeName) == null) {
+                return null;
+            }
             return targetNode.getAttributes().getNamedItem(AttributeName).getNodeValue();
         } catch (XPathExpressionException e) {
             log.error("An exception occurred while parsing the expression.", e);
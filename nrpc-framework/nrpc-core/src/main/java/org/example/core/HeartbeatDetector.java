@@ -1,10 +1,9 @@
 package org.example.core;
 
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelFutureListener;
 import lombok.extern.slf4j.Slf4j;
+import org.example.netty.NrpcChannelPool;
 import org.example.netty.NrpcUtils;
-import org.example.netty.initializer.NettyBootstrapInitializer;
 import org.example.NrpcBootstrap;
 import org.example.compress.CompressorFactory;
 import org.example.discovery.Registry;
@@ -16,8 +15,6 @@ import java.net.InetSocketAddress;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
  * 探测服务是死是活
@@ -32,17 +29,12 @@ public class HeartbeatDetector {
         Registry registry = NrpcBootstrap.getInstance().getConfiguration().getRegistryConfig().getRegistry();
         List<InetSocketAddress> addresses = registry.lookup(serviceName,
                 NrpcBootstrap.getInstance().getConfiguration().getGroup());
+        NrpcBootstrap.SERVICE_ADDRESS_CACHE.put(serviceName, addresses);
 
         // 将连接进行缓存
         for(InetSocketAddress address : addresses) {
-            try {
-                if(!NrpcBootstrap.CHANNEL_CACHE.containsKey(address)) {
-                    Channel channel = NettyBootstrapInitializer.getBootstrap().connect(address).sync().channel();
-                    NrpcBootstrap.CHANNEL_CACHE.put(address, channel);
-                }
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
+            // 连接池为空时会建立第一个连接
+            NrpcChannelPool.getOrCreate(address).acquire();
         }
 
         // 定期发送消息
@@ -61,64 +53,71 @@ public class HeartbeatDetector {
             // 将响应时长的map清空
             NrpcBootstrap.ANSWER_TIME_CHANNEL_CACHE.clear();
 
-            // 遍历所有channel
-            Map<InetSocketAddress, Channel> cache = NrpcBootstrap.CHANNEL_CACHE;
-            for(Map.Entry<InetSocketAddress, Channel> entry : cache.entrySet()) {
-                // 定义重试剩余次数
-                int tryTimes = 3;
-                while(tryTimes > 0) {
-
-                    // 通过心跳检测处理每一个channel
-                    Channel channel = entry.getValue();
-
-                    long start = System.currentTimeMillis();
-                    // 构建一个心跳请求
-                    NrpcRequest nrpcRequest = NrpcRequest.builder()
-                            .requestId(NrpcBootstrap.getInstance().getConfiguration().getIdGenerator().getId())
-                            .compressType(CompressorFactory.getCompressor(NrpcBootstrap.getInstance().getConfiguration().getCompressType()).getCode())
-                            .requestType(RequestType.HEART_BEAT.getId())
-                            .serializeType(SerializerFactory.getSerializer(NrpcBootstrap.getInstance().getConfiguration().getSerializeType()).getCode())
-                            .timeStamp(start)
-                            .build();
-
-                    CompletableFuture<Object> completableFuture =
-                            NrpcUtils.sendRequest(channel, nrpcRequest, NrpcBootstrap.PENDING_QUEST);
-
-                    Long endTime = 0L;
-                    try {
-                        completableFuture.get(1, TimeUnit.SECONDS);
-                        endTime = System.currentTimeMillis();
-                    } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                        // 一旦发生问题，需要优先重试
-                        tryTimes --;
-                        log.error("和地址为【{}】的主机连接发生异常，正在进行【{}】次重试...", channel.remoteAddress(), 3 - tryTimes);
-
-                        // 重试用尽，将失效的地址移出服务列表
-                        if(tryTimes == 0) {
-                            NrpcBootstrap.CHANNEL_CACHE.remove(entry.getKey());
-                            log.error("将地址为【{}】的主机移出服务列表", channel.remoteAddress());
-                        }
+            // 遍历所有连接池中的每一个channel
+            Map<InetSocketAddress, NrpcChannelPool> cache = NrpcBootstrap.CHANNEL_CACHE;
+            for(Map.Entry<InetSocketAddress, NrpcChannelPool> entry : cache.entrySet()) {
+                NrpcChannelPool channelPool = entry.getValue();
+                for(Channel channel : channelPool.getChannels()) {
+                    detect(entry.getKey(), channelPool, channel);
+                }
+            }
+
+            log.info("--------------------响应时间的treemap------------------");
+            for (Map.Entry<Long, Channel> entry : NrpcBootstrap.ANSWER_TIME_CHANNEL_CACHE.entrySet()) {
+                log.info("[{}] ----> channel_id: [{}]", entry.getKey(), entry.getValue().id());
+            }
+        }
 
-                        // 尝试等待一段时间后重试
-                        try {
-                            Thread.sleep(10*(new Random().nextInt(5)));
-                        } catch (InterruptedException ex) {
-                            throw new RuntimeException(ex);
+        private void detect(InetSocketAddress address, NrpcChannelPool channelPool, Channel channel) {
+            // 定义重试剩余次数
+            int tryTimes = 3;
+            while(tryTimes > 0) {
+
+                long start = System.currentTimeMillis();
+                // 构建一个心跳请求
+                NrpcRequest nrpcRequest = NrpcRequest.builder()
+                        .requestId(NrpcBootstrap.getInstance().getConfiguration().getIdGenerator().getId())
+                        .compressType(CompressorFactory.getCompressor(NrpcBootstrap.getInstance().getConfiguration().getCompressType()).getCode())
+                        .requestType(RequestType.HEART_BEAT.getId())
+                        .serializeType(SerializerFactory.getSerializer(NrpcBootstrap.getInstance().getConfiguration().getSerializeType()).getCode())
+                        .timeStamp(start)
+                        .build();
+
+                CompletableFuture<Object> completableFuture =
+                        NrpcUtils.sendRequest(channel, nrpcRequest, NrpcBootstrap.PENDING_QUEST, 1000);
+
+                Long endTime = 0L;
+                try {
+                    completableFuture.get();
+                    endTime = System.currentTimeMillis();
+                } catch (InterruptedException | ExecutionException e) {
+                    // 一旦发生问题，需要优先重试
+                    tryTimes --;
+                    log.error("和地址为【{}】的主机连接发生异常，正在进行【{}】次重试...", channel.remoteAddress(), 3 - tryTimes);
+
+                    // 重试用尽，将失效的连接移出连接池，连接池空了就将地址移出服务列表
+                    if(tryTimes == 0) {
+                        channelPool.evict(channel);
+                        if(channelPool.isEmpty()) {
+                            NrpcBootstrap.CHANNEL_CACHE.remove(address, channelPool);
+                            log.error("将地址为【{}】的主机移出服务列表", address);
                         }
+                    }
 
-                        continue;
+                    // 尝试等待一段时间后重试
+                    try {
+                        Thread.sleep(10*(new Random().nextInt(5)));
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
                     }
-                    Long time = endTime - start;
 
-                    // 使用treemap进行缓存
-                    NrpcBootstrap.ANSWER_TIME_CHANNEL_CACHE.put(time, channel);
-                    break;
+                    continue;
                 }
-            }
+                Long time = endTime - start;
 
-            log.info("--------------------响应时间的treemap------------------");
-            for (Map.Entry<Long, Channel> entry : NrpcBootstrap.ANSWER_TIME_CHANNEL_CACHE.entrySet()) {
-                log.info("[{}] ----> channel_id: [{}]", entry.getKey(), entry.getValue().id());
+                // 使用treemap进行缓存
+                NrpcBootstrap.ANSWER_TIME_CHANNEL_CACHE.put(time, channel);
+                break;
             }
         }
     }
@@ -0,0 +1,127 @@
+package org.example.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.protection.RateLimiter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 服务方法的调用器，发布服务时一次性解析，请求到来时按方法名一次map查找、比较参数类型后一次MethodHandle调用
+ * @author xiaonaol
+ * @date 2025/1/6
+ **/
+@Slf4j
+public class MethodInvoker {
+
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private static final Class<?>[] EMPTY_TYPES = new Class<?>[0];
+
+    // 已经绑定了实现类实例，类型统一为 (Object[])Object
+    private final MethodHandle methodHandle;
+    // 接口中声明的方法
+    private final Method method;
+    private final Class<?>[] parametersType;
+    // 发布时生成的方法签名，日志和各种按方法区分的统计直接使用，不再每次拼接
+    private final String signature;
+    // 这个方法的限流器，每个调用方ip一个，由MethodCallHandler按需创建和回收
+    private final Map<Object, RateLimiter> rateLimiters = new ConcurrentHashMap<>(16);
+
+    private MethodInvoker(MethodHandle methodHandle, Method method) {
+        this.methodHandle = methodHandle;
+        this.method = method;
+        this.parametersType = method.getParameterTypes();
+        this.signature = signature(method.getName(), parametersType);
+    }
+
+    /**
+     * 执行方法调用
+     * @param args 参数列表
+     * @return 返回值，void方法返回null
+     */
+    public Object invoke(Object[] args) throws Throwable {
+        return (Object) methodHandle.invokeExact(args == null ? EMPTY_ARGS : args);
+    }
+
+    /**
+     * 参数类型是否和这个方法完全一致，Class在同一个类加载器中是唯一的，逐个比较引用即可
+     * @param types 请求中的参数类型，null视为无参
+     */
+    public boolean matches(Class<?>[] types) {
+        return Arrays.equals(parametersType, types == null ? EMPTY_TYPES : types);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public Map<Object, RateLimiter> getRateLimiters() {
+        return rateLimiters;
+    }
+
+    /**
+     * 解析接口中所有暴露的方法，生成调用表
+     * 接口不是public（比如包内可见的接口）时框架没有访问权限，先打开访问检查；
+     * 仍然无法访问时直接让发布失败，不能等到调用时才返回找不到方法
+     * @param anInterface 服务接口
+     * @param ref         具体的实现
+     * @return 方法名 -> 同名的所有重载方法
+     * @author xiaonaol
+     */
+    public static Map<String, MethodInvoker[]> resolve(Class<?> anInterface, Object ref) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Map<String, MethodInvoker[]> invokers = new HashMap<>(16);
+        for (Method method : anInterface.getMethods()) {
+            MethodHandle methodHandle;
+            try {
+                method.setAccessible(true);
+                methodHandle = lookup.unreflect(method)
+                        .bindTo(ref)
+                        .asSpreader(Object[].class, method.getParameterCount())
+                        .asType(INVOKER_TYPE);
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new RuntimeException("无法访问服务" + anInterface.getName() + "的方法"
+                        + signature(method.getName(), method.getParameterTypes()), e);
+            }
+            MethodInvoker invoker = new MethodInvoker(methodHandle, method);
+            invokers.merge(method.getName(), new MethodInvoker[]{invoker}, (overloads, added) -> {
+                MethodInvoker[] merged = Arrays.copyOf(overloads, overloads.length + 1);
+                merged[overloads.length] = invoker;
+                return merged;
+            });
+        }
+        return invokers;
+    }
+
+    /**
+     * 生成一个稳定的方法签名 sayHello(java.lang.String)
+     * @param methodName     方法名
+     * @param parametersType 参数类型
+     * @return 方法签名
+     */
+    public static String signature(String methodName, Class<?>[] parametersType) {
+        StringBuilder sb = new StringBuilder(methodName).append('(');
+        if(parametersType != null) {
+            for (int i = 0; i < parametersType.length; i++) {
+                if(i > 0) {
+                    sb.append(',');
+                }
+                sb.append(parametersType[i].getName());
+            }
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -1,5 +1,6 @@
 package org.example.core;
 
+import org.example.NrpcBootstrap;
 import org.example.netty.initializer.NettyServerBootstrapInitializer;
 
 /**
@@ -28,6 +29,7 @@ public class NrpcShutdownHook extends Thread {
         }
 
         // 3、阻塞结束后放行，执行其他操作
+        NrpcBootstrap.SERVERS_LIST.values().forEach(service -> ServiceExecutors.shutdown(service.getExecutor()));
         NettyServerBootstrapInitializer.boss.shutdownGracefully();
         NettyServerBootstrapInitializer.worker.shutdownGracefully();
     }
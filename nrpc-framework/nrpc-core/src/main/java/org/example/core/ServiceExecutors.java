@@ -0,0 +1,116 @@
+package org.example.core;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ServiceConfig;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+
+/**
+ * 为服务创建业务线程池，让方法调用离开netty的io线程
+ * pool     有界线程池，队列满了直接拒绝
+ * virtual  每个请求一个虚拟线程，使用信号量限制最大并发（jdk21及以上，否则退化为pool）
+ * inline   直接在io线程中执行，只适合非常轻量的方法
+ * @author xiaonaol
+ * @date 2025/1/5
+ **/
+@Slf4j
+public class ServiceExecutors {
+
+    public static final String POOL = "pool";
+    public static final String VIRTUAL = "virtual";
+    public static final String INLINE = "inline";
+
+    private ServiceExecutors() {
+    }
+
+    /**
+     * 根据服务的配置创建一个业务执行器
+     * @param service 服务配置
+     * @return 业务执行器，超出容量时execute会抛出RejectedExecutionException
+     * @author xiaonaol
+     */
+    public static Executor create(ServiceConfig<?> service) {
+        String type = service.getExecutorType() == null ? POOL : service.getExecutorType().trim().toLowerCase();
+        String name = "nrpc-" + service.getInterface().getSimpleName();
+
+        switch (type) {
+            case INLINE:
+                return Runnable::run;
+            case VIRTUAL:
+                ExecutorService virtual = newVirtualThreadExecutor();
+                if(virtual != null) {
+                    return new BoundedExecutor(virtual, service.getQueues());
+                }
+                log.warn("当前jdk不支持虚拟线程，服务【{}】将使用有界线程池", service.getInterface().getName());
+                return newBoundedPool(name, service.getThreads(), service.getQueues());
+            case POOL:
+                return newBoundedPool(name, service.getThreads(), service.getQueues());
+            default:
+                log.warn("未知的业务线程模型【{}】，服务【{}】将使用有界线程池", type, service.getInterface().getName());
+                return newBoundedPool(name, service.getThreads(), service.getQueues());
+        }
+    }
+
+    /**
+     * 关闭执行器，inline模式不需要关闭
+     * @param executor 执行器
+     */
+    public static void shutdown(Executor executor) {
+        if(executor instanceof ExecutorService executorService) {
+            executorService.shutdown();
+        } else if(executor instanceof BoundedExecutor boundedExecutor) {
+            boundedExecutor.delegate.shutdown();
+        }
+    }
+
+    private static ExecutorService newBoundedPool(String name, int threads, int queues) {
+        // 队列有界，拒绝策略使用AbortPolicy，保证io线程永远不会被阻塞
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queues), new DefaultThreadFactory(name, true),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 使用信号量限制同时执行的任务数，拿不到许可直接拒绝
+     */
+    private static class BoundedExecutor implements Executor {
+
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        private BoundedExecutor(ExecutorService delegate, int maxConcurrency) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if(!permits.tryAcquire()) {
+                throw new RejectedExecutionException("业务并发数已达上限");
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+    }
+}
@@ -26,4 +26,14 @@ public interface Registry {
      * @author xiaonaol
      */
     List<InetSocketAddress> lookup(String serviceName, String group);
+
+    /**
+     * 获取服务提供方发布的元数据（权重、预热时间等），在lookup之后调用
+     * @param serviceName 服务名
+     * @param address     服务提供方地址
+     * @return 元数据，注册中心不支持或者没有发布时返回默认值
+     */
+    default ServiceMetadata getMetadata(String serviceName, InetSocketAddress address) {
+        return ServiceMetadata.DEFAULT;
+    }
 }
@@ -0,0 +1,142 @@
+package org.example.discovery;
+
+import lombok.Getter;
+import org.example.NrpcBootstrap;
+import org.example.ServiceConfig;
+import org.example.config.Configuration;
+
+import java.net.InetAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 服务提供方随节点一起发布的元数据，格式为 weight=100&warmup=600000&timestamp=1737264000000&zone=az1&host=host1
+ * zone和host为所在的可用区和主机标签，值经过url编码
+ * 解析时忽略不认识的项，缺少的项使用默认值，新旧版本的节点可以共存
+ * @author xiaonaol
+ * @date 2025/1/19
+ **/
+@Getter
+public class ServiceMetadata {
+
+    public static final ServiceMetadata DEFAULT = new ServiceMetadata(100, 0, 0, null, null);
+
+    // 权重
+    private final int weight;
+    // 预热时间（毫秒）
+    private final int warmup;
+    // 服务发布的时间
+    private final long timestamp;
+    // 所在的可用区和主机，没有配置时为null
+    private final String zone;
+    private final String host;
+
+    public ServiceMetadata(int weight, int warmup, long timestamp) {
+        this(weight, warmup, timestamp, null, null);
+    }
+
+    public ServiceMetadata(int weight, int warmup, long timestamp, String zone, String host) {
+        this.weight = weight;
+        this.warmup = warmup;
+        this.timestamp = timestamp;
+        this.zone = zone;
+        this.host = host;
+    }
+
+    public static ServiceMetadata of(ServiceConfig<?> service) {
+        Configuration configuration = NrpcBootstrap.getInstance().getConfiguration();
+        return new ServiceMetadata(service.getWeight(), service.getWarmup(), System.currentTimeMillis(),
+                configuration.getZone(), configuration.getHost() != null ? configuration.getHost() : localHostName());
+    }
+
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    public byte[] encode() {
+        StringBuilder sb = new StringBuilder()
+                .append("weight=").append(weight)
+                .append("&warmup=").append(warmup)
+                .append("&timestamp=").append(timestamp);
+        if (zone != null && !zone.isEmpty()) {
+            sb.append("&zone=").append(URLEncoder.encode(zone, StandardCharsets.UTF_8));
+        }
+        if (host != null && !host.isEmpty()) {
+            sb.append("&host=").append(URLEncoder.encode(host, StandardCharsets.UTF_8));
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static ServiceMetadata parse(byte[] data) {
+        if (data == null || data.length == 0) {
+            return DEFAULT;
+        }
+        int weight = DEFAULT.weight;
+        int warmup = DEFAULT.warmup;
+        long timestamp = DEFAULT.timestamp;
+        String zone = null;
+        String host = null;
+        for (String item : new String(data, StandardCharsets.UTF_8).split("&")) {
+            int index = item.indexOf('=');
+            if (index <= 0) {
+                continue;
+            }
+            String value = item.substring(index + 1).trim();
+            try {
+                switch (item.substring(0, index).trim()) {
+                    case "weight" -> weight = Integer.parseInt(value);
+                    case "warmup" -> warmup = Integer.parseInt(value);
+                    case "timestamp" -> timestamp = Long.parseLong(value);
+                    case "zone" -> zone = URLDecoder.decode(value, StandardCharsets.UTF_8);
+                    case "host" -> host = URLDecoder.decode(value, StandardCharsets.UTF_8);
+                    default -> {
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                // 格式错误的项使用默认值
+            }
+        }
+        return new ServiceMetadata(weight, warmup, timestamp, zone, host);
+    }
+
+    /**
+     * 发布时间使用的是服务提供方的时钟，比本地时钟快时运行时间会是负数，一直停留在最小权重
+     * 这种情况下把本地第一次看到这个节点的时间当作发布时间，预热最多推迟到本地发现它之后的warmup毫秒
+     * 提供方时钟比本地慢时运行时间会偏大、预热提前结束，这种偏差无法从元数据中判断，需要保证机器间的时钟同步
+     * @param now 本地当前时间
+     * @return 发布时间不晚于now的元数据
+     */
+    public ServiceMetadata observedAt(long now) {
+        if (timestamp <= now) {
+            return this;
+        }
+        return new ServiceMetadata(weight, warmup, now, zone, host);
+    }
+
+    /**
+     * 考虑预热后的当前权重，预热期间按照已经运行的时间线性增长，最小为1
+     * @param now 当前时间
+     * @return 当前权重，权重小于等于0时返回0，表示不接收流量
+     */
+    public int getWarmupWeight(long now) {
+        if (weight <= 0) {
+            return 0;
+        }
+        long uptime = now - timestamp;
+        if (warmup <= 0 || timestamp <= 0 || uptime >= warmup) {
+            return weight;
+        }
+        return (int) Math.max(1, Math.max(0, uptime) * weight / warmup);
+    }
+
+    @Override
+    public String toString() {
+        return new String(encode(), StandardCharsets.UTF_8);
+    }
+}
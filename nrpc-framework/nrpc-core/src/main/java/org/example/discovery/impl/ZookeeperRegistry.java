@@ -9,6 +9,7 @@ import org.example.Constant;
 import org.example.NrpcBootstrap;
 import org.example.ServiceConfig;
 import org.example.discovery.AbstractRegistry;
+import org.example.discovery.ServiceMetadata;
 import org.example.exceptions.DiscoveryException;
 import org.example.exceptions.NetworkException;
 import org.example.utils.zookeeper.NetUtils;
@@ -18,7 +19,11 @@ import org.example.watcher.OnlineAndOfflineWatcher;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -30,6 +35,9 @@ public class ZookeeperRegistry extends AbstractRegistry {
     // 维护一个zk实例
     private ZooKeeper zooKeeper;
 
+    // lookup时读取的服务提供方元数据，服务名 -> 地址 -> 节点，每次lookup整体替换，下线的节点随之移除
+    private final Map<String, Map<InetSocketAddress, ProviderNode>> metadata = new ConcurrentHashMap<>(16);
+
     public ZookeeperRegistry() {
         this.zooKeeper = ZookeeperUtils.createZookeeper();
     }
@@ -57,13 +65,13 @@ public class ZookeeperRegistry extends AbstractRegistry {
             ZookeeperUtils.createNode(zooKeeper, zookeeperNode, null, CreateMode.PERSISTENT);
         }
 
-        // 创建本机临时节点，ip:port
+        // 创建本机临时节点，ip:port，节点数据为权重、预热时间等元数据
         // 服务提供方的端口一般自己设定，我们还需要一个获取ip的方法
         // ip我们通常需要一个局域网ip，不是127.0.0.1
         // todo: 后续处理端口问题
         String node = parentNode + "/" + NetUtils.getIp() + ":" + NrpcBootstrap.getInstance().getConfiguration().getPort();
         if(!ZookeeperUtils.exists(zooKeeper, node, null)) {
-            ZookeeperNode zookeeperNode = new ZookeeperNode(node, null);
+            ZookeeperNode zookeeperNode = new ZookeeperNode(node, ServiceMetadata.of(service).encode());
             ZookeeperUtils.createNode(zooKeeper, zookeeperNode, null, CreateMode.EPHEMERAL);
         }
 
@@ -81,13 +89,25 @@ public class ZookeeperRegistry extends AbstractRegistry {
         // 2. 从zk中获取他的子节点
         List<String> children = ZookeeperUtils.getChildren(zooKeeper, serviceNode, new OnlineAndOfflineWatcher());
 
-        // 获取了所有的可用的服务列表
+        // 获取了所有的可用的服务列表，同时读取每个节点的元数据
+        Map<InetSocketAddress, ProviderNode> previous = metadata.getOrDefault(serviceName, Map.of());
+        Map<InetSocketAddress, ProviderNode> current = new HashMap<>(children.size() * 2);
+        long now = System.currentTimeMillis();
         List<InetSocketAddress> inetSocketAddresses = children.stream().map( ipString -> {
             String[] ipAndPort = ipString.split(":");
             String ip = ipAndPort[0];
             int port = Integer.valueOf(ipAndPort[1]);
-            return new InetSocketAddress(ip, port);
+            InetSocketAddress address = new InetSocketAddress(ip, port);
+            byte[] data = ZookeeperUtils.getData(zooKeeper, serviceNode + "/" + ipString, null);
+            // 节点数据没有变化时沿用之前的元数据，保留第一次看到它时修正过的发布时间
+            ProviderNode node = previous.get(address);
+            if (node == null || !Arrays.equals(node.data(), data)) {
+                node = new ProviderNode(data, ServiceMetadata.parse(data).observedAt(now));
+            }
+            current.put(address, node);
+            return address;
         }).toList();
+        metadata.put(serviceName, current);
 
         if(inetSocketAddresses.isEmpty()) {
             throw new DiscoveryException("未发现任何可用的服务主机");
@@ -95,4 +115,17 @@ public class ZookeeperRegistry extends AbstractRegistry {
 
         return inetSocketAddresses;
     }
+
+    @Override
+    public ServiceMetadata getMetadata(String serviceName, InetSocketAddress address) {
+        Map<InetSocketAddress, ProviderNode> nodes = metadata.get(serviceName);
+        ProviderNode node = nodes == null ? null : nodes.get(address);
+        return node == null ? ServiceMetadata.DEFAULT : node.metadata();
+    }
+
+    /**
+     * 一个服务提供方节点的原始数据和解析后的元数据
+     */
+    private record ProviderNode(byte[] data, ServiceMetadata metadata) {
+    }
 }
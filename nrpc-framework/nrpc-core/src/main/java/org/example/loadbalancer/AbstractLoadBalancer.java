@@ -21,8 +21,27 @@ public abstract class AbstractLoadBalancer implements LoadBalancer {
     // 一个服务会匹配一个selector
     private final Map<String, Selector> cache = new ConcurrentHashMap<>(8);
 
+    // 重试时为了避开失败节点最多重新选择的次数
+    private static final int MAX_RESELECT_TIMES = 3;
+
     @Override
     public InetSocketAddress selectServiceAddress(String serviceName, String group) {
+        return getOrCreateSelector(serviceName, group).getNext();
+    }
+
+    @Override
+    public InetSocketAddress selectServiceAddress(String serviceName, String group, InetSocketAddress excluded) {
+        Selector selector = getOrCreateSelector(serviceName, group);
+        InetSocketAddress address = selector.getNext();
+
+        // 选中了需要避开的节点就重新选择，只有一个节点时只能继续使用它
+        for (int i = 0; excluded != null && excluded.equals(address) && i < MAX_RESELECT_TIMES; i++) {
+            address = selector.getNext();
+        }
+        return address;
+    }
+
+    private Selector getOrCreateSelector(String serviceName, String group) {
 
         // 1、优先从cache中获取一个selector
         Selector selector = cache.get(serviceName);
@@ -34,13 +53,13 @@ public abstract class AbstractLoadBalancer implements LoadBalancer {
                     getConfiguration().getRegistryConfig().getRegistry().lookup(serviceName, group);
 
             // 提供一些算法负责选取合适的节点
-            selector = getSelector(serviceList);
+            selector = getSelector(serviceName, serviceList);
 
             // 将selector放入缓存中
             cache.put(serviceName, selector);
         }
 
-        return selector.getNext();
+        return selector;
     }
 
     /**
@@ -51,9 +70,32 @@ public abstract class AbstractLoadBalancer implements LoadBalancer {
      */
     protected abstract Selector getSelector(List<InetSocketAddress> serviceList);
 
+    /**
+     * 需要服务名的子类（比如要从注册中心读取节点的元数据）可以覆盖这个方法
+     *
+     * @param serviceName 服务名
+     * @param serviceList 服务列表
+     * @return 负载均衡算法选择器
+     */
+    protected Selector getSelector(String serviceName, List<InetSocketAddress> serviceList) {
+        return getSelector(serviceList);
+    }
+
+    /**
+     * 服务列表变化时生成新的selector，默认重新创建，子类可以在旧的selector基础上只处理变化的节点
+     *
+     * @param serviceName 服务名
+     * @param selector    旧的selector，可能为null
+     * @param serviceList 新的服务列表
+     * @return 新的selector
+     */
+    protected Selector reloadSelector(String serviceName, Selector selector, List<InetSocketAddress> serviceList) {
+        return getSelector(serviceName, serviceList);
+    }
+
     @Override
     public synchronized void reLoadBalancer(String serviceName, List<InetSocketAddress> addresses) {
         // 根据新的服务列表生成新的selector
-        cache.put(serviceName, getSelector(addresses));
+        cache.put(serviceName, reloadSelector(serviceName, cache.get(serviceName), addresses));
     }
 }
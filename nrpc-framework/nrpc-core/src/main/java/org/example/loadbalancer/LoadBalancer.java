@@ -14,6 +14,16 @@ public interface LoadBalancer {
      */
     InetSocketAddress selectServiceAddress(String serviceName, String group);
 
+    /**
+     * 根据服务名获取一个可用的服务，尽量避开指定的节点，重试时用来绕开刚刚失败的节点
+     * @param serviceName 服务名
+     * @param excluded    需要避开的节点，可以为null
+     * @return 服务地址
+     */
+    default InetSocketAddress selectServiceAddress(String serviceName, String group, InetSocketAddress excluded) {
+        return selectServiceAddress(serviceName, group);
+    }
+
     
     /**
      * 当感知节点发生了动态上下线，我们需要重新进行负载均衡
@@ -21,4 +31,20 @@ public interface LoadBalancer {
      * @author xiaonaol
      */
     void reLoadBalancer(String serviceName, List<InetSocketAddress> addresses);
+
+    /**
+     * 请求发送到选中的节点之前回调，需要根据真实调用情况选择节点的负载均衡器可以覆盖
+     * @param address 节点地址
+     */
+    default void onRequestStart(InetSocketAddress address) {
+    }
+
+    /**
+     * 请求结束时回调，与onRequestStart成对出现
+     * @param address      节点地址
+     * @param latencyNanos 请求耗时（纳秒）
+     * @param success      请求是否成功
+     */
+    default void onRequestComplete(InetSocketAddress address, long latencyNanos, boolean success) {
+    }
 }
@@ -0,0 +1,57 @@
+package org.example.loadbalancer;
+
+/**
+ * MurmurHash3 x86_32，非加密的快速hash，分布均匀，用于一致性hash环
+ * 字符串按照UTF-16的char直接计算，不需要先编码成字节数组
+ * @author xiaonaol
+ * @date 2025/1/19
+ **/
+public final class MurmurHash3 {
+
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+    private MurmurHash3() {
+    }
+
+    public static int hash32(CharSequence chars, int seed) {
+        int h1 = seed;
+        int length = chars.length();
+        for (int i = 1; i < length; i += 2) {
+            int k1 = chars.charAt(i - 1) | (chars.charAt(i) << 16);
+            h1 = mixH1(h1, mixK1(k1));
+        }
+        if ((length & 1) == 1) {
+            h1 ^= mixK1(chars.charAt(length - 1));
+        }
+        return fmix(h1, 2 * length);
+    }
+
+    public static int hash32(long value, int seed) {
+        int h1 = mixH1(seed, mixK1((int) value));
+        h1 = mixH1(h1, mixK1((int) (value >>> 32)));
+        return fmix(h1, 8);
+    }
+
+    private static int mixK1(int k1) {
+        k1 *= C1;
+        k1 = Integer.rotateLeft(k1, 15);
+        return k1 * C2;
+    }
+
+    private static int mixH1(int h1, int k1) {
+        h1 ^= k1;
+        h1 = Integer.rotateLeft(h1, 13);
+        return h1 * 5 + 0xe6546b64;
+    }
+
+    private static int fmix(int h1, int length) {
+        h1 ^= length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+}
@@ -2,137 +2,268 @@ package org.example.loadbalancer.impl;
 
 import lombok.extern.slf4j.Slf4j;
 import org.example.NrpcBootstrap;
+import org.example.annotation.HashKey;
+import org.example.config.Configuration;
 import org.example.exceptions.LoadBalancerException;
 import org.example.loadbalancer.AbstractLoadBalancer;
+import org.example.loadbalancer.MurmurHash3;
 import org.example.loadbalancer.Selector;
 import org.example.transport.message.NrpcRequest;
+import org.example.transport.message.RequestPayload;
 
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * 轮询的负载均衡策略
+ * 一致性hash的负载均衡策略，按照方法参数计算hash，同样参数的调用总是落到同一个节点上
+ * 参数的选择：方法上有@HashKey标注的参数时使用标注的参数，否则使用全局配置的参数下标
  * @author xiaonaol
  * @date 2024/11/24
  **/
 @Slf4j
 public class ConsistentHashLoadBalancer extends AbstractLoadBalancer{
 
+    private static final Class<?>[] EMPTY_TYPES = new Class<?>[0];
+
+    // 接口名 -> 方法名 -> 同名的重载方法各自参与hash的参数下标，查找时比较参数类型，不需要拼接签名
+    private final Map<String, Map<String, HashArguments[]>> hashArguments = new ConcurrentHashMap<>(8);
+
     @Override
     protected Selector getSelector(List<InetSocketAddress> serviceList) {
-        return new ConsistentHashSelector(serviceList, 128);
+        return rebuild(null, serviceList);
+    }
+
+    @Override
+    protected Selector reloadSelector(String serviceName, Selector selector, List<InetSocketAddress> serviceList) {
+        return rebuild(selector, serviceList);
+    }
+
+    private Selector rebuild(Selector selector, List<InetSocketAddress> serviceList) {
+        int virtualNodes = NrpcBootstrap.getInstance().getConfiguration().getConsistentHashVirtualNodes();
+        ConsistentHashSelector previous = selector instanceof ConsistentHashSelector consistentHashSelector
+                && consistentHashSelector.virtualNodes == virtualNodes ? consistentHashSelector : null;
+        return new ConsistentHashSelector(previous, serviceList, virtualNodes);
     }
 
     /**
-     * 一致性hash的具体算法实现
+     * 计算请求的hash，没有请求时（比如不是在调用过程中选择节点）返回0
+     * 有参与hash的参数时只按参数计算，同一个key在不同方法中也会落到同一个节点上，方便节点上按key做本地缓存
      */
-    private static class ConsistentHashSelector implements Selector {
-
-        // hash环用来存储服务器节点
-        private SortedMap<Integer, InetSocketAddress> circle = new TreeMap<>();
-        // 虚拟节点的个数
-        private int virtualNodes;
+    private int hash(NrpcRequest nrpcRequest) {
+        if (nrpcRequest == null || nrpcRequest.getRequestPayload() == null) {
+            return 0;
+        }
+        RequestPayload payload = nrpcRequest.getRequestPayload();
+        Object[] values = payload.getParametersValue();
+        int[] arguments = getArguments(payload);
 
-        public ConsistentHashSelector(List<InetSocketAddress> serviceList, int virtualNodes) {
-            // 将节点转化为虚拟节点，进行挂载
-            this.virtualNodes = virtualNodes;
-            for(InetSocketAddress inetSocketAddress: serviceList) {
-                // 需要把每一个节点加入到hash环中
-                addNodeToCircle(inetSocketAddress);
+        int hash = 0;
+        boolean hashed = false;
+        for (int index : arguments) {
+            if (values != null && index < values.length) {
+                hash = hashValue(values[index], hash);
+                hashed = true;
             }
         }
+        // 没有可用的参数时按方法名计算，同一个方法的调用落到同一个节点
+        return hashed ? hash : MurmurHash3.hash32(payload.getMethodName(), 0);
+    }
 
-        /**
-         * 具体的hash算法 todo 需要改进
-         * @param s
-         * @return hash值
-         */
-        private int hash(String s) {
-            MessageDigest md;
-            try {
-                md = MessageDigest.getInstance("MD5");
-            } catch (NoSuchAlgorithmException e) {
-                throw new RuntimeException(e);
+    private int[] getArguments(RequestPayload payload) {
+        Class<?>[] parametersType = payload.getParametersType() == null ? EMPTY_TYPES : payload.getParametersType();
+        Map<String, HashArguments[]> methods = hashArguments.computeIfAbsent(payload.getInterfaceName(),
+                key -> new ConcurrentHashMap<>(16));
+        HashArguments[] overloads = methods.get(payload.getMethodName());
+        if (overloads != null) {
+            for (HashArguments overload : overloads) {
+                if (Arrays.equals(overload.parametersType, parametersType)) {
+                    return overload.arguments;
+                }
             }
-            byte[] digest = md.digest(s.getBytes());
-            // md5得到的结果是一个字节数组，但是我们想要int 4个字节
-
-            int res = 0;
-            for(int i = 0; i < 4; i++) {
-                res = res << 8;
-                if(digest[i] < 0) {
-                    res = res | (digest[i] & 255);
+        }
+
+        // 第一次调用这个方法，解析后追加到重载列表中
+        HashArguments resolved = new HashArguments(parametersType.clone(), resolveArguments(payload));
+        methods.merge(payload.getMethodName(), new HashArguments[]{resolved}, (existing, added) -> {
+            for (HashArguments overload : existing) {
+                if (Arrays.equals(overload.parametersType, parametersType)) {
+                    return existing;
                 }
-                res = res | digest[i];
             }
+            HashArguments[] merged = Arrays.copyOf(existing, existing.length + 1);
+            merged[existing.length] = resolved;
+            return merged;
+        });
+        return resolved.arguments;
+    }
 
-            return res;
+    /**
+     * 按参数的内容计算hash，同样内容的参数在不同的调用方、不同的进程中结果相同
+     * 1、整数、字符串、布尔、字符、浮点数按值计算，枚举按名称计算
+     * 2、数组按元素逐个计算
+     * 3、其他对象使用hashCode()，需要按内容重写hashCode（record、集合、String等都满足），
+     *    没有重写的类使用的是对象的identity hash，每次调用都会落到不同的节点上，不适合作为hash参数
+     */
+    private static int hashValue(Object value, int seed) {
+        if (value == null) {
+            return MurmurHash3.hash32(0L, seed);
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return MurmurHash3.hash32(((Number) value).longValue(), seed);
+        }
+        if (value instanceof CharSequence chars) {
+            return MurmurHash3.hash32(chars, seed);
+        }
+        if (value instanceof Boolean bool) {
+            return MurmurHash3.hash32(bool ? 1L : 0L, seed);
         }
+        if (value instanceof Character character) {
+            return MurmurHash3.hash32(character, seed);
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return MurmurHash3.hash32(Double.doubleToLongBits(((Number) value).doubleValue()), seed);
+        }
+        if (value instanceof Enum<?> enumValue) {
+            return MurmurHash3.hash32(enumValue.name(), seed);
+        }
+        if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            int hash = MurmurHash3.hash32(length, seed);
+            for (int i = 0; i < length; i++) {
+                hash = hashValue(Array.get(value, i), hash);
+            }
+            return hash;
+        }
+        return MurmurHash3.hash32(value.hashCode(), seed);
+    }
 
-        @Override
-        public InetSocketAddress getNext() {
-            // 1、hash环已经建立，接下来要对请求的要素做处理
-            // 需要获取到具体的请求 --> ThreadLocal
-            NrpcRequest nrpcRequest = NrpcBootstrap.REQUEST_THREAD_LOCAL.get();
+    private int[] resolveArguments(RequestPayload payload) {
+        Class<?>[] parametersType = payload.getParametersType() == null ? EMPTY_TYPES : payload.getParametersType();
+        // 1、@HashKey标注的参数
+        try {
+            Class<?> anInterface = Class.forName(payload.getInterfaceName(), false,
+                    Thread.currentThread().getContextClassLoader());
+            Method method = anInterface.getMethod(payload.getMethodName(), parametersType);
+            Annotation[][] annotations = method.getParameterAnnotations();
+            int[] annotated = new int[annotations.length];
+            int count = 0;
+            for (int i = 0; i < annotations.length; i++) {
+                for (Annotation annotation : annotations[i]) {
+                    if (annotation instanceof HashKey) {
+                        annotated[count++] = i;
+                        break;
+                    }
+                }
+            }
+            if (count > 0) {
+                return Arrays.copyOf(annotated, count);
+            }
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            log.warn("没有找到方法【{}.{}】，按照全局配置选择hash参数", payload.getInterfaceName(), payload.getMethodName());
+        }
+
+        // 2、全局配置的参数下标，超出参数个数的忽略
+        Configuration configuration = NrpcBootstrap.getInstance().getConfiguration();
+        return Arrays.stream(configuration.getConsistentHashArguments())
+                .filter(index -> index >= 0 && index < parametersType.length)
+                .toArray();
+    }
 
-            // 我们想根据请求的一些特征来选择服务器 id
-            String requestId = Long.toString(nrpcRequest.getRequestId());
+    /**
+     * 一个重载方法参与hash的参数下标
+     */
+    private record HashArguments(Class<?>[] parametersType, int[] arguments) {
+    }
 
-            // 对请求的id做hash，字符串默认的hash不好
-            int hash = hash(requestId);
+    /**
+     * 一致性hash的具体算法实现
+     * hash环由两个按hash值排好序的数组表示，查找时二分，不需要装箱
+     * 节点变化时复用未变化节点已经算好的虚拟节点，只计算新增的节点
+     */
+    private class ConsistentHashSelector implements Selector {
 
-            // 判断该hash值是否能够直接落在一个服务器上
-            if(!circle.containsKey(hash)) {
-                // 寻找最近的一个节点
-                SortedMap<Integer, InetSocketAddress> tailMap = circle.tailMap(hash);
-                hash = tailMap.isEmpty() ? circle.firstKey() : tailMap.firstKey();
-            }
+        // hash环：ring[i]位置的虚拟节点属于nodes[i]
+        private final int[] ring;
+        private final InetSocketAddress[] nodes;
+        // 虚拟节点的个数
+        private final int virtualNodes;
 
+        public ConsistentHashSelector(ConsistentHashSelector previous, List<InetSocketAddress> serviceList, int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+            Set<InetSocketAddress> current = new HashSet<>(serviceList);
+            int size = current.size() * virtualNodes;
 
-            return circle.get(hash);
-        }
+            // 1、保留旧环上仍然存在的节点，顺序不变
+            int[] kept = new int[size];
+            InetSocketAddress[] keptNodes = new InetSocketAddress[size];
+            int keptCount = 0;
+            Set<InetSocketAddress> existing = new HashSet<>();
+            if (previous != null) {
+                for (int i = 0; i < previous.ring.length; i++) {
+                    if (current.contains(previous.nodes[i])) {
+                        kept[keptCount] = previous.ring[i];
+                        keptNodes[keptCount++] = previous.nodes[i];
+                        existing.add(previous.nodes[i]);
+                    }
+                }
+            }
 
-        /**
-         * 将每个接待你挂载到hash环上
-         * @param inetSocketAddress 节点地址
-         */
-        private void addNodeToCircle(InetSocketAddress inetSocketAddress) {
-            // 为每一个节点生成匹配的虚拟节点进行挂载
-            for(int i = 0; i < virtualNodes; i++) {
-                int hash = hash(inetSocketAddress + "-" + i);
-                // 挂载到hash环上
-                circle.put(hash, inetSocketAddress);
-                if(log.isDebugEnabled()) {
-                    log.debug("hash【{}】的节点已经挂载到了哈希环上", hash);
+            // 2、计算新增节点的虚拟节点
+            List<InetSocketAddress> added = new ArrayList<>();
+            for (InetSocketAddress address : current) {
+                if (!existing.contains(address)) {
+                    added.add(address);
                 }
             }
-        }
+            long[] addedPoints = new long[added.size() * virtualNodes];
+            for (int n = 0; n < added.size(); n++) {
+                String name = added.get(n).getHostString() + ":" + added.get(n).getPort();
+                for (int i = 0; i < virtualNodes; i++) {
+                    // 高32位是hash，低32位是节点在added中的下标，排序后hash相同的点顺序也是确定的
+                    addedPoints[n * virtualNodes + i] = (long) MurmurHash3.hash32(name, i) << 32 | n;
+                }
+            }
+            Arrays.sort(addedPoints);
 
-        /**
-         * 将节点从hash环上删除
-         * @param inetSocketAddress 节点地址
-         */
-        private void removeNodeFromCircle(InetSocketAddress inetSocketAddress) {
-            // 为每一个节点生成匹配的虚拟节点进行挂载
-            for(int i = 0; i < virtualNodes; i++) {
-                int hash = hash(inetSocketAddress + "-" + i);
-                // 挂载到hash环上
-                circle.remove(hash, inetSocketAddress);
+            // 3、合并两个有序序列
+            ring = new int[keptCount + addedPoints.length];
+            nodes = new InetSocketAddress[ring.length];
+            int i = 0;
+            int j = 0;
+            for (int k = 0; k < ring.length; k++) {
+                if (j >= addedPoints.length || i < keptCount && kept[i] <= (int) (addedPoints[j] >> 32)) {
+                    ring[k] = kept[i];
+                    nodes[k] = keptNodes[i++];
+                } else {
+                    ring[k] = (int) (addedPoints[j] >> 32);
+                    nodes[k] = added.get((int) addedPoints[j++]);
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("hash环已更新，保留节点【{}】个，新增节点【{}】个，虚拟节点共【{}】个",
+                        existing.size(), added.size(), ring.length);
             }
         }
 
-        private String toBinary(int i) {
-            String s = Integer.toBinaryString(i);
-            int index = 32 - s.length();
-            StringBuilder sb = new StringBuilder(s);
-            for(int j = 0; j < index; j ++ ) {
-                sb.append(0);
+        @Override
+        public InetSocketAddress getNext() {
+            if (ring.length == 0) {
+                log.error("负载均衡失败，当前没有可用的服务");
+                throw new LoadBalancerException();
+            }
+            // 需要获取到具体的请求 --> ThreadLocal，根据请求的参数来选择服务器
+            int hash = hash(NrpcBootstrap.REQUEST_THREAD_LOCAL.get());
+
+            // 顺时针找到第一个hash值大于等于它的虚拟节点，超过最后一个时回到环的起点
+            int index = Arrays.binarySearch(ring, hash);
+            if (index < 0) {
+                index = -index - 1;
             }
-            sb.append(s);
-            return sb.toString();
+            return nodes[index == ring.length ? 0 : index];
         }
     }
 }
@@ -0,0 +1,189 @@
+package org.example.loadbalancer.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.NrpcBootstrap;
+import org.example.config.Configuration;
+import org.example.discovery.Registry;
+import org.example.exceptions.LoadBalancerException;
+import org.example.loadbalancer.AbstractLoadBalancer;
+import org.example.loadbalancer.Selector;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 可用区感知的负载均衡策略，优先选择与本机同一个可用区（zone）的节点，跨可用区的调用延迟高、还要付带宽费用
+ * 只有本可用区承接不了时才分流到其他可用区：
+ * 1、本可用区没有健康的节点，全部分流
+ * 2、健康节点的比例乘以OVERPROVISIONING仍不足1时，按照缺口的比例分流（与envoy的做法相同，少量节点故障时不分流）
+ * 3、本可用区健康节点的平均并发达到localityMaxInflight，说明已经饱和，分流
+ * 在选中的一组节点中随机取两个，选择正在处理的请求更少的一个
+ * 节点连续失败localityFailureThreshold次认为不健康，localityRecoveryTime毫秒后重新尝试
+ * 本机或节点没有配置zone时，所有节点视为同一个可用区
+ * @author xiaonaol
+ * @date 2025/1/19
+ **/
+@Slf4j
+public class LocalityAwareLoadBalancer extends AbstractLoadBalancer {
+
+    private static final double OVERPROVISIONING = 1.4;
+
+    // 节点的统计数据，同一个节点上的不同服务共用
+    private final Map<InetSocketAddress, NodeStats> stats = new ConcurrentHashMap<>(16);
+
+    @Override
+    protected Selector getSelector(List<InetSocketAddress> serviceList) {
+        return new LocalitySelector(serviceList, List.of());
+    }
+
+    @Override
+    protected Selector getSelector(String serviceName, List<InetSocketAddress> serviceList) {
+        Configuration configuration = NrpcBootstrap.getInstance().getConfiguration();
+        String zone = configuration.getZone();
+        if (zone == null || zone.isEmpty()) {
+            return getSelector(serviceList);
+        }
+
+        // 按照节点发布的zone分为本可用区和其他可用区
+        Registry registry = configuration.getRegistryConfig().getRegistry();
+        List<InetSocketAddress> local = new ArrayList<>();
+        List<InetSocketAddress> remote = new ArrayList<>();
+        for (InetSocketAddress address : serviceList) {
+            String nodeZone = registry.getMetadata(serviceName, address).getZone();
+            (zone.equals(nodeZone) ? local : remote).add(address);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("服务【{}】在可用区【{}】中有【{}】个节点，其他可用区有【{}】个节点",
+                    serviceName, zone, local.size(), remote.size());
+        }
+        // 本可用区没有节点时只能使用其他可用区
+        return local.isEmpty() ? getSelector(remote) : new LocalitySelector(local, remote);
+    }
+
+    @Override
+    public void onRequestStart(InetSocketAddress address) {
+        stats(address).inflight.incrementAndGet();
+    }
+
+    @Override
+    public void onRequestComplete(InetSocketAddress address, long latencyNanos, boolean success) {
+        NodeStats nodeStats = stats(address);
+        nodeStats.inflight.decrementAndGet();
+        if (success) {
+            nodeStats.consecutiveFailures.set(0);
+        } else {
+            nodeStats.lastFailure = System.currentTimeMillis();
+            nodeStats.consecutiveFailures.incrementAndGet();
+        }
+    }
+
+    private NodeStats stats(InetSocketAddress address) {
+        return stats.computeIfAbsent(address, key -> new NodeStats());
+    }
+
+    private class LocalitySelector implements Selector {
+
+        private final InetSocketAddress[] local;
+        private final InetSocketAddress[] remote;
+        private final int maxInflight;
+        private final int failureThreshold;
+        private final long recoveryTime;
+
+        public LocalitySelector(List<InetSocketAddress> local, List<InetSocketAddress> remote) {
+            this.local = local == null ? new InetSocketAddress[0] : local.toArray(new InetSocketAddress[0]);
+            this.remote = remote.toArray(new InetSocketAddress[0]);
+            Configuration configuration = NrpcBootstrap.getInstance().getConfiguration();
+            this.maxInflight = configuration.getLocalityMaxInflight();
+            this.failureThreshold = configuration.getLocalityFailureThreshold();
+            this.recoveryTime = configuration.getLocalityRecoveryTime();
+        }
+
+        @Override
+        public InetSocketAddress getNext() {
+            if (local.length == 0) {
+                log.error("负载均衡失败，当前没有可用的服务");
+                throw new LoadBalancerException();
+            }
+            long now = System.currentTimeMillis();
+            if (remote.length == 0) {
+                return pick(local, now);
+            }
+
+            int healthy = 0;
+            long inflight = 0;
+            for (InetSocketAddress address : local) {
+                NodeStats nodeStats = stats(address);
+                if (isHealthy(nodeStats, now)) {
+                    healthy++;
+                    inflight += Math.max(0, nodeStats.inflight.get());
+                }
+            }
+
+            if (healthy == 0) {
+                return pick(remote, now);
+            }
+            double capacity = (double) healthy / local.length * OVERPROVISIONING;
+            if (capacity < 1 && ThreadLocalRandom.current().nextDouble() >= capacity) {
+                return pick(remote, now);
+            }
+            if (inflight >= (long) maxInflight * healthy) {
+                if (log.isDebugEnabled()) {
+                    log.debug("本可用区的节点已经饱和，平均并发【{}】，请求分流到其他可用区", inflight / healthy);
+                }
+                return pick(remote, now);
+            }
+            return pick(local, now);
+        }
+
+        /**
+         * 随机取两个节点，优先选择健康的，都健康时选择正在处理的请求更少的
+         */
+        private InetSocketAddress pick(InetSocketAddress[] nodes, long now) {
+            if (nodes.length == 1) {
+                return nodes[0];
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(nodes.length);
+            int second = random.nextInt(nodes.length - 1);
+            if (second >= first) {
+                second++;
+            }
+            NodeStats a = stats(nodes[first]);
+            NodeStats b = stats(nodes[second]);
+            boolean aHealthy = isHealthy(a, now);
+            boolean bHealthy = isHealthy(b, now);
+            if (aHealthy != bHealthy) {
+                return aHealthy ? nodes[first] : nodes[second];
+            }
+            if (!aHealthy) {
+                // 两个都不健康时在所有健康的节点中等概率选一个（蓄水池抽样），全部不健康才在这两个中选
+                InetSocketAddress chosen = null;
+                int seen = 0;
+                for (InetSocketAddress node : nodes) {
+                    if (isHealthy(stats(node), now) && random.nextInt(++seen) == 0) {
+                        chosen = node;
+                    }
+                }
+                if (chosen != null) {
+                    return chosen;
+                }
+            }
+            return a.inflight.get() <= b.inflight.get() ? nodes[first] : nodes[second];
+        }
+
+        private boolean isHealthy(NodeStats nodeStats, long now) {
+            return nodeStats.consecutiveFailures.get() < failureThreshold || now - nodeStats.lastFailure >= recoveryTime;
+        }
+    }
+
+    private static final class NodeStats {
+        private final AtomicInteger inflight = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long lastFailure;
+    }
+}
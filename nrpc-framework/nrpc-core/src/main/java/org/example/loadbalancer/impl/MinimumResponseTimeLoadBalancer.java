@@ -42,8 +42,7 @@ public class MinimumResponseTimeLoadBalancer extends AbstractLoadBalancer {
             }
 
             // 直接从缓存中获取一个可用的
-            Channel channel = (Channel) NrpcBootstrap.CHANNEL_CACHE.values().toArray()[0];
-            return (InetSocketAddress) channel.remoteAddress();
+            return NrpcBootstrap.CHANNEL_CACHE.keySet().iterator().next();
         }
     }
 }
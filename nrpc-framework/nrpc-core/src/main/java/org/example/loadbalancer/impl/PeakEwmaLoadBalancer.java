@@ -0,0 +1,130 @@
+package org.example.loadbalancer.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.exceptions.LoadBalancerException;
+import org.example.loadbalancer.AbstractLoadBalancer;
+import org.example.loadbalancer.Selector;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Peak EWMA + 二选一（power of two choices）的负载均衡策略
+ * 每个节点根据真实的rpc调用统计两个指标：
+ * 1、耗时的指数加权平均，新的耗时比平均值大时直接取新值（peak），节点变慢能立刻感知；
+ *    平均值随时间衰减（时间常数DECAY_NANOS），很久没有被选中的慢节点也会重新得到机会
+ * 2、正在处理的请求数
+ * 节点的代价 = 平均耗时 * (正在处理的请求数 + 1)，每次随机取两个节点，选择代价小的一个，
+ * 既不会像总是选最优节点那样把流量集中到一个节点，也能避开慢节点
+ * @author xiaonaol
+ * @date 2025/1/19
+ **/
+@Slf4j
+public class PeakEwmaLoadBalancer extends AbstractLoadBalancer {
+
+    private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // 还没有耗时数据的节点在有请求处理时的代价，让新节点先承接少量请求
+    private static final double PENALTY = TimeUnit.SECONDS.toNanos(1);
+
+    // 节点的统计数据，同一个节点上的不同服务共用
+    private final Map<InetSocketAddress, NodeStats> stats = new ConcurrentHashMap<>(16);
+
+    @Override
+    protected Selector getSelector(List<InetSocketAddress> serviceList) {
+        return new PeakEwmaSelector(serviceList);
+    }
+
+    @Override
+    public void onRequestStart(InetSocketAddress address) {
+        stats(address).inflight.incrementAndGet();
+    }
+
+    @Override
+    public void onRequestComplete(InetSocketAddress address, long latencyNanos, boolean success) {
+        NodeStats nodeStats = stats(address);
+        nodeStats.inflight.decrementAndGet();
+        nodeStats.observe(latencyNanos, success);
+    }
+
+    private NodeStats stats(InetSocketAddress address) {
+        return stats.computeIfAbsent(address, key -> new NodeStats());
+    }
+
+    private class PeakEwmaSelector implements Selector {
+
+        private final List<InetSocketAddress> serviceList;
+
+        public PeakEwmaSelector(List<InetSocketAddress> serviceList) {
+            this.serviceList = serviceList;
+        }
+
+        @Override
+        public InetSocketAddress getNext() {
+            if (serviceList == null || serviceList.isEmpty()) {
+                log.error("负载均衡失败，当前没有可用的服务");
+                throw new LoadBalancerException();
+            }
+            int size = serviceList.size();
+            if (size == 1) {
+                return serviceList.get(0);
+            }
+
+            // 随机取两个不同的节点
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            InetSocketAddress a = serviceList.get(first);
+            InetSocketAddress b = serviceList.get(second);
+            long now = System.nanoTime();
+            return stats(a).cost(now) <= stats(b).cost(now) ? a : b;
+        }
+    }
+
+    private static final class NodeStats {
+        private final AtomicInteger inflight = new AtomicInteger();
+        // 耗时的平均值（纳秒）和最后一次更新的时间
+        private volatile double ewma;
+        private volatile long stamp = System.nanoTime();
+
+        private synchronized void observe(long latencyNanos, boolean success) {
+            double sample = latencyNanos;
+            // 失败的请求往往很快返回，按平均耗时的两倍计入，避免故障节点因为“响应快”吸走流量
+            if (!success) {
+                sample = Math.max(sample, ewma * 2);
+            }
+            // 按照距离上次更新的时间决定新值的权重，请求频率不同的节点衰减速度一致
+            long now = System.nanoTime();
+            double weight = weight(now);
+            ewma = sample > ewma ? sample : ewma * weight + sample * (1 - weight);
+            stamp = now;
+        }
+
+        private double cost(long now) {
+            int pending = Math.max(0, inflight.get());
+            double current = decayed(now);
+            if (current == 0 && pending > 0) {
+                return PENALTY + pending;
+            }
+            return current * (pending + 1);
+        }
+
+        /**
+         * 平均值随时间向0衰减，长时间没有新数据的节点代价逐渐降低
+         */
+        private double decayed(long now) {
+            return ewma * weight(now);
+        }
+
+        private double weight(long now) {
+            return Math.exp(-Math.max(0, now - stamp) / (double) DECAY_NANOS);
+        }
+    }
+}
@@ -45,15 +45,8 @@ public class RoundRobinLoadBalancer extends AbstractLoadBalancer{
                 throw new LoadBalancerException();
             }
 
-            InetSocketAddress address = serviceList.get(index.get());
-
-            // 如果到了最后一位，重置index
-            if(index.get() == serviceList.size() - 1) {
-                index.set(0);
-            } else {
-                // 游标后移一位
-                index.incrementAndGet();
-            }
+            // 原子地移动游标，取模得到本次的节点，不会出现并发下越界或重复选择
+            InetSocketAddress address = serviceList.get(Math.floorMod(index.getAndIncrement(), serviceList.size()));
             return address;
         }
 
@@ -0,0 +1,108 @@
+package org.example.loadbalancer.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.NrpcBootstrap;
+import org.example.discovery.Registry;
+import org.example.discovery.ServiceMetadata;
+import org.example.exceptions.LoadBalancerException;
+import org.example.loadbalancer.AbstractLoadBalancer;
+import org.example.loadbalancer.Selector;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * 平滑加权轮询的负载均衡策略（与nginx相同的算法）
+ * 每次选择时每个节点的currentWeight加上自己的权重，选出currentWeight最大的节点，再让它减去所有节点的权重之和，
+ * 权重为 5:1:1 时选择顺序为 a a b a c a a，不会连续把请求都打到权重大的节点上
+ * 权重来自服务提供方发布到注册中心的元数据，刚启动的节点在预热时间内权重从很小线性增长，避免还没有预热的jvm承接全部流量
+ * @author xiaonaol
+ * @date 2025/1/19
+ **/
+@Slf4j
+public class WeightedRoundRobinLoadBalancer extends AbstractLoadBalancer {
+
+    @Override
+    protected Selector getSelector(List<InetSocketAddress> serviceList) {
+        return new WeightedRoundRobinSelector(serviceList, null, null);
+    }
+
+    @Override
+    protected Selector getSelector(String serviceName, List<InetSocketAddress> serviceList) {
+        Registry registry = NrpcBootstrap.getInstance().getConfiguration().getRegistryConfig().getRegistry();
+        ServiceMetadata[] metadata = new ServiceMetadata[serviceList.size()];
+        for (int i = 0; i < metadata.length; i++) {
+            metadata[i] = registry.getMetadata(serviceName, serviceList.get(i));
+        }
+        return new WeightedRoundRobinSelector(serviceList, metadata, serviceName);
+    }
+
+    private static class WeightedRoundRobinSelector implements Selector {
+
+        private final InetSocketAddress[] nodes;
+        private final ServiceMetadata[] metadata;
+        private final int[] currentWeights;
+        private final String serviceName;
+        // 所有节点都预热完成后不再需要计算预热权重
+        private boolean warm;
+        // 所有节点权重都是0时使用的普通轮询游标
+        private int index;
+
+        public WeightedRoundRobinSelector(List<InetSocketAddress> serviceList, ServiceMetadata[] metadata, String serviceName) {
+            this.nodes = serviceList == null ? new InetSocketAddress[0] : serviceList.toArray(new InetSocketAddress[0]);
+            this.metadata = new ServiceMetadata[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                this.metadata[i] = metadata == null || metadata[i] == null ? ServiceMetadata.DEFAULT : metadata[i];
+            }
+            this.currentWeights = new int[nodes.length];
+            this.serviceName = serviceName;
+        }
+
+        @Override
+        public synchronized InetSocketAddress getNext() {
+            if (nodes.length == 0) {
+                log.error("负载均衡失败，当前没有可用的服务");
+                throw new LoadBalancerException();
+            }
+            if (nodes.length == 1) {
+                return nodes[0];
+            }
+
+            long now = System.currentTimeMillis();
+            boolean allWarm = true;
+            int total = 0;
+            int best = -1;
+            for (int i = 0; i < nodes.length; i++) {
+                int weight;
+                if (warm) {
+                    weight = metadata[i].getWeight();
+                } else {
+                    weight = metadata[i].getWarmupWeight(now);
+                    allWarm &= weight == metadata[i].getWeight();
+                }
+                if (weight <= 0) {
+                    continue;
+                }
+                currentWeights[i] += weight;
+                total += weight;
+                if (best < 0 || currentWeights[i] > currentWeights[best]) {
+                    best = i;
+                }
+            }
+            if (!warm && allWarm) {
+                warm = true;
+                if (log.isDebugEnabled()) {
+                    log.debug("服务【{}】的所有节点已经完成预热", serviceName);
+                }
+            }
+
+            // 所有节点的权重都是0时退化为普通轮询
+            if (best < 0) {
+                best = Math.floorMod(index++, nodes.length);
+            } else {
+                currentWeights[best] -= total;
+            }
+            return nodes[best];
+        }
+    }
+}
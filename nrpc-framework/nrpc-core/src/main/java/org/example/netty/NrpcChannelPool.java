@@ -0,0 +1,224 @@
+package org.example.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+import org.example.NrpcBootstrap;
+import org.example.config.Configuration;
+import org.example.exceptions.NetworkException;
+import org.example.netty.initializer.NettyBootstrapInitializer;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一个服务提供方地址对应的连接池
+ * 1、懒增长：只有当已有的连接都在忙（有挂起的请求）时才会新建连接，直到达到上限
+ * 2、选择策略：轮询（roundRobin）或挂起请求最少（leastPending）
+ * 3、健康淘汰：连接关闭或心跳失败的连接会被移出连接池
+ * @author xiaonaol
+ * @date 2025/1/10
+ **/
+@Slf4j
+public class NrpcChannelPool {
+
+    public static final String ROUND_ROBIN = "roundRobin";
+    public static final String LEAST_PENDING = "leastPending";
+
+    // 每个通道上挂起的请求数，由PendingRequestRegistry维护
+    private static final AttributeKey<AtomicInteger> PENDING_COUNT = AttributeKey.valueOf("nrpc.pendingCount");
+
+    // 建立连接的超时时间，由netty在连接超时后让connect失败
+    public static final int CONNECT_TIMEOUT_MILLIS = 3000;
+
+    private final InetSocketAddress address;
+    private final int maxSize;
+    private final boolean leastPending;
+
+    private final List<Channel> channels = new CopyOnWriteArrayList<>();
+    private final AtomicInteger index = new AtomicInteger(0);
+    // 正在建立中的连接数，防止并发增长超过上限
+    private final AtomicInteger connecting = new AtomicInteger(0);
+    // 连接池为空时正在建立的第一个连接，同时到来的请求共用这一次连接
+    private CompletableFuture<Channel> firstConnect;
+
+    public NrpcChannelPool(InetSocketAddress address, int maxSize, String strategy) {
+        this.address = address;
+        this.maxSize = Math.max(1, maxSize);
+        this.leastPending = !ROUND_ROBIN.equals(strategy);
+    }
+
+    /**
+     * 从全局缓存中获取一个地址对应的连接池，不存在就按照配置创建
+     * @param address 服务提供方地址
+     * @return 连接池
+     * @author xiaonaol
+     */
+    public static NrpcChannelPool getOrCreate(InetSocketAddress address) {
+        return NrpcBootstrap.CHANNEL_CACHE.computeIfAbsent(address, key -> {
+            Configuration configuration = NrpcBootstrap.getInstance().getConfiguration();
+            return new NrpcChannelPool(key, configuration.getChannelPoolSize(), configuration.getChannelPoolStrategy());
+        });
+    }
+
+    /**
+     * 获取一个可用的通道，连接池为空时异步建立第一个连接，调用线程不会被阻塞
+     * @return 可用通道，已有可用连接时返回的future已经完成
+     * @author xiaonaol
+     */
+    public CompletableFuture<Channel> acquire() {
+        Channel channel = select();
+        if (channel == null) {
+            return connect();
+        }
+
+        // 选中的连接已经在忙，并且还没到上限，就在后台增长一个连接
+        if (pendingCount(channel).get() > 0) {
+            grow();
+        }
+        return CompletableFuture.completedFuture(channel);
+    }
+
+    /**
+     * 将一个通道移出连接池并关闭，心跳失败时调用
+     * @param channel 通道
+     */
+    public void evict(Channel channel) {
+        if (channels.remove(channel)) {
+            log.warn("将与【{}】的连接【{}】移出连接池", address, channel.id());
+        }
+        channel.close();
+    }
+
+    /**
+     * 关闭连接池中的所有连接
+     */
+    public void close() {
+        for (Channel channel : channels) {
+            evict(channel);
+        }
+    }
+
+    public List<Channel> getChannels() {
+        return channels;
+    }
+
+    public boolean isEmpty() {
+        return channels.isEmpty();
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * 获取通道上挂起的请求计数器
+     * @param channel 通道
+     * @return 计数器
+     */
+    public static AtomicInteger pendingCount(Channel channel) {
+        AtomicInteger count = channel.attr(PENDING_COUNT).get();
+        if (count == null) {
+            AtomicInteger newCount = new AtomicInteger(0);
+            count = channel.attr(PENDING_COUNT).setIfAbsent(newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        return count;
+    }
+
+    private Channel select() {
+        // 连接关闭或被淘汰时列表会同时缩短，在同一个快照上遍历，避免下标越界
+        Channel[] snapshot = channels.toArray(new Channel[0]);
+        int size = snapshot.length;
+        if (size == 0) {
+            return null;
+        }
+
+        Channel selected = null;
+        if (leastPending) {
+            // 从轮询的位置开始找挂起请求最少的连接，相同时不会总是压在第一个连接上
+            int start = Math.floorMod(index.getAndIncrement(), size);
+            int minPending = Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                Channel channel = snapshot[(start + i) % size];
+                if (!channel.isActive()) {
+                    continue;
+                }
+                int pending = pendingCount(channel).get();
+                if (pending < minPending) {
+                    minPending = pending;
+                    selected = channel;
+                }
+            }
+        } else {
+            for (int i = 0; i < size && selected == null; i++) {
+                Channel channel = snapshot[Math.floorMod(index.getAndIncrement(), size)];
+                if (channel.isActive()) {
+                    selected = channel;
+                }
+            }
+        }
+        return selected;
+    }
+
+    private void grow() {
+        if (channels.size() + connecting.get() >= maxSize) {
+            return;
+        }
+        if (connecting.incrementAndGet() + channels.size() > maxSize) {
+            connecting.decrementAndGet();
+            return;
+        }
+        NettyBootstrapInitializer.getBootstrap().connect(address).addListener((ChannelFutureListener) promise -> {
+            connecting.decrementAndGet();
+            if (promise.isSuccess()) {
+                add(promise.channel());
+            } else {
+                log.warn("连接池扩容时与【{}】建立连接失败", address, promise.cause());
+            }
+        });
+    }
+
+    private synchronized CompletableFuture<Channel> connect() {
+        Channel channel = select();
+        if (channel != null) {
+            return CompletableFuture.completedFuture(channel);
+        }
+        if (firstConnect != null) {
+            return firstConnect;
+        }
+
+        CompletableFuture<Channel> future = new CompletableFuture<>();
+        firstConnect = future;
+        connecting.incrementAndGet();
+        NettyBootstrapInitializer.getBootstrap().connect(address).addListener((ChannelFutureListener) promise -> {
+            connecting.decrementAndGet();
+            synchronized (this) {
+                firstConnect = null;
+            }
+            if (!promise.isSuccess()) {
+                log.error("获取或建立与【{}】的通道时发生了异常。", address, promise.cause());
+                future.completeExceptionally(new NetworkException(promise.cause()));
+                return;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("已经和【{}】成功建立了连接。", address);
+            }
+            add(promise.channel());
+            future.complete(promise.channel());
+        });
+        return future;
+    }
+
+    private void add(Channel channel) {
+        channels.add(channel);
+        // 连接关闭后自动移出连接池
+        channel.closeFuture().addListener(future -> channels.remove(channel));
+    }
+}
@@ -4,7 +4,6 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import org.example.transport.message.NrpcRequest;
 
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -12,18 +11,18 @@ import java.util.concurrent.CompletableFuture;
  * @date 2025/1/1
  **/
 public class NrpcUtils {
-    public static <T> CompletableFuture<Object> sendRequest(Channel channel, NrpcRequest nrpcRequest,
-                                                            Map<Long, CompletableFuture<Object>> pendingQuests) {
+    public static CompletableFuture<Object> sendRequest(Channel channel, NrpcRequest nrpcRequest,
+                                                        PendingRequestRegistry pendingQuests, long timeoutMillis) {
         // 写出报文
-        CompletableFuture<Object> completableFuture = new CompletableFuture<>();
-
-        // 将completableFuture暴露
-        pendingQuests.put(nrpcRequest.getRequestId(), completableFuture);
+        // 将completableFuture暴露，超时后会由时间轮移除并以超时异常结束
+        CompletableFuture<Object> completableFuture =
+                pendingQuests.register(nrpcRequest.getRequestId(), channel, timeoutMillis);
 
         // 这里直接writeAndFlush写出了一个请求，这个请求的实例就会进入pipline执行出站的一系列操作
         channel.writeAndFlush(nrpcRequest).addListener((ChannelFutureListener) promise -> {
             // 只需要处理以下异常就行了
             if (!promise.isSuccess()) {
+                pendingQuests.remove(nrpcRequest.getRequestId());
                 completableFuture.completeExceptionally(promise.cause());
             }
         });
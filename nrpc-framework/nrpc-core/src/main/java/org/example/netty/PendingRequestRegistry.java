@@ -0,0 +1,181 @@
+package org.example.netty;
+
+import io.netty.channel.Channel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 挂起请求的登记表
+ * 1、响应到达、超时、写出失败时都会移除对应的条目，不会无限增长
+ * 2、超时由时间轮统一处理，调用方不需要阻塞在带超时的get上
+ * 3、连接关闭时，该连接上所有挂起的请求都会立即失败
+ * 4、使用分段的long为key的map保存，避免Long装箱
+ * 5、同时维护每个通道上挂起的请求数，供连接池选择最空闲的连接
+ * @author xiaonaol
+ * @date 2025/1/8
+ **/
+@Slf4j
+public class PendingRequestRegistry {
+
+    // 分段数，必须是2的幂
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments;
+
+    private final HashedWheelTimer timer;
+
+    public PendingRequestRegistry() {
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+        timer = new HashedWheelTimer(new DefaultThreadFactory("nrpc-pending-timer", true),
+                10, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 登记一个挂起的请求
+     * @param requestId     请求id
+     * @param channel       发送请求的通道
+     * @param timeoutMillis 超时时间，超时后future会以TimeoutException失败
+     * @return 与请求对应的completableFuture
+     * @author xiaonaol
+     */
+    public CompletableFuture<Object> register(long requestId, Channel channel, long timeoutMillis) {
+        PendingRequest pendingRequest = new PendingRequest(new CompletableFuture<>(), channel);
+        Segment segment = segmentFor(requestId);
+        synchronized (segment) {
+            segment.requests.put(requestId, pendingRequest);
+        }
+        NrpcChannelPool.pendingCount(channel).incrementAndGet();
+
+        pendingRequest.timeout = timer.newTimeout(timeout -> {
+            PendingRequest expired = removeEntry(requestId);
+            if (expired != null) {
+                expired.future.completeExceptionally(
+                        new TimeoutException("请求【" + requestId + "】在" + timeoutMillis + "ms内未得到响应"));
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        return pendingRequest.future;
+    }
+
+    /**
+     * 移除一个挂起的请求，并取消它的超时任务
+     * @param requestId 请求id
+     * @return 与请求对应的completableFuture，已经超时或不存在时返回null
+     * @author xiaonaol
+     */
+    public CompletableFuture<Object> remove(long requestId) {
+        PendingRequest pendingRequest = removeEntry(requestId);
+        if (pendingRequest == null) {
+            return null;
+        }
+        Timeout timeout = pendingRequest.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        return pendingRequest.future;
+    }
+
+    /**
+     * 让某个通道上所有挂起的请求失败，通道关闭时调用
+     * @param channel 通道
+     * @param cause   失败原因
+     * @author xiaonaol
+     */
+    public void failChannel(Channel channel, Throwable cause) {
+        List<PendingRequest> failed = new ArrayList<>();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                Iterator<PendingRequest> iterator = segment.requests.values().iterator();
+                while (iterator.hasNext()) {
+                    PendingRequest pendingRequest = iterator.next();
+                    if (pendingRequest.channel == channel) {
+                        iterator.remove();
+                        failed.add(pendingRequest);
+                    }
+                }
+            }
+        }
+
+        for (PendingRequest pendingRequest : failed) {
+            NrpcChannelPool.pendingCount(channel).decrementAndGet();
+            if (pendingRequest.timeout != null) {
+                pendingRequest.timeout.cancel();
+            }
+            pendingRequest.future.completeExceptionally(cause);
+        }
+
+        if (!failed.isEmpty()) {
+            log.warn("通道【{}】已关闭，【{}】个挂起的请求已失败", channel.remoteAddress(), failed.size());
+        }
+    }
+
+    /**
+     * @return 当前挂起的请求数
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.requests.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return 用于处理超时的时间轮
+     */
+    public Timer getTimer() {
+        return timer;
+    }
+
+    private PendingRequest removeEntry(long requestId) {
+        Segment segment = segmentFor(requestId);
+        PendingRequest pendingRequest;
+        synchronized (segment) {
+            pendingRequest = segment.requests.remove(requestId);
+        }
+        if (pendingRequest != null) {
+            NrpcChannelPool.pendingCount(pendingRequest.channel).decrementAndGet();
+        }
+        return pendingRequest;
+    }
+
+    private Segment segmentFor(long requestId) {
+        // 雪花id的低位经常相同，先打散再取段
+        int hash = Long.hashCode(requestId) * 0x9E3779B9;
+        return segments[(hash >>> 16) & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * 一个分段，访问时以分段本身加锁，避免创建泛型数组
+     */
+    private static class Segment {
+        private final LongObjectHashMap<PendingRequest> requests = new LongObjectHashMap<>(64);
+    }
+
+    private static class PendingRequest {
+        private final CompletableFuture<Object> future;
+        private final Channel channel;
+        private volatile Timeout timeout;
+
+        private PendingRequest(CompletableFuture<Object> future, Channel channel) {
+            this.future = future;
+            this.channel = channel;
+        }
+    }
+}
@@ -2,11 +2,14 @@ package org.example.netty.channelHandler;
 
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import org.example.netty.channelHandler.handler.consumerHandler.MySimpleChannelInboundHandler;
 import org.example.netty.channelHandler.handler.consumerHandler.NrpcRequestEncoder;
 import org.example.netty.channelHandler.handler.consumerHandler.NrpcResponseDecoder;
+import org.example.NrpcBootstrap;
+import org.example.config.Configuration;
 
 /**
  * @author xiaonaol
@@ -15,6 +18,14 @@ import org.example.netty.channelHandler.handler.consumerHandler.NrpcResponseDeco
 public class ConsumerChannelInitializer extends ChannelInitializer<SocketChannel> {
     @Override
     protected void initChannel(SocketChannel socketChannel) throws Exception {
+        Configuration configuration = NrpcBootstrap.getInstance().getConfiguration();
+        if (configuration.isFlushConsolidation()) {
+            // 合并flush：同一个event loop周期内或者累计一定数量的请求只flush一次，减少系统调用
+            // 非读期间（调用方线程、业务线程写出）同样合并，由event loop统一flush
+            socketChannel.pipeline().addLast(new FlushConsolidationHandler(
+                    configuration.getExplicitFlushAfterFlushes(), true));
+        }
+
         socketChannel.pipeline()
                 // netty自带的日志处理器
                 .addLast(new LoggingHandler(LogLevel.DEBUG))
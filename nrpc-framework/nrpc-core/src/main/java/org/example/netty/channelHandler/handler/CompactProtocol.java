@@ -0,0 +1,333 @@
+package org.example.netty.channelHandler.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.AttributeKey;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import org.example.core.MethodInvoker;
+import org.example.serialize.TypeSupport;
+import org.example.transport.message.MessageFormatConstant;
+import org.example.transport.message.RequestPayload;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 第2版紧凑协议
+ * magic         4B   ----> nrpc.getBytes()
+ * version       1B   ----> 2
+ * length        3B   ----> varint，后面所有内容的长度
+ * type/code     1B
+ * serialize     1B
+ * compress      1B
+ * accept        1B   ----> 只有请求有，希望响应使用的压缩方式
+ * requestId     varint
+ *
+ * 请求体：varint(methodId << 1 | 是否携带方法定义) [方法定义] 参数列表
+ * 响应体：返回值
+ *
+ * 每个连接上第一次调用某个方法时携带一次方法定义（接口名、方法名、参数类型、返回值类型），
+ * 之后只发送方法id，tcp保证了方法定义一定先于对它的引用到达
+ * @author xiaonaol
+ * @date 2025/1/12
+ **/
+public class CompactProtocol {
+
+    // 长度字段固定占3个字节（不足时补齐续位），最大可以表示2^21，足够覆盖MAX_FRAME_LENGTH
+    public static final int LENGTH_FIELD_LENGTH = 3;
+    // 版本号所在的偏移量
+    public static final int VERSION_OFFSET = MessageFormatConstant.MAGIC_LENGTH;
+    // magic + version + length
+    public static final int PREFIX_LENGTH = MessageFormatConstant.MAGIC_LENGTH
+            + MessageFormatConstant.VERSION_LENGTH + LENGTH_FIELD_LENGTH;
+
+    // 服务调用方：方法 -> 方法id
+    private static final AttributeKey<Map<String, Integer>> METHOD_IDS =
+            AttributeKey.valueOf("nrpc.methodIds");
+    // 服务提供方：方法id -> 方法定义
+    private static final AttributeKey<IntObjectMap<MethodDescriptor>> METHOD_TABLE =
+            AttributeKey.valueOf("nrpc.methodTable");
+    // 服务提供方：连接使用的协议版本，响应使用和请求相同的版本
+    public static final AttributeKey<Byte> PROTOCOL_VERSION = AttributeKey.valueOf("nrpc.protocolVersion");
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>(16);
+
+    static {
+        for (Class<?> clazz : new Class<?>[]{boolean.class, byte.class, char.class, short.class,
+                int.class, long.class, float.class, double.class, void.class}) {
+            PRIMITIVES.put(clazz.getName(), clazz);
+        }
+    }
+
+    private CompactProtocol() {
+    }
+
+    /**
+     * 是否是第2版的报文，可读字节不够判断时返回false
+     * @param in 累积缓冲区
+     * @return 是否是紧凑协议
+     */
+    public static boolean isCompact(ByteBuf in) {
+        return in.readableBytes() > VERSION_OFFSET
+                && in.getByte(in.readerIndex() + VERSION_OFFSET) == MessageFormatConstant.COMPACT_VERSION;
+    }
+
+    /**
+     * 从累积缓冲区中截取一个完整的帧（不含magic、version和length）
+     * magic或长度错误时丢弃所有可读的数据并抛出异常，此时已经找不到下一帧的边界，调用方需要关闭连接
+     * @param in 累积缓冲区
+     * @return 帧，数据不完整时返回null，使用完需要释放
+     */
+    public static ByteBuf extractFrame(ByteBuf in) {
+        if (in.readableBytes() < PREFIX_LENGTH) {
+            return null;
+        }
+
+        int start = in.readerIndex();
+        for (int i = 0; i < MessageFormatConstant.MAGIC_LENGTH; i++) {
+            if (in.getByte(start + i) != MessageFormatConstant.MAGIC[i]) {
+                in.skipBytes(in.readableBytes());
+                throw new CorruptedFrameException("请求不合法");
+            }
+        }
+
+        int lengthIndex = start + MessageFormatConstant.MAGIC_LENGTH + MessageFormatConstant.VERSION_LENGTH;
+        int length = (in.getByte(lengthIndex) & 0x7F)
+                | (in.getByte(lengthIndex + 1) & 0x7F) << 7
+                | (in.getByte(lengthIndex + 2) & 0x7F) << 14;
+        if (length > MessageFormatConstant.MAX_FRAME_LENGTH) {
+            in.skipBytes(in.readableBytes());
+            throw new TooLongFrameException("报文长度" + length + "超过了最大长度");
+        }
+        if (in.readableBytes() < PREFIX_LENGTH + length) {
+            return null;
+        }
+
+        ByteBuf frame = in.retainedSlice(start + PREFIX_LENGTH, length);
+        in.skipBytes(PREFIX_LENGTH + length);
+        return frame;
+    }
+
+    /**
+     * 写出magic和version，并为长度字段预留位置
+     * @param out 输出缓冲区
+     * @return 长度字段的位置
+     */
+    public static int beginFrame(ByteBuf out) {
+        out.writeBytes(MessageFormatConstant.MAGIC);
+        out.writeByte(MessageFormatConstant.COMPACT_VERSION);
+        int lengthIndex = out.writerIndex();
+        out.writerIndex(lengthIndex + LENGTH_FIELD_LENGTH);
+        return lengthIndex;
+    }
+
+    /**
+     * 回填长度字段，超过MAX_FRAME_LENGTH时对端无法接收，直接抛出异常
+     * @param out         输出缓冲区
+     * @param lengthIndex 长度字段的位置
+     */
+    public static void endFrame(ByteBuf out, int lengthIndex) {
+        int length = out.writerIndex() - lengthIndex - LENGTH_FIELD_LENGTH;
+        if (length > MessageFormatConstant.MAX_FRAME_LENGTH) {
+            throw new EncoderException("报文长度" + length + "超过了最大长度" + MessageFormatConstant.MAX_FRAME_LENGTH);
+        }
+        out.setByte(lengthIndex, (length & 0x7F) | 0x80);
+        out.setByte(lengthIndex + 1, ((length >>> 7) & 0x7F) | 0x80);
+        out.setByte(lengthIndex + 2, (length >>> 14) & 0x7F);
+    }
+
+    public static void writeVarInt(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(ByteBuf in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new RuntimeException("varint格式错误");
+    }
+
+    public static void writeVarLong(ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(ByteBuf in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new RuntimeException("varint格式错误");
+    }
+
+    public static void writeString(ByteBuf out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    public static String readString(ByteBuf in) {
+        int length = readLength(in);
+        String value = in.toString(in.readerIndex(), length, StandardCharsets.UTF_8);
+        in.skipBytes(length);
+        return value;
+    }
+
+    /**
+     * 读取一个长度，长度不能为负数，也不能超过帧中剩余的字节数（每个元素至少占1个字节）
+     * @param in 帧
+     * @return 长度
+     */
+    public static int readLength(ByteBuf in) {
+        int length = readVarInt(in);
+        if (length < 0 || length > in.readableBytes()) {
+            throw new CorruptedFrameException("长度" + length + "超过了剩余的" + in.readableBytes() + "个字节");
+        }
+        return length;
+    }
+
+    /**
+     * 服务调用方：写出方法id，该连接上第一次调用时同时写出方法定义
+     * 携带了方法定义时，需要在整个帧编码成功后调用 {@link #registerMethod(Channel, String)} 登记，
+     * 参数序列化失败或者帧超长时这一帧会被丢弃，对端没有收到过定义，下次调用还要重新携带
+     * @param channel 连接
+     * @param out     输出缓冲区
+     * @param payload 请求体
+     * @return 需要登记的方法，已经登记过时返回null
+     */
+    public static String writeMethod(Channel channel, ByteBuf out, RequestPayload payload) {
+        // 编码器只在event loop中执行，不需要并发容器
+        Map<String, Integer> methodIds = channel.attr(METHOD_IDS).get();
+        if (methodIds == null) {
+            methodIds = new HashMap<>(16);
+            channel.attr(METHOD_IDS).set(methodIds);
+        }
+
+        String key = payload.getInterfaceName() + "#"
+                + MethodInvoker.signature(payload.getMethodName(), payload.getParametersType());
+        Integer methodId = methodIds.get(key);
+        if (methodId != null) {
+            writeVarInt(out, methodId << 1);
+            return null;
+        }
+
+        methodId = methodIds.size();
+        writeVarInt(out, methodId << 1 | 1);
+        writeString(out, payload.getInterfaceName());
+        writeString(out, payload.getMethodName());
+        Class<?>[] parametersType = payload.getParametersType() == null ? new Class<?>[0] : payload.getParametersType();
+        writeVarInt(out, parametersType.length);
+        for (Class<?> parameterType : parametersType) {
+            writeString(out, parameterType.getName());
+        }
+        writeString(out, payload.getReturnType() == null ? void.class.getName() : payload.getReturnType().getName());
+        return key;
+    }
+
+    /**
+     * 服务调用方：帧编码成功后登记方法，之后的调用只发送方法id
+     * 编码器只在event loop中依次执行，登记时分配的id和writeMethod写出的id相同
+     * @param channel 连接
+     * @param key     writeMethod返回的方法
+     */
+    public static void registerMethod(Channel channel, String key) {
+        Map<String, Integer> methodIds = channel.attr(METHOD_IDS).get();
+        methodIds.putIfAbsent(key, methodIds.size());
+    }
+
+    /**
+     * 服务提供方：读取方法id，携带方法定义时登记到该连接的方法表中
+     * @param channel 连接
+     * @param in      帧
+     * @return 方法定义
+     */
+    public static MethodDescriptor readMethod(Channel channel, ByteBuf in) {
+        IntObjectMap<MethodDescriptor> methodTable = channel.attr(METHOD_TABLE).get();
+        if (methodTable == null) {
+            methodTable = new IntObjectHashMap<>(16);
+            channel.attr(METHOD_TABLE).set(methodTable);
+        }
+
+        int header = readVarInt(in);
+        int methodId = header >>> 1;
+        if ((header & 1) == 0) {
+            MethodDescriptor methodDescriptor = methodTable.get(methodId);
+            if (methodDescriptor == null) {
+                throw new RuntimeException("未知的方法id【" + methodId + "】");
+            }
+            return methodDescriptor;
+        }
+
+        String interfaceName = readString(in);
+        String methodName = readString(in);
+        Class<?>[] parametersType = new Class<?>[readLength(in)];
+        for (int i = 0; i < parametersType.length; i++) {
+            parametersType[i] = resolveClass(readString(in));
+        }
+        // 服务提供方用不到返回值类型，不加载对端传来的这个类名
+        readString(in);
+
+        MethodDescriptor methodDescriptor = new MethodDescriptor(interfaceName, methodName, parametersType, null);
+        methodTable.put(methodId, methodDescriptor);
+        return methodDescriptor;
+    }
+
+    /**
+     * 参数类型和报文中的类名一样要经过反序列化白名单，对端不能借方法定义加载任意类
+     */
+    private static Class<?> resolveClass(String name) {
+        Class<?> clazz = PRIMITIVES.get(name);
+        if (clazz != null) {
+            return clazz;
+        }
+        return TypeSupport.resolveClass(name);
+    }
+
+    /**
+     * 方法定义，参数类型在登记时就已经解析好，之后的调用不再需要加载类
+     */
+    public static class MethodDescriptor {
+        private final String interfaceName;
+        private final String methodName;
+        private final Class<?>[] parametersType;
+        private final Class<?> returnType;
+
+        private MethodDescriptor(String interfaceName, String methodName, Class<?>[] parametersType, Class<?> returnType) {
+            this.interfaceName = interfaceName;
+            this.methodName = methodName;
+            this.parametersType = parametersType;
+            this.returnType = returnType;
+        }
+
+        public RequestPayload toPayload(Object[] parametersValue) {
+            return RequestPayload.builder()
+                    .interfaceName(interfaceName)
+                    .methodName(methodName)
+                    .parametersType(parametersType)
+                    .parametersValue(parametersValue)
+                    .returnType(returnType)
+                    .build();
+        }
+    }
+}
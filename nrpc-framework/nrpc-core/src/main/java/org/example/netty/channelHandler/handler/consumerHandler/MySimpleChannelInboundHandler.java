@@ -8,12 +8,12 @@ import org.example.NrpcBootstrap;
 import org.example.enumeration.RespCode;
 import org.example.exceptions.ResponseException;
 import org.example.loadbalancer.LoadBalancer;
-import org.example.protection.CircuitBreaker;
+import org.example.netty.NrpcChannelPool;
 import org.example.transport.message.NrpcRequest;
 import org.example.transport.message.NrpcResponse;
 
 import java.net.SocketAddress;
-import java.util.Map;
+import java.nio.channels.ClosedChannelException;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -24,67 +24,80 @@ import java.util.concurrent.CompletableFuture;
 @Slf4j
 public class MySimpleChannelInboundHandler extends SimpleChannelInboundHandler<NrpcResponse> {
     @Override
-    protected void channelRead0(ChannelHandlerContext channelHandlerContext, NrpcResponse nrpcResponse) throws ResponseException {
+    protected void channelRead0(ChannelHandlerContext channelHandlerContext, NrpcResponse nrpcResponse) {
 
-        // 从全局挂起的请求中寻找与之匹配的completableFuture
-        CompletableFuture<Object> completableFuture = NrpcBootstrap.PENDING_QUEST.get(nrpcResponse.getRequestId());
+        // 从全局挂起的请求中寻找与之匹配的completableFuture，找到后即从挂起列表中移除
+        CompletableFuture<Object> completableFuture = NrpcBootstrap.PENDING_QUEST.remove(nrpcResponse.getRequestId());
+        if(completableFuture == null) {
+            log.warn("编号为【{}】的请求已经超时或不存在，丢弃该响应", nrpcResponse.getRequestId());
+            return;
+        }
 
+        // 失败的响应会让completableFuture异常结束，由调用方统一记录到断路器
         SocketAddress socketAddress = channelHandlerContext.channel().remoteAddress();
-        Map<SocketAddress, CircuitBreaker> ipCircuitBreaker = NrpcBootstrap.getInstance()
-                .getConfiguration().getIpCircuitBreaker();
-        CircuitBreaker circuitBreaker = ipCircuitBreaker.get(socketAddress);
 
         byte code = nrpcResponse.getCode();
         if(code == RespCode.FAIL.getCode()) {
-            circuitBreaker.recordErrorRequest();
-            completableFuture.complete(null);
             log.error("当前id为【{}】的请求，返回错误的结果，响应码【{}】",
                     nrpcResponse.getRequestId(), code);
-            throw new ResponseException(code, RespCode.FAIL.getDesc());
+            completableFuture.completeExceptionally(new ResponseException(code, RespCode.FAIL.getDesc()));
         } else if(code == RespCode.RATE_LIMIT.getCode()) {
-            circuitBreaker.recordErrorRequest();
-            completableFuture.complete(null);
             log.error("当前id为【{}】的请求被限流，响应码【{}】",
                     nrpcResponse.getRequestId(), code);
-            throw new ResponseException(code, RespCode.RATE_LIMIT.getDesc());
+            completableFuture.completeExceptionally(new ResponseException(code, RespCode.RATE_LIMIT.getDesc()));
+        } else if(code == RespCode.OVERLOAD.getCode()) {
+            log.error("当前id为【{}】的请求被拒绝，服务端业务线程池已满，响应码【{}】",
+                    nrpcResponse.getRequestId(), code);
+            completableFuture.completeExceptionally(new ResponseException(code, RespCode.OVERLOAD.getDesc()));
         } else if(code == RespCode.RESOURCE_NOT_FOUND.getCode()) {
-            circuitBreaker.recordErrorRequest();
-            completableFuture.complete(null);
             log.error("当前id为【{}】的请求，未找到目标资源，响应码【{}】",
                     nrpcResponse.getRequestId(), code);
-            throw new ResponseException(code, RespCode.RESOURCE_NOT_FOUND.getDesc());
+            completableFuture.completeExceptionally(new ResponseException(code, RespCode.RESOURCE_NOT_FOUND.getDesc()));
         } else if(code == RespCode.SUCCESS_HEARTBEAT.getCode()) {
             completableFuture.complete(null);
             log.error("当前id为【{}】的心跳请求，响应码【{}】",
                     nrpcResponse.getRequestId(), code);
         } else if(code == RespCode.CLOSING.getCode()) {
-            completableFuture.complete(null);
             if(log.isDebugEnabled()) {
                 log.debug("当前id为【{}】访问被拒绝，目标服务器正在关闭", nrpcResponse.getRequestId());
             }
 
             // 修正负载均衡器
-            // 从健康列表中移出
-            NrpcBootstrap.CHANNEL_CACHE.remove(socketAddress);
-            // 找到负载均衡器进行reLoadBalance
-            LoadBalancer loadBalancer = NrpcBootstrap.getInstance()
-                    .getConfiguration().getLoadBalancer();
+            // 从健康列表中移出，并关闭连接池中的连接
+            NrpcChannelPool channelPool = NrpcBootstrap.CHANNEL_CACHE.remove(socketAddress);
+            if(channelPool != null) {
+                channelPool.close();
+            }
+            // 找到负载均衡器进行reLoadBalance，只有在调用线程中才能拿到请求
             NrpcRequest request = NrpcBootstrap.REQUEST_THREAD_LOCAL.get();
-            loadBalancer.reLoadBalancer(request.getRequestPayload().getInterfaceName(),
-                    NrpcBootstrap.CHANNEL_CACHE.keySet().stream().toList());
+            if(request != null) {
+                LoadBalancer loadBalancer = NrpcBootstrap.getInstance()
+                        .getConfiguration().getLoadBalancer();
+                loadBalancer.reLoadBalancer(request.getRequestPayload().getInterfaceName(),
+                        NrpcBootstrap.CHANNEL_CACHE.keySet().stream().toList());
+            }
 
-            throw new ResponseException(code, RespCode.CLOSING.getDesc());
+            // 以异常结束，调用方会重新选择其他节点重试
+            completableFuture.completeExceptionally(new ResponseException(code, RespCode.CLOSING.getDesc()));
         } else if(code == RespCode.SUCCESS.getCode()) {
-            // 服务提供方，给与的结果
+            // 服务提供方，给与的结果，void方法或返回null时结果为null
             Object returnValue = nrpcResponse.getBody();
 
-            // todo 需要针对code做处理
-            returnValue = returnValue == null ? new Object() : returnValue;
-
             completableFuture.complete(returnValue);
             if(log.isDebugEnabled()){
                 log.debug("已寻找到编号为【{}】的completableFuture结果", nrpcResponse.getRequestId());
             }
+        } else {
+            // 不认识的响应码也要结束completableFuture，它已经从挂起列表中移除，不会再超时，否则同步调用会一直阻塞
+            log.error("当前id为【{}】的请求，收到未知的响应码【{}】", nrpcResponse.getRequestId(), code);
+            completableFuture.completeExceptionally(new ResponseException(code, "未知的响应码【" + code + "】"));
         }
     }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 连接关闭，该连接上所有挂起的请求都不会再有响应
+        NrpcBootstrap.PENDING_QUEST.failChannel(ctx.channel(), new ClosedChannelException());
+        super.channelInactive(ctx);
+    }
 }
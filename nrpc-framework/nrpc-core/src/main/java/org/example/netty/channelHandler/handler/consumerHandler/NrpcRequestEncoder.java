@@ -5,13 +5,15 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import lombok.extern.slf4j.Slf4j;
 import org.example.NrpcBootstrap;
-import org.example.compress.Compressor;
-import org.example.compress.CompressorFactory;
+import org.example.compress.CompressionPolicy;
 import org.example.enumeration.RequestType;
-import org.example.serialize.Serializer;
-import org.example.serialize.SerializerFactory;
+import org.example.netty.channelHandler.handler.CompactProtocol;
 import org.example.transport.message.MessageFormatConstant;
 import org.example.transport.message.NrpcRequest;
+import org.example.transport.message.RequestPayload;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * magic       4B   ----> nrpc.getBytes()
@@ -22,6 +24,8 @@ import org.example.transport.message.NrpcRequest;
  * compress    1B
  * requestType 1B
  * requestId   8B
+ * timeStamp   8B
+ * accept      1B   ----> 希望响应使用的压缩方式
  *
  * body
  *
@@ -32,9 +36,17 @@ import org.example.transport.message.NrpcRequest;
 @Slf4j
 public class NrpcRequestEncoder extends MessageToByteEncoder<NrpcRequest> {
 
+    // 接口名 -> 方法名 -> 自适应压缩统计使用的key
+    private static final Map<String, Map<String, String>> COMPRESS_KEYS = new ConcurrentHashMap<>(16);
+
     // 将nrpcRequest的内容写到byteBuf里
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext, NrpcRequest nrpcRequest, ByteBuf byteBuf) throws Exception {
+        if (NrpcBootstrap.getInstance().getConfiguration().getProtocolVersion() == MessageFormatConstant.COMPACT_VERSION) {
+            encodeCompact(channelHandlerContext, nrpcRequest, byteBuf);
+            return;
+        }
+
         // 4个字节的魔术值
         byteBuf.writeBytes(MessageFormatConstant.MAGIC);
         // 1个字节的版本号
@@ -46,6 +58,7 @@ public class NrpcRequestEncoder extends MessageToByteEncoder<NrpcRequest> {
         // 3个类型
         byteBuf.writeByte(nrpcRequest.getRequestType());
         byteBuf.writeByte(nrpcRequest.getSerializeType());
+        int compressIndex = byteBuf.writerIndex();
         byteBuf.writeByte(nrpcRequest.getCompressType());
         // 8字节的请求id
         byteBuf.writeLong(nrpcRequest.getRequestId());
@@ -63,23 +76,16 @@ public class NrpcRequestEncoder extends MessageToByteEncoder<NrpcRequest> {
         }
 
         // 写入请求体requestPayload
-        // 1.根据配置的序列化方式进行序列化
-        // 实现序列化
-        byte[] body = null;
-        if (nrpcRequest.getRequestPayload() != null) {
-            Serializer serializer = SerializerFactory.getSerializer(NrpcBootstrap.getInstance().getConfiguration().getSerializeType()).getImpl();
-            body = serializer.serialize(nrpcRequest.getRequestPayload());
-
-            // 2.根据配置的压缩方式进行压缩
-            Compressor compressor = CompressorFactory.getCompressor(nrpcRequest.getCompressType()).getImpl();
-            body = compressor.compress(body);
-        }
-
-        if(body != null) {
-            byteBuf.writeBytes(body);
+        // 序列化后按照大小和压缩效果决定是否压缩，报文头中回填实际的压缩方式
+        int bodyStart = byteBuf.writerIndex();
+        RequestPayload requestPayload = nrpcRequest.getRequestPayload();
+        if (requestPayload != null) {
+            byte compressType = CompressionPolicy.writeBody(byteBuf, requestPayload, nrpcRequest.getSerializeType(),
+                    nrpcRequest.getCompressType(), compressKey(requestPayload));
+            byteBuf.setByte(compressIndex, compressType);
         }
 
-        int bodyLength = body == null ? 0 : body.length;
+        int bodyLength = byteBuf.writerIndex() - bodyStart;
         // 重新处理报文的总长度
         // 保存当前写指针的位置
         int writerIndex = byteBuf.writerIndex();
@@ -96,4 +102,54 @@ public class NrpcRequestEncoder extends MessageToByteEncoder<NrpcRequest> {
         }
     }
 
+    /**
+     * 按照第2版紧凑协议编码，请求体中只携带方法id和参数列表
+     */
+    private void encodeCompact(ChannelHandlerContext channelHandlerContext, NrpcRequest nrpcRequest, ByteBuf byteBuf) throws Exception {
+        int lengthIndex = CompactProtocol.beginFrame(byteBuf);
+        byteBuf.writeByte(nrpcRequest.getRequestType());
+        byteBuf.writeByte(nrpcRequest.getSerializeType());
+        int compressIndex = byteBuf.writerIndex();
+        byteBuf.writeByte(nrpcRequest.getCompressType());
+        byteBuf.writeByte(nrpcRequest.getAcceptCompressType());
+        CompactProtocol.writeVarLong(byteBuf, nrpcRequest.getRequestId());
+
+        RequestPayload requestPayload = nrpcRequest.getRequestPayload();
+        String newMethod = null;
+        if (nrpcRequest.getRequestType() != RequestType.HEART_BEAT.getId() && requestPayload != null) {
+            newMethod = CompactProtocol.writeMethod(channelHandlerContext.channel(), byteBuf, requestPayload);
+
+            Object[] parametersValue = requestPayload.getParametersValue() == null
+                    ? new Object[0] : requestPayload.getParametersValue();
+            byte compressType = CompressionPolicy.writeBody(byteBuf, parametersValue, nrpcRequest.getSerializeType(),
+                    nrpcRequest.getCompressType(), compressKey(requestPayload));
+            byteBuf.setByte(compressIndex, compressType);
+        }
+
+        CompactProtocol.endFrame(byteBuf, lengthIndex);
+        // 整个帧编码成功后才登记方法定义，失败的帧不会让之后的调用只发送id
+        if (newMethod != null) {
+            CompactProtocol.registerMethod(channelHandlerContext.channel(), newMethod);
+        }
+
+        if(log.isDebugEnabled()) {
+            log.debug("已完成报文的编码【{}】", nrpcRequest.getRequestId());
+        }
+    }
+
+    /**
+     * 请求按照接口+方法统计压缩效果，每个方法的key只拼接一次
+     */
+    private static String compressKey(RequestPayload requestPayload) {
+        Map<String, String> methodKeys = COMPRESS_KEYS.get(requestPayload.getInterfaceName());
+        if (methodKeys == null) {
+            methodKeys = COMPRESS_KEYS.computeIfAbsent(requestPayload.getInterfaceName(), k -> new ConcurrentHashMap<>(8));
+        }
+        String key = methodKeys.get(requestPayload.getMethodName());
+        if (key == null) {
+            String interfaceName = requestPayload.getInterfaceName();
+            key = methodKeys.computeIfAbsent(requestPayload.getMethodName(), methodName -> interfaceName + "." + methodName);
+        }
+        return key;
+    }
 }
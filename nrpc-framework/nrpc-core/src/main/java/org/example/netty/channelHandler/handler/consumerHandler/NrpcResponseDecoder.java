@@ -1,16 +1,21 @@
 package org.example.netty.channelHandler.handler.consumerHandler;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import lombok.extern.slf4j.Slf4j;
 import org.example.compress.Compressor;
 import org.example.compress.CompressorFactory;
+import org.example.netty.channelHandler.handler.CompactProtocol;
 import org.example.serialize.Serializer;
 import org.example.serialize.SerializerFactory;
 import org.example.transport.message.MessageFormatConstant;
 import org.example.transport.message.NrpcResponse;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Date;
 
 /**
@@ -38,20 +43,44 @@ public class NrpcResponseDecoder extends LengthFieldBasedFrameDecoder {
 
     @Override
     protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        // 根据版本号分发，第1版的报文仍然按照定长头部解析
+        if (CompactProtocol.isCompact(in)) {
+            ByteBuf frame;
+            try {
+                frame = CompactProtocol.extractFrame(in);
+            } catch (DecoderException e) {
+                // 找不到下一帧的边界，连接无法继续使用
+                log.error("紧凑协议的报文格式错误，关闭连接【{}】", ctx.channel().remoteAddress(), e);
+                ctx.close();
+                throw e;
+            }
+            if (frame == null) {
+                return null;
+            }
+            try {
+                return decodeCompactFrame(frame);
+            } finally {
+                frame.release();
+            }
+        }
+
         Object decode = super.decode(ctx, in);
         if(decode instanceof ByteBuf byteBuf){
-            return decodeFrame(byteBuf);
+            // 截取出的帧是累积缓冲区的retained slice，解码完成后需要释放
+            try {
+                return decodeFrame(byteBuf);
+            } finally {
+                byteBuf.release();
+            }
         }
         return null;
     }
 
-    private Object decodeFrame(ByteBuf byteBuf) {
+    private Object decodeFrame(ByteBuf byteBuf) throws IOException {
         // 1、解析魔数
-        byte[] magic = new byte[MessageFormatConstant.MAGIC.length];
-        byteBuf.readBytes(magic);
         // 检测魔数是否匹配
-        for (int i = 0; i < magic.length; i++) {
-            if(magic[i] != MessageFormatConstant.MAGIC[i]) {
+        for (int i = 0; i < MessageFormatConstant.MAGIC.length; i++) {
+            if(byteBuf.readByte() != MessageFormatConstant.MAGIC[i]) {
                 throw new RuntimeException("请求不合法");
             }
         }
@@ -97,20 +126,44 @@ public class NrpcResponseDecoder extends LengthFieldBasedFrameDecoder {
 //        }
 
         int bodyLength = fullLength - headLength;
-        byte[] payload = new byte[bodyLength];
-        byteBuf.readBytes(payload);
 
-        // 有了payload字节数组后，就可以解压缩反序列化
-        // 1. 解压缩
-        if(payload.length > 0) {
+        // 直接以流的方式从帧中读取负载，解压缩和反序列化都不再拷贝出中间的字节数组
+        if(bodyLength > 0) {
+            // 1. 解压缩
             Compressor compressor = CompressorFactory.getCompressor(nrpcResponse.getCompressType()).getImpl();
-            payload = compressor.decompress(payload);
-
             // 2. 反序列化
             Serializer serializer = SerializerFactory.getSerializer(nrpcResponse
                     .getSerializeType()).getImpl();
-            Object body = serializer.deserialize(payload, Object.class);
-            nrpcResponse.setBody(body);
+            try (InputStream inputStream = compressor.decompress(new ByteBufInputStream(byteBuf, bodyLength))) {
+                Object body = serializer.deserialize(inputStream, Object.class);
+                nrpcResponse.setBody(body);
+            }
+        }
+
+        if(log.isDebugEnabled()){
+            log.debug("响应【{}】已在调用端完成解码", nrpcResponse.getRequestId());
+        }
+
+        return nrpcResponse;
+    }
+
+    /**
+     * 按照第2版紧凑协议解码
+     */
+    private Object decodeCompactFrame(ByteBuf frame) throws IOException {
+        NrpcResponse nrpcResponse = new NrpcResponse();
+        nrpcResponse.setCode(frame.readByte());
+        nrpcResponse.setSerializeType(frame.readByte());
+        nrpcResponse.setCompressType(frame.readByte());
+        nrpcResponse.setRequestId(CompactProtocol.readVarLong(frame));
+        nrpcResponse.setTimeStamp(System.currentTimeMillis());
+
+        if(frame.isReadable()) {
+            Compressor compressor = CompressorFactory.getCompressor(nrpcResponse.getCompressType()).getImpl();
+            Serializer serializer = SerializerFactory.getSerializer(nrpcResponse.getSerializeType()).getImpl();
+            try (InputStream inputStream = compressor.decompress(new ByteBufInputStream(frame, frame.readableBytes()))) {
+                nrpcResponse.setBody(serializer.deserialize(inputStream, Object.class));
+            }
         }
 
         if(log.isDebugEnabled()){
@@ -1,11 +1,15 @@
 package org.example.netty.channelHandler.handler.providerHandler;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import lombok.extern.slf4j.Slf4j;
 import org.example.NrpcBootstrap;
 import org.example.ServiceConfig;
+import org.example.annotation.RateLimit;
+import org.example.config.Configuration;
+import org.example.core.MethodInvoker;
 import org.example.core.ShutdownHolder;
 import org.example.enumeration.RequestType;
 import org.example.enumeration.RespCode;
@@ -15,10 +19,13 @@ import org.example.transport.message.NrpcRequest;
 import org.example.transport.message.NrpcResponse;
 import org.example.transport.message.RequestPayload;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author xiaonaol
@@ -26,13 +33,18 @@ import java.util.Map;
  **/
 @Slf4j
 public class MethodCallHandler extends SimpleChannelInboundHandler<NrpcRequest> {
+
+    // 上一次回收空闲限流器的时间
+    private static final AtomicLong LAST_EVICTION = new AtomicLong(System.nanoTime());
+
     @Override
     protected void channelRead0(ChannelHandlerContext channelHandlerContext, NrpcRequest nrpcRequest) throws Exception {
 
         // 1、先封装部分响应
         NrpcResponse nrpcResponse = new NrpcResponse();
         nrpcResponse.setRequestId(nrpcRequest.getRequestId());
-        nrpcResponse.setCompressType(nrpcRequest.getCompressType());
+        // 响应使用调用方希望的压缩方式，请求体本身有没有压缩不影响响应
+        nrpcResponse.setCompressType(nrpcRequest.getAcceptCompressType());
         nrpcResponse.setSerializeType(nrpcRequest.getSerializeType());
 
         // 2、获得通道
@@ -42,82 +54,231 @@ public class MethodCallHandler extends SimpleChannelInboundHandler<NrpcRequest>
         if(ShutdownHolder.BAFFLE.get()) {
             nrpcResponse.setCode(RespCode.CLOSING.getCode());
             channel.writeAndFlush(nrpcResponse);
+            return;
         }
 
         // 4、计数器+1
         ShutdownHolder.LATCH.increment();
 
-        // 5、完成限流相关的操作
-        SocketAddress socketAddress = channel.remoteAddress();
-        Map<SocketAddress, RateLimiter> ipRateLimiter =
-                NrpcBootstrap.getInstance().getConfiguration().getIpRateLimiter();
-
-        RateLimiter rateLimiter = ipRateLimiter.get(socketAddress);
-        if(rateLimiter == null) {
-            rateLimiter = new TokenBuketRateLimiter(10, 10);
-            ipRateLimiter.put(socketAddress, rateLimiter);
-        }
-
-        boolean allowRequest = rateLimiter.allowRequest();
-
-        // 限流
-        if(!allowRequest) {
-            // 需要封装响应并且返回
-            nrpcResponse.setCode(RespCode.RATE_LIMIT.getCode());
-        } else if(nrpcRequest.getRequestType() == RequestType.HEART_BEAT.getId()) {
-            // 处理心跳
+        if(nrpcRequest.getRequestType() == RequestType.HEART_BEAT.getId()) {
+            // 5、处理心跳，心跳不限流
             nrpcResponse.setCode(RespCode.SUCCESS.getCode());
-
         } else {
             /** ------具体调用过程------ **/
 
             // 1. 获取payload内容
             RequestPayload requestPayload = nrpcRequest.getRequestPayload();
 
-            // 2. 根据payload内容进行方法调用
-            try {
-                Object result = callTargetMethod(requestPayload);
+            // 2. 寻找到匹配的暴露出去的服务和方法
+            ServiceConfig<?> serviceConfig = NrpcBootstrap.SERVERS_LIST.get(requestPayload.getInterfaceName());
+            MethodInvoker methodInvoker = serviceConfig == null ? null
+                    : serviceConfig.getMethodInvoker(requestPayload.getMethodName(), requestPayload.getParametersType());
+            if(methodInvoker == null) {
+                nrpcResponse.setCode(RespCode.RESOURCE_NOT_FOUND.getCode());
+                log.error("编号为【{}】的请求未找到服务【{}】的方法【{}】", nrpcRequest.getRequestId(),
+                        requestPayload.getInterfaceName(), requestPayload.getMethodName());
+            } else if(!getRateLimiter(channel.remoteAddress(), serviceConfig, methodInvoker).allowRequest()) {
+                // 3. 每个调用方的每个方法独立限流
+                nrpcResponse.setCode(RespCode.RATE_LIMIT.getCode());
+            } else if(serviceConfig.getConcurrencyLimiter() != null
+                    && !serviceConfig.getConcurrencyLimiter().tryAcquire()) {
+                // 4. 超过服务当前的并发上限，按限流处理
+                nrpcResponse.setCode(RespCode.RATE_LIMIT.getCode());
                 if (log.isDebugEnabled()) {
-                    log.debug("【{}】已在服务端完成调用", nrpcRequest.getRequestId());
+                    log.debug("服务【{}】超过并发上限【{}】，编号为【{}】的请求被拒绝", requestPayload.getInterfaceName(),
+                            serviceConfig.getConcurrencyLimiter().getLimit(), nrpcRequest.getRequestId());
+                }
+            } else {
+                // 5. 将方法调用交给业务线程池执行，io线程不会被阻塞，耗时从这里开始计算，包含排队的时间
+                long startNanos = System.nanoTime();
+                try {
+                    serviceConfig.getExecutor().execute(
+                            () -> invoke(serviceConfig, methodInvoker, nrpcRequest, nrpcResponse, channel, startNanos));
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // 请求没有执行，只归还许可不记录耗时
+                    if (serviceConfig.getConcurrencyLimiter() != null) {
+                        serviceConfig.getConcurrencyLimiter().release();
+                    }
+                    nrpcResponse.setCode(RespCode.OVERLOAD.getCode());
+                    log.warn("服务【{}】的业务线程池已满，编号为【{}】的请求被拒绝",
+                            requestPayload.getInterfaceName(), nrpcRequest.getRequestId());
                 }
-                // 3. 封装响应
-                nrpcResponse.setCode(RespCode.SUCCESS.getCode());
-                nrpcResponse.setBody(result);
-            } catch (Exception e) {
-                nrpcResponse.setCode(RespCode.FAIL.getCode());
-                log.error("编号为【{}】的请求在调用时发生异常", nrpcRequest.getRequestId(), e);
             }
         }
 
-        // 6. 写出响应
+        writeResponse(channel, nrpcResponse);
+    }
+
+    /**
+     * 获取调用方对应方法的限流器，不存在时原子地创建
+     * 限流器挂在方法调用器上、按调用方ip查找，正常请求只有一次map查找，不需要拼接key
+     * 只有新建限流器时（map在增长）才检查是否需要回收空闲的限流器
+     * @param socketAddress 调用方地址
+     * @param serviceConfig 服务配置
+     * @param methodInvoker 调用的方法
+     * @return 限流器
+     */
+    private RateLimiter getRateLimiter(SocketAddress socketAddress, ServiceConfig<?> serviceConfig, MethodInvoker methodInvoker) {
+        // 调用方重连后端口会变，按ip区分
+        Object client = socketAddress instanceof InetSocketAddress inetSocketAddress && inetSocketAddress.getAddress() != null
+                ? inetSocketAddress.getAddress() : socketAddress;
+
+        Map<Object, RateLimiter> rateLimiters = methodInvoker.getRateLimiters();
+        RateLimiter rateLimiter = rateLimiters.get(client);
+        if (rateLimiter == null) {
+            Configuration configuration = NrpcBootstrap.getInstance().getConfiguration();
+            rateLimiter = rateLimiters.computeIfAbsent(client,
+                    k -> createRateLimiter(configuration, serviceConfig, methodInvoker));
+            evictIdleRateLimiters(configuration);
+        }
+        return rateLimiter;
+    }
+
+    /**
+     * 限流参数：方法上的@RateLimit > 服务实现类上的@RateLimit > 全局配置
+     */
+    private RateLimiter createRateLimiter(Configuration configuration, ServiceConfig<?> serviceConfig,
+                                          MethodInvoker methodInvoker) {
+        int capacity = configuration.getRateLimitCapacity();
+        double rate = configuration.getRateLimitRate();
+
+        if (serviceConfig.getRef() != null) {
+            Class<?> refClass = serviceConfig.getRef().getClass();
+            RateLimit rateLimit = refClass.getAnnotation(RateLimit.class);
+            try {
+                RateLimit methodRateLimit = refClass.getMethod(methodInvoker.getMethod().getName(),
+                        methodInvoker.getMethod().getParameterTypes()).getAnnotation(RateLimit.class);
+                if (methodRateLimit != null) {
+                    rateLimit = methodRateLimit;
+                }
+            } catch (NoSuchMethodException e) {
+                // 实现类不是public时找不到方法，按照服务的配置限流即可
+            }
+            if (rateLimit != null) {
+                capacity = rateLimit.capacity() > 0 ? rateLimit.capacity() : capacity;
+                rate = rateLimit.rate() > 0 ? rateLimit.rate() : rate;
+            }
+        }
+        return new TokenBuketRateLimiter(capacity, rate);
+    }
+
+    /**
+     * 回收所有服务中空闲时间超过rateLimiterIdleTimeout的限流器，同一时间只有一个线程执行，两次回收至少间隔一个空闲时间
+     */
+    private void evictIdleRateLimiters(Configuration configuration) {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getRateLimiterIdleTimeout());
+        long now = System.nanoTime();
+        long lastEviction = LAST_EVICTION.get();
+        if (now - lastEviction < idleNanos || !LAST_EVICTION.compareAndSet(lastEviction, now)) {
+            return;
+        }
+        for (ServiceConfig<?> serviceConfig : NrpcBootstrap.SERVERS_LIST.values()) {
+            if (serviceConfig.getMethodInvokers() == null) {
+                continue;
+            }
+            for (MethodInvoker[] overloads : serviceConfig.getMethodInvokers().values()) {
+                for (MethodInvoker methodInvoker : overloads) {
+                    methodInvoker.getRateLimiters().values().removeIf(rateLimiter -> rateLimiter.isIdle(now, idleNanos));
+                }
+            }
+        }
+    }
+
+    /**
+     * 执行方法调用，封装并写出响应
+     * 服务方法返回CompletableFuture时，等它完成后再写出响应，不占用业务线程
+     * @param serviceConfig 服务配置
+     * @param methodInvoker 调用的方法
+     * @param nrpcRequest   请求
+     * @param nrpcResponse  响应
+     * @param channel       通道
+     * @param startNanos    请求开始排队的时间
+     */
+    private void invoke(ServiceConfig<?> serviceConfig, MethodInvoker methodInvoker, NrpcRequest nrpcRequest,
+                        NrpcResponse nrpcResponse, Channel channel, long startNanos) {
+        Object result;
+        try {
+            result = callTargetMethod(methodInvoker, nrpcRequest.getRequestPayload());
+        } catch (Exception e) {
+            completeResponse(nrpcRequest, nrpcResponse, null, e);
+            releaseConcurrency(serviceConfig, startNanos);
+            writeResponse(channel, nrpcResponse);
+            return;
+        }
+
+        if (result instanceof CompletableFuture<?> future) {
+            future.whenComplete((value, throwable) -> {
+                completeResponse(nrpcRequest, nrpcResponse, value, throwable);
+                releaseConcurrency(serviceConfig, startNanos);
+                writeResponse(channel, nrpcResponse);
+            });
+            return;
+        }
+
+        completeResponse(nrpcRequest, nrpcResponse, result, null);
+        releaseConcurrency(serviceConfig, startNanos);
+        writeResponse(channel, nrpcResponse);
+    }
+
+    /**
+     * 调用结束，归还并发许可并记录耗时
+     * @param startNanos 请求开始排队的时间
+     */
+    private void releaseConcurrency(ServiceConfig<?> serviceConfig, long startNanos) {
+        if (serviceConfig.getConcurrencyLimiter() != null) {
+            serviceConfig.getConcurrencyLimiter().release(startNanos);
+        }
+    }
+
+    /**
+     * 根据调用结果封装响应
+     * @param nrpcRequest  请求
+     * @param nrpcResponse 响应
+     * @param result       调用结果
+     * @param throwable    调用异常，成功时为null
+     */
+    private void completeResponse(NrpcRequest nrpcRequest, NrpcResponse nrpcResponse, Object result, Throwable throwable) {
+        if (throwable != null) {
+            nrpcResponse.setCode(RespCode.FAIL.getCode());
+            log.error("编号为【{}】的请求在调用时发生异常", nrpcRequest.getRequestId(), throwable);
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("【{}】已在服务端完成调用", nrpcRequest.getRequestId());
+        }
+        nrpcResponse.setCode(RespCode.SUCCESS.getCode());
+        nrpcResponse.setBody(result);
+    }
+
+    /**
+     * 写出响应，并将计数器-1
+     * @param channel      通道
+     * @param nrpcResponse 响应
+     */
+    private void writeResponse(Channel channel, NrpcResponse nrpcResponse) {
         // todo why not "channelHandlerContext.writeAndFlush(nrpcResponse);" ?
-        channelHandlerContext.channel().writeAndFlush(nrpcResponse);
+        channel.writeAndFlush(nrpcResponse).addListener((ChannelFutureListener) future -> {
+            // 返回值编码失败（比如超过最大帧长度）时，回一个不带返回值的失败响应，调用方不用等到超时
+            if (!future.isSuccess() && nrpcResponse.getBody() != null && channel.isActive()) {
+                log.error("编号为【{}】的响应编码失败", nrpcResponse.getRequestId(), future.cause());
+                nrpcResponse.setBody(null);
+                nrpcResponse.setCode(RespCode.FAIL.getCode());
+                channel.writeAndFlush(nrpcResponse);
+            }
+        });
 
         // 计数器-1
         ShutdownHolder.LATCH.decrement();
     }
 
-    private Object callTargetMethod(RequestPayload requestPayload) {
-        String interfaceName = requestPayload.getInterfaceName();
-        String methodName = requestPayload.getMethodName();
-        Class<?>[] parametersType = requestPayload.getParametersType();
-        Object[] parametersValue = requestPayload.getParametersValue();
-
-        // 寻找到匹配的暴露出去的具体的实现
-        ServiceConfig<?> serviceConfig = NrpcBootstrap.SERVERS_LIST.get(interfaceName);
-        Object refImpl = serviceConfig.getRef();
-
-        // 通过反射调用 1、获取方法对象 2、执行invoke方法
-        Object returnValue = null;
+    private Object callTargetMethod(MethodInvoker methodInvoker, RequestPayload requestPayload) {
+        // 方法调用器在io线程中已经从发布时生成的调用表里找到，不再每次反射查找
         try {
-            Class<?> aClass = refImpl.getClass();
-            Method method = aClass.getMethod(methodName, parametersType);
-            returnValue = method.invoke(refImpl, parametersValue);
-        } catch (InvocationTargetException | NoSuchMethodException | IllegalAccessException e) {
-            log.error("调用服务【{}】的方法【{}】时发生了异常", interfaceName, methodName, e);
+            return methodInvoker.invoke(requestPayload.getParametersValue());
+        } catch (Throwable e) {
+            log.error("调用服务【{}】的方法【{}】时发生了异常", requestPayload.getInterfaceName(), methodInvoker.getSignature(), e);
             throw new RuntimeException(e);
         }
-        
-        return returnValue;
     }
 }
@@ -1,18 +1,25 @@
 package org.example.netty.channelHandler.handler.providerHandler;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import lombok.extern.slf4j.Slf4j;
 import org.example.compress.Compressor;
 import org.example.compress.CompressorFactory;
 import org.example.enumeration.RequestType;
+import org.example.netty.channelHandler.handler.CompactProtocol;
 import org.example.serialize.Serializer;
 import org.example.serialize.SerializerFactory;
 import org.example.transport.message.MessageFormatConstant;
 import org.example.transport.message.NrpcRequest;
 import org.example.transport.message.RequestPayload;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * @author xiaonaol
  * @date 2024/11/16
@@ -39,20 +46,45 @@ public class NrpcRequestDecoder extends LengthFieldBasedFrameDecoder {
     @Override
     protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
         log.info("开始解码报文……");
+        // 根据版本号分发，第1版的报文仍然按照定长头部解析
+        if (CompactProtocol.isCompact(in)) {
+            ByteBuf frame;
+            try {
+                frame = CompactProtocol.extractFrame(in);
+            } catch (DecoderException e) {
+                // 找不到下一帧的边界，连接无法继续使用
+                log.error("紧凑协议的报文格式错误，关闭连接【{}】", ctx.channel().remoteAddress(), e);
+                ctx.close();
+                throw e;
+            }
+            if (frame == null) {
+                return null;
+            }
+            try {
+                return decodeCompactFrame(ctx.channel(), frame);
+            } finally {
+                frame.release();
+            }
+        }
+
         Object decode = super.decode(ctx, in);
         if(decode instanceof ByteBuf byteBuf){
-            return decodeFrame(byteBuf);
+            // 截取出的帧是累积缓冲区的retained slice，解码完成后需要释放
+            try {
+                return decodeFrame(byteBuf);
+            } finally {
+                byteBuf.release();
+            }
         }
         return null;
     }
 
-    private Object decodeFrame(ByteBuf byteBuf) {
+    private Object decodeFrame(ByteBuf byteBuf) throws IOException {
+        int start = byteBuf.readerIndex();
         // 1、解析魔数
-        byte[] magic = new byte[MessageFormatConstant.MAGIC.length];
-        byteBuf.readBytes(magic);
         // 检测魔数是否匹配
-        for (int i = 0; i < magic.length; i++) {
-            if(magic[i] != MessageFormatConstant.MAGIC[i]) {
+        for (int i = 0; i < MessageFormatConstant.MAGIC.length; i++) {
+            if(byteBuf.readByte() != MessageFormatConstant.MAGIC[i]) {
                 throw new RuntimeException("请求不合法");
             }
         }
@@ -84,11 +116,17 @@ public class NrpcRequestDecoder extends LengthFieldBasedFrameDecoder {
         // 9、时间戳
         long timeStamp = byteBuf.readLong();
 
+        // 第1版协议的头部没有希望响应使用的压缩方式，按照请求的压缩方式响应，保持和旧版本的兼容
+        byte acceptCompressType = compressType;
+        // 跳过不认识的头部字段，负载总是从头部长度的位置开始
+        byteBuf.readerIndex(start + headLength);
+
         // 我们需要封装
         NrpcRequest nrpcRequest = new NrpcRequest();
         nrpcRequest.setRequestId(requestId);
         nrpcRequest.setSerializeType(serializeType);
         nrpcRequest.setCompressType(compressType);
+        nrpcRequest.setAcceptCompressType(acceptCompressType);
         nrpcRequest.setRequestType(requestType);
         nrpcRequest.setTimeStamp(timeStamp);
 
@@ -99,20 +137,58 @@ public class NrpcRequestDecoder extends LengthFieldBasedFrameDecoder {
         }
 
         int payloadLength = fullLength - headLength;
-        byte[] payload = new byte[payloadLength];
-        byteBuf.readBytes(payload);
 
-        // 有了payload字节数组后，就可以解压缩反序列化
-        // 1. 解压缩
-        if(payload.length > 0) {
+        // 直接以流的方式从帧中读取负载，解压缩和反序列化都不再拷贝出中间的字节数组
+        if(payloadLength > 0) {
+            // 1. 解压缩
             Compressor compressor = CompressorFactory.getCompressor(nrpcRequest.getCompressType()).getImpl();
-            payload = compressor.decompress(payload);
-
             // 2. 反序列化
             Serializer serializer = SerializerFactory.getSerializer(serializeType).getImpl();
-            RequestPayload requestPayload = serializer.deserialize(payload, RequestPayload.class);
-            nrpcRequest.setRequestPayload(requestPayload);
+            try (InputStream inputStream = compressor.decompress(new ByteBufInputStream(byteBuf, payloadLength))) {
+                RequestPayload requestPayload = serializer.deserialize(inputStream, RequestPayload.class);
+                nrpcRequest.setRequestPayload(requestPayload);
+            }
+        }
+
+        if(log.isDebugEnabled()) {
+            log.debug("请求【{}】已经在服务端完成解码", nrpcRequest.getRequestId());
+        }
+
+        return nrpcRequest;
+    }
+
+    /**
+     * 按照第2版紧凑协议解码
+     */
+    private Object decodeCompactFrame(Channel channel, ByteBuf frame) throws IOException {
+        // 记录该连接使用的协议版本，响应时使用相同的版本
+        channel.attr(CompactProtocol.PROTOCOL_VERSION).set(MessageFormatConstant.COMPACT_VERSION);
+
+        NrpcRequest nrpcRequest = new NrpcRequest();
+        nrpcRequest.setRequestType(frame.readByte());
+        nrpcRequest.setSerializeType(frame.readByte());
+        nrpcRequest.setCompressType(frame.readByte());
+        nrpcRequest.setAcceptCompressType(frame.readByte());
+        nrpcRequest.setRequestId(CompactProtocol.readVarLong(frame));
+        // 紧凑协议不传输时间戳
+        nrpcRequest.setTimeStamp(System.currentTimeMillis());
+
+        // 心跳请求没有负载，直接返回
+        if(nrpcRequest.getRequestType() == RequestType.HEART_BEAT.getId() || !frame.isReadable()) {
+            return nrpcRequest;
+        }
+
+        CompactProtocol.MethodDescriptor methodDescriptor = CompactProtocol.readMethod(channel, frame);
+
+        Object[] parametersValue = null;
+        if(frame.isReadable()) {
+            Compressor compressor = CompressorFactory.getCompressor(nrpcRequest.getCompressType()).getImpl();
+            Serializer serializer = SerializerFactory.getSerializer(nrpcRequest.getSerializeType()).getImpl();
+            try (InputStream inputStream = compressor.decompress(new ByteBufInputStream(frame, frame.readableBytes()))) {
+                parametersValue = serializer.deserialize(inputStream, Object[].class);
+            }
         }
+        nrpcRequest.setRequestPayload(methodDescriptor.toPayload(parametersValue));
 
         if(log.isDebugEnabled()) {
             log.debug("请求【{}】已经在服务端完成解码", nrpcRequest.getRequestId());
@@ -4,10 +4,8 @@ import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import lombok.extern.slf4j.Slf4j;
-import org.example.compress.Compressor;
-import org.example.compress.CompressorFactory;
-import org.example.serialize.Serializer;
-import org.example.serialize.SerializerFactory;
+import org.example.compress.CompressionPolicy;
+import org.example.netty.channelHandler.handler.CompactProtocol;
 import org.example.transport.message.MessageFormatConstant;
 import org.example.transport.message.NrpcResponse;
 
@@ -19,6 +17,13 @@ import org.example.transport.message.NrpcResponse;
 public class NrpcResponseEncoder extends MessageToByteEncoder<NrpcResponse> {
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext, NrpcResponse nrpcResponse, ByteBuf byteBuf) throws Exception {
+        // 按照请求使用的协议版本进行响应
+        Byte version = channelHandlerContext.channel().attr(CompactProtocol.PROTOCOL_VERSION).get();
+        if (version != null && version == MessageFormatConstant.COMPACT_VERSION) {
+            encodeCompact(nrpcResponse, byteBuf);
+            return;
+        }
+
         // 4个字节的魔术值
         byteBuf.writeBytes(MessageFormatConstant.MAGIC);
         // 1个字节的版本号
@@ -30,6 +35,7 @@ public class NrpcResponseEncoder extends MessageToByteEncoder<NrpcResponse> {
         // 3个类型
         byteBuf.writeByte(nrpcResponse.getCode());
         byteBuf.writeByte(nrpcResponse.getSerializeType());
+        int compressIndex = byteBuf.writerIndex();
         byteBuf.writeByte(nrpcResponse.getCompressType());
         // 8字节的请求id
         byteBuf.writeLong(nrpcResponse.getRequestId());
@@ -37,23 +43,11 @@ public class NrpcResponseEncoder extends MessageToByteEncoder<NrpcResponse> {
 
         // 如果是心跳请求就不处理请求体 "ping" "pong"
 
-        // 1. 对响应做序列化
-        byte[] body = null;
-        if(nrpcResponse.getBody() != null) {
-            Serializer serializer = SerializerFactory.getSerializer(nrpcResponse
-                    .getSerializeType()).getImpl();
-            body = serializer.serialize(nrpcResponse.getBody());
-
-            // 2. 压缩
-            Compressor compressor = CompressorFactory.getCompressor(nrpcResponse.getCompressType()).getImpl();
-            body = compressor.compress(body);
-        }
-
-        if(body != null) {
-            byteBuf.writeBytes(body);
-        }
+        // 序列化后按照大小和压缩效果决定是否压缩，报文头中回填实际的压缩方式
+        int bodyStart = byteBuf.writerIndex();
+        writeBody(nrpcResponse, byteBuf, compressIndex);
 
-        int bodyLength = body == null ? 0 : body.length;
+        int bodyLength = byteBuf.writerIndex() - bodyStart;
         // 重新处理报文的总长度
         // 保存当前写指针的位置
         int writerIndex = byteBuf.writerIndex();
@@ -69,4 +63,35 @@ public class NrpcResponseEncoder extends MessageToByteEncoder<NrpcResponse> {
             log.debug("响应【{}】已在服务端完成解码", nrpcResponse.getRequestId());
         }
     }
+
+    /**
+     * 按照第2版紧凑协议编码
+     */
+    private void encodeCompact(NrpcResponse nrpcResponse, ByteBuf byteBuf) throws Exception {
+        int lengthIndex = CompactProtocol.beginFrame(byteBuf);
+        byteBuf.writeByte(nrpcResponse.getCode());
+        byteBuf.writeByte(nrpcResponse.getSerializeType());
+        int compressIndex = byteBuf.writerIndex();
+        byteBuf.writeByte(nrpcResponse.getCompressType());
+        CompactProtocol.writeVarLong(byteBuf, nrpcResponse.getRequestId());
+
+        writeBody(nrpcResponse, byteBuf, compressIndex);
+
+        CompactProtocol.endFrame(byteBuf, lengthIndex);
+
+        if(log.isDebugEnabled()){
+            log.debug("响应【{}】已在服务端完成编码", nrpcResponse.getRequestId());
+        }
+    }
+
+    private void writeBody(NrpcResponse nrpcResponse, ByteBuf byteBuf, int compressIndex) throws Exception {
+        Object body = nrpcResponse.getBody();
+        if(body == null) {
+            return;
+        }
+        // 响应按照返回值类型统计压缩效果
+        byte compressType = CompressionPolicy.writeBody(byteBuf, body, nrpcResponse.getSerializeType(),
+                nrpcResponse.getCompressType(), body.getClass().getName());
+        byteBuf.setByte(compressIndex, compressType);
+    }
 }
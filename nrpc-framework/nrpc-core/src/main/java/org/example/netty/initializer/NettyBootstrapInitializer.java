@@ -1,8 +1,12 @@
 package org.example.netty.initializer;
 
 import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
+import org.example.NrpcBootstrap;
+import org.example.config.Configuration;
+import org.example.netty.NrpcChannelPool;
 import org.example.netty.channelHandler.ConsumerChannelInitializer;
 
 /**
@@ -13,11 +17,19 @@ public class NettyBootstrapInitializer {
     private static final Bootstrap bootstrap = new Bootstrap();
 
     static {
-        NioEventLoopGroup group = new NioEventLoopGroup();
+        Configuration configuration = NrpcBootstrap.getInstance().getConfiguration();
+        // 0代表使用netty默认的线程数
+        EventLoopGroup group = NettyTransport.newEventLoopGroup(0, "nrpc-consumer-io");
         bootstrap.group(group)
                 // 选择初始化一个什么样的channel
-                .channel(NioSocketChannel.class)
+                .channel(NettyTransport.socketChannelClass())
+                .option(ChannelOption.TCP_NODELAY, configuration.isTcpNoDelay())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, NrpcChannelPool.CONNECT_TIMEOUT_MILLIS)
                 .handler(new ConsumerChannelInitializer());
+
+        if (NettyTransport.useEpoll()) {
+            bootstrap.option(EpollChannelOption.TCP_QUICKACK, configuration.isTcpQuickAck());
+        }
     }
 
     private NettyBootstrapInitializer() {
@@ -1,9 +1,11 @@
 package org.example.netty.initializer;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.epoll.EpollChannelOption;
+import org.example.NrpcBootstrap;
+import org.example.config.Configuration;
 import org.example.netty.channelHandler.ProviderChannelInitializer;
 import org.example.core.NrpcShutdownHook;
 
@@ -15,18 +17,35 @@ public class NettyServerBootstrapInitializer {
     private static final ServerBootstrap serverBootstrap = new ServerBootstrap();
     public static final EventLoopGroup boss;
     public static final EventLoopGroup worker;
+    // 同一个端口需要绑定的次数，开启SO_REUSEPORT后每个boss线程各自绑定一次，由内核分发连接
+    private static final int bindTimes;
 
     static {
         // 注册一个关闭应用程序的Hook函数
         Runtime.getRuntime().addShutdownHook(new NrpcShutdownHook());
 
+        Configuration configuration = NrpcBootstrap.getInstance().getConfiguration();
+
         // 1、创建eventLoop，老板只负责处理请求，之后会将请求分发至worker
-        boss = new NioEventLoopGroup(2);
-        worker = new NioEventLoopGroup(10);
+        boss = NettyTransport.newEventLoopGroup(configuration.getBossThreads(), "nrpc-provider-boss");
+        worker = NettyTransport.newEventLoopGroup(configuration.getWorkerThreads(), "nrpc-provider-worker");
 
         serverBootstrap.group(boss, worker)
-                .channel(NioServerSocketChannel.class)
+                .channel(NettyTransport.serverSocketChannelClass())
+                .childOption(ChannelOption.TCP_NODELAY, configuration.isTcpNoDelay())
                 .childHandler(new ProviderChannelInitializer());
+
+        if (NettyTransport.useEpoll()) {
+            serverBootstrap.childOption(EpollChannelOption.TCP_QUICKACK, configuration.isTcpQuickAck());
+        }
+
+        // SO_REUSEPORT只有epoll支持
+        if (NettyTransport.useEpoll() && configuration.isReusePort()) {
+            serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            bindTimes = Math.max(1, configuration.getBossThreads());
+        } else {
+            bindTimes = 1;
+        }
     }
 
     private NettyServerBootstrapInitializer() {
@@ -36,4 +55,8 @@ public class NettyServerBootstrapInitializer {
     public static ServerBootstrap getServerBootstrap() {
         return serverBootstrap;
     }
+
+    public static int getBindTimes() {
+        return bindTimes;
+    }
 }
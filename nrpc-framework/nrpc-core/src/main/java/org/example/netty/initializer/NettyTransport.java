@@ -0,0 +1,67 @@
+package org.example.netty.initializer;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.example.NrpcBootstrap;
+
+/**
+ * 传输层的选择，Linux上epoll可用时优先使用epoll，否则回退到nio
+ * @author xiaonaol
+ * @date 2025/1/11
+ **/
+@Slf4j
+public class NettyTransport {
+
+    private NettyTransport() {
+    }
+
+    /**
+     * @return 是否使用epoll，需要配置允许并且本地库可用，第一次调用时确定，之后不再变化
+     */
+    public static boolean useEpoll() {
+        return EpollHolder.USE_EPOLL;
+    }
+
+    private static boolean resolveEpoll() {
+        boolean enabled = NrpcBootstrap.getInstance().getConfiguration().isEpoll();
+        if (enabled && !Epoll.isAvailable()) {
+            log.info("epoll不可用，将使用nio：{}", String.valueOf(Epoll.unavailabilityCause()));
+            if (log.isDebugEnabled()) {
+                log.debug("epoll不可用的原因", Epoll.unavailabilityCause());
+            }
+            return false;
+        }
+        return enabled;
+    }
+
+    /**
+     * 第一次使用时才读取配置，此时配置文件已经加载完成
+     */
+    private static class EpollHolder {
+        private static final boolean USE_EPOLL = resolveEpoll();
+    }
+
+    public static EventLoopGroup newEventLoopGroup(int threads, String name) {
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory(name);
+        return useEpoll() ? new EpollEventLoopGroup(threads, threadFactory)
+                : new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    public static Class<? extends SocketChannel> socketChannelClass() {
+        return useEpoll() ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    public static Class<? extends ServerChannel> serverSocketChannelClass() {
+        return useEpoll() ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+}
@@ -1,73 +1,230 @@
 package org.example.protection;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * 简单熔断器的实现
+ * 基于滑动时间窗口的熔断器，有三种状态：
+ * CLOSED    正常放行，统计最近windowMillis内的请求数和失败数，请求数达到minRequests且失败比例达到maxErrorRate时打开
+ * OPEN      拒绝所有请求，openMillis之后的第一次调用把状态切换为HALF_OPEN，不需要定时器
+ * HALF_OPEN 只放行halfOpenProbes个探测请求，全部成功则关闭，任意一个失败则重新打开
+ * 时间窗口由若干个桶组成的环实现，每个桶是一个long：高16位是桶所属时间片的编号，中间24位是请求数，低24位是失败数，
+ * 用一次CAS同时完成“过期桶清零”和“计数”，全程无锁；为了减少竞争，每个桶按线程拆成多个分片，统计时再相加
  * @author xiaonaol
  * @date 2024/12/8
  **/
 public class CircuitBreaker {
 
-    // 标准的断路器应该有三种状态 open close half-open
-    private volatile boolean isOpen = false;
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 放行的方式，请求结束时原样传给recordSuccess/recordFailure
+     * REJECTED 不放行
+     * NORMAL   关闭状态下正常放行，结果计入时间窗口
+     * PROBE    半开状态下占用了一个探测名额，结果决定是否关闭熔断器
+     */
+    public enum Permit {
+        REJECTED, NORMAL, PROBE
+    }
+
+    private static final int EPOCH_SHIFT = 48;
+    private static final int REQUEST_SHIFT = 24;
+    private static final long COUNT_MASK = (1L << 24) - 1;
+    private static final long EPOCH_MASK = 0xFFFF;
 
-    // 需要搜集异常指标
-    // 异常的数量 总的请求数
-    private final AtomicInteger requestCount = new AtomicInteger(0);
+    // 每个分片前后留出一个缓存行，不同分片的计数不会落在同一个缓存行上
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripes();
 
-    // 异常的请求数
-    private final AtomicInteger errorRequestCount = new AtomicInteger(0);
+    private final int buckets;
+    private final long bucketMillis;
+    private final int stride;
+    private final AtomicLongArray counters;
 
-    // 允许最大的异常比例
-    private final int maxErrorRequest;
+    private final int minRequests;
     private final float maxErrorRate;
+    private final long openMillis;
+    private final int halfOpenProbes;
 
-    public CircuitBreaker(int maxErrorRequest, float maxErrorRate) {
-        this.maxErrorRequest = maxErrorRequest;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private volatile long openUntil;
+    // 半开状态下剩余的探测名额和已经成功的探测数
+    private final AtomicInteger probePermits = new AtomicInteger();
+    private final AtomicInteger probeSuccesses = new AtomicInteger();
+
+    /**
+     * @param windowMillis   统计窗口的长度
+     * @param buckets        窗口划分的桶数
+     * @param minRequests    窗口内的请求数达到这个值才会判断失败比例
+     * @param maxErrorRate   允许的最大失败比例
+     * @param openMillis     打开状态持续的时间
+     * @param halfOpenProbes 半开状态下放行的探测请求数
+     */
+    public CircuitBreaker(long windowMillis, int buckets, int minRequests, float maxErrorRate,
+                          long openMillis, int halfOpenProbes) {
+        if (windowMillis <= 0 || buckets <= 0 || halfOpenProbes <= 0) {
+            throw new IllegalArgumentException("熔断器的时间窗口、桶数和探测数必须大于0");
+        }
+        this.buckets = buckets;
+        this.bucketMillis = Math.max(1, windowMillis / buckets);
+        this.stride = buckets + PADDING;
+        this.counters = new AtomicLongArray(STRIPES * stride + PADDING);
+        this.minRequests = Math.max(1, minRequests);
         this.maxErrorRate = maxErrorRate;
+        this.openMillis = openMillis;
+        this.halfOpenProbes = halfOpenProbes;
     }
 
-    // 断路器的核心方法，判断是否开启
-    public boolean isBreak() {
-        if(isOpen) {
-            return true;
+    /**
+     * 断路器的核心方法，判断是否允许发送请求，半开状态下会占用一个探测名额
+     * 放行的请求结束后必须把返回的许可传给 {@link #recordSuccess(Permit)} 或 {@link #recordFailure(Permit)}
+     * @return 放行的方式，不放行时返回REJECTED
+     */
+    public Permit tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return Permit.NORMAL;
         }
-
-        // 需要判断数据指标，是否满足当前的熔断阈值
-        if(errorRequestCount.get() > maxErrorRequest) {
-            this.isOpen = true;
-            return true;
+        if (current == State.OPEN) {
+            if (System.currentTimeMillis() < openUntil) {
+                return Permit.REJECTED;
+            }
+            // 只有一个线程能完成切换，由它发放探测名额
+            if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                probeSuccesses.set(0);
+                probePermits.set(halfOpenProbes);
+            }
         }
-
-        if(errorRequestCount.get() > 0 && requestCount.get() > 0 &&
-        errorRequestCount.get() / (float) requestCount.get() > maxErrorRate) {
-            this.isOpen = true;
-            return true;
+        for (int permits = probePermits.get(); permits > 0; permits = probePermits.get()) {
+            if (probePermits.compareAndSet(permits, permits - 1)) {
+                return Permit.PROBE;
+            }
         }
-
-        return false;
+        return Permit.REJECTED;
     }
 
+    /**
+     * 记录一次成功的请求
+     * 只有占用了探测名额的请求才算作探测成功，关闭状态下放行、在熔断之后才结束的请求不影响半开状态
+     * @param permit 放行时返回的许可
+     */
+    public void recordSuccess(Permit permit) {
+        State current = state.get();
+        if (permit == Permit.PROBE) {
+            if (current == State.HALF_OPEN && probeSuccesses.incrementAndGet() >= halfOpenProbes
+                    && state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+                // 打开之前的统计已经没有意义
+                clearWindow();
+            }
+            return;
+        }
+        if (permit == Permit.NORMAL && current == State.CLOSED) {
+            record(false);
+        }
+    }
 
+    /**
+     * 记录一次失败的请求
+     * @param permit 放行时返回的许可
+     */
+    public void recordFailure(Permit permit) {
+        State current = state.get();
+        if (permit == Permit.PROBE) {
+            if (current == State.HALF_OPEN) {
+                open(State.HALF_OPEN);
+            }
+            return;
+        }
+        if (permit != Permit.NORMAL || current != State.CLOSED) {
+            return;
+        }
+        record(true);
 
-    // 每次发生请求、异常应该进行记录
-    public void recordRequest() {
-        this.requestCount.getAndIncrement();
+        // 只在失败时检查阈值，成功的请求只需要计数
+        long[] totals = totals();
+        if (totals[0] >= minRequests && totals[1] >= totals[0] * (double) maxErrorRate) {
+            open(State.CLOSED);
+        }
     }
 
-    public void recordErrorRequest() {
-        this.errorRequestCount.getAndIncrement();
+    public State getState() {
+        return state.get();
     }
 
-
     /**
      * 重置熔断器
      * @author xiaonaol
      */
     public void reset() {
-        this.isOpen = false;
-        this.requestCount.set(0);
-        this.errorRequestCount.set(0);
+        state.set(State.CLOSED);
+        probePermits.set(0);
+        clearWindow();
+    }
+
+    private void open(State expected) {
+        openUntil = System.currentTimeMillis() + openMillis;
+        state.compareAndSet(expected, State.OPEN);
+    }
+
+    private void record(boolean error) {
+        long epoch = System.currentTimeMillis() / bucketMillis;
+        long tag = epoch & EPOCH_MASK;
+        int index = stripe() * stride + (int) (epoch % buckets);
+        long delta = (1L << REQUEST_SHIFT) | (error ? 1 : 0);
+        while (true) {
+            long value = counters.get(index);
+            long next;
+            if (value >>> EPOCH_SHIFT != tag) {
+                // 桶里是上一轮的数据，直接覆盖
+                next = tag << EPOCH_SHIFT | delta;
+            } else if ((value >>> REQUEST_SHIFT & COUNT_MASK) == COUNT_MASK) {
+                // 计数已满，一个桶内不会有这么多请求，丢弃即可
+                return;
+            } else {
+                next = value + delta;
+            }
+            if (counters.compareAndSet(index, value, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return 窗口内的请求数和失败数
+     */
+    private long[] totals() {
+        long current = System.currentTimeMillis() / bucketMillis;
+        long requests = 0;
+        long errors = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int i = 0; i < buckets; i++) {
+                long value = counters.get(stripe * stride + i);
+                long age = (current - (value >>> EPOCH_SHIFT)) & EPOCH_MASK;
+                if (value == 0 || age >= buckets) {
+                    continue;
+                }
+                requests += value >>> REQUEST_SHIFT & COUNT_MASK;
+                errors += value & COUNT_MASK;
+            }
+        }
+        return new long[]{requests, errors};
+    }
+
+    private void clearWindow() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    private static int stripe() {
+        return (int) Thread.currentThread().getId() & (STRIPES - 1);
+    }
+
+    private static int stripes() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+        return Integer.highestOneBit(Math.max(1, processors));
     }
 }
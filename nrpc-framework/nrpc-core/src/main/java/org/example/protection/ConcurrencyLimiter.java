@@ -0,0 +1,180 @@
+package org.example.protection;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务提供方的自适应并发限制，按照梯度算法根据服务耗时自动调整并发上限：
+ * 1、每个请求结束时记录耗时（包含在业务线程池中排队的时间），按固定的时间窗口汇总
+ * 2、窗口结束时，用窗口内的平均耗时（短期）和无负载时的耗时（基准）计算梯度 min(1, tolerance * 基准 / 短期)，
+ *    耗时没有变长时梯度为1，上限按照 sqrt(上限) 增长；耗时变长说明请求开始排队，上限按梯度成比例下降
+ *    基准取单个请求耗时的最小值（总有请求不需要排队），并缓慢地向各窗口的最小耗时靠拢，服务本身变慢（比如依赖的下游变慢）时基准也能跟上
+ * 3、窗口内的最大并发不到上限的一半时，说明负载不足以验证上限，不做调整
+ * 获取许可和计数只有CAS操作，只有每个窗口结束时抢到更新权的一个线程会重新计算上限
+ * @author xiaonaol
+ * @date 2025/1/18
+ **/
+@Slf4j
+public class ConcurrencyLimiter implements ConcurrencyLimiterMXBean {
+
+    // 梯度的下限，一个窗口内上限最多减半
+    private static final double MIN_GRADIENT = 0.5;
+    // 新上限所占的比重，避免上限剧烈抖动
+    private static final double SMOOTHING = 0.2;
+    // 基准耗时每个窗口向当前耗时靠拢的比例
+    private static final double BASELINE_DRIFT = 0.001;
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // 窗口内的请求数太少时平均耗时不可信，延长窗口
+    private static final int MIN_WINDOW_SAMPLES = 10;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    // 允许耗时相对基准增长的倍数
+    private final double tolerance;
+
+    private volatile double estimatedLimit;
+    private volatile int limit;
+    private volatile double baselineRtt;
+    private volatile double shortRtt;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    // 当前窗口的统计
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final LongAdder windowRttSum = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final AtomicLong windowMinRtt = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicInteger windowMaxInflight = new AtomicInteger();
+
+    /**
+     * @param name         名称，一般为服务名
+     * @param initialLimit 初始的并发上限
+     * @param minLimit     并发上限的最小值
+     * @param maxLimit     并发上限的最大值
+     * @param tolerance    允许耗时相对基准增长的倍数，大于等于1
+     */
+    public ConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        if (minLimit <= 0 || maxLimit < minLimit || tolerance < 1) {
+            throw new IllegalArgumentException("并发限制的参数错误");
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * 获取一个许可，成功后必须调用 {@link #release(long)} 或 {@link #release()}
+     * @return true 放行 false 超过当前的并发上限
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                int max = windowMaxInflight.get();
+                if (current + 1 > max) {
+                    windowMaxInflight.compareAndSet(max, current + 1);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 请求没有执行（比如被业务线程池拒绝），只归还许可，不记录耗时
+     */
+    public void release() {
+        inflight.decrementAndGet();
+    }
+
+    /**
+     * 请求结束，归还许可并记录耗时
+     * @param startNanos 请求开始的时间，System.nanoTime()
+     */
+    public void release(long startNanos) {
+        inflight.decrementAndGet();
+        long now = System.nanoTime();
+        long rtt = now - startNanos;
+        windowRttSum.add(rtt);
+        windowSamples.increment();
+        for (long min = windowMinRtt.get(); rtt < min; min = windowMinRtt.get()) {
+            if (windowMinRtt.compareAndSet(min, rtt)) {
+                break;
+            }
+        }
+
+        long start = windowStart.get();
+        if (now - start >= WINDOW_NANOS && windowSamples.sum() >= MIN_WINDOW_SAMPLES
+                && windowStart.compareAndSet(start, now)) {
+            // 重置和累加之间可能丢失少量样本，不影响平均值
+            long sum = windowRttSum.sumThenReset();
+            long samples = windowSamples.sumThenReset();
+            long minRtt = windowMinRtt.getAndSet(Long.MAX_VALUE);
+            int maxInflight = windowMaxInflight.getAndSet(inflight.get());
+            if (samples > 0 && minRtt != Long.MAX_VALUE) {
+                update((double) sum / samples, minRtt, maxInflight);
+            }
+        }
+    }
+
+    private void update(double rtt, long minRtt, int maxInflight) {
+        shortRtt = rtt;
+        double baseline = baselineRtt == 0 || minRtt < baselineRtt
+                ? minRtt : baselineRtt + (minRtt - baselineRtt) * BASELINE_DRIFT;
+        baselineRtt = baseline;
+
+        double current = estimatedLimit;
+        if (maxInflight < current / 2) {
+            return;
+        }
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * baseline / rtt));
+        double newLimit = current * gradient + Math.sqrt(current);
+        newLimit = current * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        estimatedLimit = newLimit;
+
+        int previous = limit;
+        limit = (int) newLimit;
+        if (previous != limit && log.isDebugEnabled()) {
+            log.debug("服务【{}】的并发上限由【{}】调整为【{}】，短期耗时【{}】us，基准耗时【{}】us",
+                    name, previous, limit, (long) (rtt / 1000), (long) (baseline / 1000));
+        }
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    @Override
+    public long getShortRttMicros() {
+        return (long) (shortRtt / 1000);
+    }
+
+    @Override
+    public long getBaselineRttMicros() {
+        return (long) (baselineRtt / 1000);
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.protection;
+
+/**
+ * 通过jmx暴露自适应并发限制的指标
+ * ObjectName：org.example.nrpc:type=ConcurrencyLimiter,service=接口全限定名
+ * @author xiaonaol
+ * @date 2025/1/18
+ **/
+public interface ConcurrencyLimiterMXBean {
+
+    // 当前推算出的并发上限
+    int getLimit();
+
+    // 正在处理的请求数
+    int getInflight();
+
+    // 最近一个窗口的平均耗时和无负载时的基准耗时（微秒）
+    long getShortRttMicros();
+
+    long getBaselineRttMicros();
+
+    // 因为超过并发上限被拒绝的请求数
+    long getRejected();
+}
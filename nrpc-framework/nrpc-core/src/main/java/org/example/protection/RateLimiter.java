@@ -2,4 +2,14 @@ package org.example.protection;
 
 public interface RateLimiter {
     boolean allowRequest();
+
+    /**
+     * 限流器长时间未使用且状态与新建时相同，可以回收
+     * 默认不回收，自定义的限流器不需要实现这个方法
+     * @param now       当前时间，System.nanoTime()
+     * @param idleNanos 空闲时间
+     */
+    default boolean isIdle(long now, long idleNanos) {
+        return false;
+    }
 }
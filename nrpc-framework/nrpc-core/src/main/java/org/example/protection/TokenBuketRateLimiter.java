@@ -1,56 +1,67 @@
 package org.example.protection;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
- * 基于令牌桶算法的限流器
+ * 基于令牌桶算法的限流器，按照GCRA的方式实现：
+ * 不记录令牌数，只记录“理论上下一个请求到达的时间”（tat），每放行一个请求tat向后推一个发放间隔，
+ * tat领先当前时间超过整个桶的容量时说明令牌已经用完
+ * 令牌按纳秒连续累积，速率可以是小数；一次CAS完成取令牌，不加锁也不分配对象
  * @author xiaonaol
  * @date 2024/12/8
  **/
 public class TokenBuketRateLimiter implements RateLimiter {
 
-    // 代表令牌数量
-    private int tokens;
-
-    // 限流的本质就是 令牌数
-    private final int capacity;
+    // 发放一个令牌的间隔（纳秒）
+    private final long interval;
 
-    // 按照一定的速率给令牌桶加令牌
-    private final int rate;
+    // 桶的容量对应的时间长度（纳秒），即 容量 * 发放间隔
+    private final long burst;
 
-    // 上一次放令牌的时间戳
-    private Long lastTokenTime;
+    // 理论上下一个请求到达的时间
+    private final AtomicLong tat;
 
-    public TokenBuketRateLimiter(int capacity, int rate) {
-        this.capacity = capacity;
-        this.rate = rate;
-        lastTokenTime = System.currentTimeMillis();
-        tokens = capacity;
+    /**
+     * @param capacity 桶的容量，也就是允许的突发请求数
+     * @param rate     每秒发放的令牌数
+     */
+    public TokenBuketRateLimiter(int capacity, double rate) {
+        if (capacity <= 0 || rate <= 0) {
+            throw new IllegalArgumentException("限流器的容量和速率必须大于0");
+        }
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        this.burst = interval * capacity;
+        // 初始时桶是满的
+        this.tat = new AtomicLong(System.nanoTime());
     }
 
-    
     /**
      * @return true 放行 false 拦截
      * @author xiaonaol
      */
-    public synchronized boolean allowRequest() {
-        // 1、给令牌桶添加令牌
-        Long currentTime = System.currentTimeMillis();
-        Long timeInterval = currentTime - lastTokenTime;
-        if(timeInterval >= 1000 / rate) {
-            int needAddToken = (int) (timeInterval * rate / 1000);
-
-            // 给令牌桶添加令牌
-            tokens = Math.min(capacity, tokens + needAddToken);
-
-            // 标记最后一次放入令牌的时间
-            this.lastTokenTime = System.currentTimeMillis();
+    @Override
+    public boolean allowRequest() {
+        long now = System.nanoTime();
+        while (true) {
+            long current = tat.get();
+            // 空闲时间积累的令牌不能超过容量
+            long next = (current - now < 0 ? now : current) + interval;
+            if (next - now > burst) {
+                return false;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return true;
+            }
         }
+    }
 
-        // 2、自己获取令牌，如果令牌桶中有令牌则放行，否则拦截
-        if(tokens > 0) {
-            tokens --;
-            return true;
-        } else {
-            return false;
-        }
+    /**
+     * 桶已经满了idleNanos以上，丢弃后重新创建不会改变限流的效果
+     * @param now       当前时间，System.nanoTime()
+     * @param idleNanos 空闲时间
+     */
+    public boolean isIdle(long now, long idleNanos) {
+        return now - tat.get() > idleNanos;
     }
 }
@@ -1,38 +1,39 @@
 package org.example.proxy.handler;
 
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelFutureListener;
-import lombok.Builder;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
+import org.example.netty.NrpcChannelPool;
 import org.example.netty.NrpcUtils;
-import org.example.netty.initializer.NettyBootstrapInitializer;
 import org.example.NrpcBootstrap;
+import org.example.annotation.CircuitBreak;
 import org.example.annotation.TryTimes;
 import org.example.compress.CompressorFactory;
+import org.example.config.Configuration;
 import org.example.discovery.Registry;
 import org.example.enumeration.RequestType;
-import org.example.exceptions.DiscoveryException;
-import org.example.exceptions.NetworkException;
+import org.example.loadbalancer.LoadBalancer;
 import org.example.protection.CircuitBreaker;
 import org.example.serialize.SerializerFactory;
 import org.example.transport.message.NrpcRequest;
 import org.example.transport.message.RequestPayload;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
-import java.net.SocketAddress;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
  * 该类封装了客户端通信的基础逻辑，每一个代理对象的远程调用过程都封装在了invoke方法中
  * 1、发现可用服务 2、建立连接 3、发送请求 4、得到结果
+ * 整个调用过程（包括重试和熔断）都是异步组合的，同步调用只是在最后阻塞等待结果
  * @author xiaonaol
  * @date 2024/11/4
  **/
@@ -42,20 +43,22 @@ public class RpcConsumerInvocationHandler implements InvocationHandler {
     private final Registry registry;
     private final Class<?> interfaceRef;
     private String group;
-    private InetSocketAddress address;
+    // 异步模式下所有方法都不阻塞，结果通过NrpcBootstrap.getFuture()获取
+    private final boolean async;
+
+    // 完成交给业务方的future的线程池，队列无界，回调永远不会被拒绝
+    private static final ExecutorService CALLBACK_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new DefaultThreadFactory("nrpc-consumer-callback", true));
 
     public RpcConsumerInvocationHandler(Registry registry, Class<?> interfaceRef, String group) {
+        this(registry, interfaceRef, group, false);
+    }
+
+    public RpcConsumerInvocationHandler(Registry registry, Class<?> interfaceRef, String group, boolean async) {
         this.registry = registry;
         this.interfaceRef = interfaceRef;
         this.group = group;
-
-        // 传入服务的名字,返回ip+端口
-        this.address = NrpcBootstrap.getInstance()
-                .getConfiguration().getLoadBalancer().selectServiceAddress(interfaceRef.getName(), group);
-        if (log.isDebugEnabled()) {
-            log.debug("服务调用方，发现了服务【{}】的可用主机【{}】.",
-                    interfaceRef.getName(), address);
-        }
+        this.async = async;
     }
 
     @Override
@@ -72,59 +75,121 @@ public class RpcConsumerInvocationHandler implements InvocationHandler {
         }
 
         // 发送调用请求
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        executeWithRetry(method, args, 0, maxRetry, intervalTime, null, future);
+
+        // 1、接口声明的返回值就是CompletableFuture，直接返回
+        // 响应在netty的io线程中到达，交给业务方的future在回调线程池中完成，业务的回调不会占用io线程
+        if (CompletableFuture.class.isAssignableFrom(method.getReturnType())) {
+            return completeOnCallbackExecutor(future);
+        }
+
+        // 2、异步模式，将future放入本地线程，返回默认值
+        if (async) {
+            NrpcBootstrap.setFuture(completeOnCallbackExecutor(future));
+            return defaultValue(method.getReturnType());
+        }
+
+        // 3、同步模式，阻塞等待结果，调用线程被唤醒后直接返回，不需要切换线程
         try {
-            return executeWithRetry(method, args, maxRetry, intervalTime);
+            return future.get();
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(cause);
         }
     }
 
-    private Object executeWithRetry(Method method, Object[] args, int maxRetry, int intervalTime) throws InterruptedException {
+    /**
+     * 执行一次调用，失败后通过时间轮延迟发起下一次重试，整个过程不阻塞任何线程
+     * @param attempt       当前是第几次尝试，从0开始
+     * @param failedAddress 上一次调用失败的节点，重试时重新选择并尽量避开它
+     * @param result        最终结果
+     */
+    private void executeWithRetry(Method method, Object[] args, int attempt, int maxRetry, int intervalTime,
+                                  InetSocketAddress failedAddress, CompletableFuture<Object> result) {
+        // 1、封装请求
+        NrpcRequest nrpcRequest = buildRequest(method, args);
 
-        // 4、获取当前地址对应的断路器，如果断路器打开则不发送请求
-        Map<SocketAddress, CircuitBreaker> ipCircuitBreaker = NrpcBootstrap.getInstance()
-                .getConfiguration().getIpCircuitBreaker();
-        CircuitBreaker circuitBreaker = ipCircuitBreaker.get(address);
-        if(circuitBreaker == null) {
-            circuitBreaker = new CircuitBreaker(10, 0.5F);
-            ipCircuitBreaker.put(address, circuitBreaker);
-        }
+        // 2、将请求存入本地线程，负载均衡器（如一致性hash）需要在选择节点时读取请求
+        NrpcBootstrap.REQUEST_THREAD_LOCAL.set(nrpcRequest);
 
-        // 如果断路器是打开的
-        if(circuitBreaker.isBreak()) {
-            // 定期打开
-            Timer timer = new Timer();
-            timer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    NrpcBootstrap.getInstance()
-                            .getConfiguration().getIpCircuitBreaker().get(address).reset();
-                }
-            }, 5000);
+        InetSocketAddress address = null;
+        CircuitBreaker circuitBreaker = null;
+        CircuitBreaker.Permit permit = CircuitBreaker.Permit.REJECTED;
+        LoadBalancer loadBalancer = NrpcBootstrap.getInstance().getConfiguration().getLoadBalancer();
+        boolean sent = false;
+        long startNanos = 0;
+        CompletableFuture<Object> future;
+        try {
+            // 3、每一次调用都通过负载均衡器选择节点
+            address = loadBalancer.selectServiceAddress(interfaceRef.getName(), group, failedAddress);
+            if (log.isDebugEnabled()) {
+                log.debug("服务调用方，发现了服务【{}】的可用主机【{}】.",
+                        interfaceRef.getName(), address);
+            }
 
-            throw new RuntimeException("断路器开启，无法发送请求");
+            // 4、获取当前地址和方法对应的断路器，如果断路器不放行则不发送请求，重试时会选择其他节点
+            CircuitBreaker addressCircuitBreaker = getCircuitBreaker(address, method);
+            permit = addressCircuitBreaker.tryAcquire();
+            if(permit == CircuitBreaker.Permit.REJECTED) {
+                throw new RuntimeException("断路器开启，无法发送请求");
+            }
+            circuitBreaker = addressCircuitBreaker;
+
+            // 5、通知负载均衡器，由它统计节点的真实调用情况
+            loadBalancer.onRequestStart(address);
+            sent = true;
+            startNanos = System.nanoTime();
+            future = executeRequest(nrpcRequest, address);
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        } finally {
+            // 清理ThreadLocal
+            NrpcBootstrap.REQUEST_THREAD_LOCAL.remove();
         }
 
-        int attemps = 0;
-        while (attemps <= maxRetry) {
-            try {
-                return executeRequest(method, args);
-            } catch (Exception e) {
-                if (++ attemps == maxRetry) {
-                    log.error("对方法【{}】进行远程调用，重试{}次，依然不可调用",
-                            method.getName(), maxRetry);
+        InetSocketAddress currentAddress = address;
+        CircuitBreaker currentCircuitBreaker = circuitBreaker;
+        CircuitBreaker.Permit currentPermit = permit;
+        boolean currentSent = sent;
+        long currentStartNanos = startNanos;
+        future.whenComplete((value, throwable) -> {
+            if (currentSent) {
+                loadBalancer.onRequestComplete(currentAddress, System.nanoTime() - currentStartNanos, throwable == null);
+            }
+
+            // 只有断路器放行的请求才记录结果
+            if (throwable == null) {
+                if (currentCircuitBreaker != null) {
+                    currentCircuitBreaker.recordSuccess(currentPermit);
                 }
-                log.error("在进行第{}次重试时发生异常：", attemps, e);
+                result.complete(value);
+                return;
+            }
 
-                // 记录错误的次数
-                circuitBreaker.recordErrorRequest();
-                Thread.sleep(intervalTime);
+            log.error("在进行第{}次调用时发生异常：", attempt + 1, throwable);
+            if (currentCircuitBreaker != null) {
+                currentCircuitBreaker.recordFailure(currentPermit);
             }
-        }
-        throw new RuntimeException("执行远程方法" + method.getName() + "调用失败。");
+
+            if (attempt >= maxRetry) {
+                log.error("对方法【{}】进行远程调用，重试{}次，依然不可调用",
+                        method.getName(), maxRetry);
+                result.completeExceptionally(new RuntimeException("执行远程方法" + method.getName() + "调用失败。", throwable));
+                return;
+            }
+
+            // 延迟一段时间后重试，重新发起调用可能需要建立连接，交给公共线程池执行
+            NrpcBootstrap.PENDING_QUEST.getTimer().newTimeout(timeout -> CompletableFuture.runAsync(() ->
+                    executeWithRetry(method, args, attempt + 1, maxRetry, intervalTime, currentAddress, result)
+            ), intervalTime, TimeUnit.MILLISECONDS);
+        });
     }
 
-    private Object executeRequest(Method method, Object[] args) throws ExecutionException, InterruptedException, TimeoutException {
+    private NrpcRequest buildRequest(Method method, Object[] args) {
         /*
          * ------------------ 封装报文 ---------------------------
          */
@@ -139,91 +204,106 @@ public class RpcConsumerInvocationHandler implements InvocationHandler {
         /*
          * ------------------ 创建请求 ---------------------------
          */
-        NrpcRequest nrpcRequest = NrpcRequest.builder()
+        // 配置的压缩方式同时作为希望响应使用的压缩方式，请求体是否真正压缩由编码时决定
+        byte compressType = CompressorFactory.getCompressor(NrpcBootstrap.getInstance().getConfiguration().getCompressType()).getCode();
+        return NrpcRequest.builder()
                 .requestId(NrpcBootstrap.getInstance().getConfiguration().getIdGenerator().getId())
-                .compressType(CompressorFactory.getCompressor(NrpcBootstrap.getInstance().getConfiguration().getCompressType()).getCode())
+                .compressType(compressType)
+                .acceptCompressType(compressType)
                 .requestType(RequestType.REQUEST.getId())
                 .serializeType(SerializerFactory.getSerializer(NrpcBootstrap.getInstance().getConfiguration().getSerializeType()).getCode())
                 .timeStamp(System.currentTimeMillis())
                 .requestPayload(requestPayload)
                 .build();
+    }
 
-        // 将请求存入本地线程，需要在合适的时候调用remove方法
-        NrpcBootstrap.REQUEST_THREAD_LOCAL.set(nrpcRequest);
-
-        // 尝试获取一个可用通道
-        Channel channel = getAvailableChannel(address);
-        if (log.isDebugEnabled()) {
-            log.debug("获取了和【{}】建立的连接通道，准备发送数据", address);
-        }
-
-        /*
-         * ------------------异步策略-------------------------
-         */
+    private CompletableFuture<Object> executeRequest(NrpcRequest nrpcRequest, InetSocketAddress address) {
+        // 获取一个可用通道，需要新建连接时不阻塞，连接建立后再发送
+        return getAvailableChannel(address).thenCompose(channel -> {
+            if (log.isDebugEnabled()) {
+                log.debug("获取了和【{}】建立的连接通道，准备发送数据", address);
+            }
 
-        // 写出报文
-        CompletableFuture<Object> completableFuture =
-                NrpcUtils.sendRequest(channel, nrpcRequest, NrpcBootstrap.PENDING_QUEST);
+            /*
+             * ------------------异步策略-------------------------
+             */
 
-        // 清理ThreadLocal
-        NrpcBootstrap.REQUEST_THREAD_LOCAL.remove();
+            // 写出报文，超时由时间轮负责
+            return NrpcUtils.sendRequest(channel, nrpcRequest,
+                    NrpcBootstrap.PENDING_QUEST, NrpcBootstrap.getInstance().getConfiguration().getRequestTimeout());
+        });
+    }
 
-        // 获得响应的结果
-        Object result = completableFuture.get(10, TimeUnit.SECONDS);
+    /**
+     * 每个服务地址的每个方法使用独立的断路器，方法上的@CircuitBreak覆盖全局配置
+     * 先按方法再按地址查找，不需要每次拼接key，重载的方法也不会共用一个断路器
+     */
+    private CircuitBreaker getCircuitBreaker(InetSocketAddress address, Method method) {
+        Configuration configuration = NrpcBootstrap.getInstance().getConfiguration();
+        Map<InetSocketAddress, CircuitBreaker> circuitBreakers = configuration.getCircuitBreakers().get(method);
+        if (circuitBreakers == null) {
+            circuitBreakers = configuration.getCircuitBreakers().computeIfAbsent(method, key -> new ConcurrentHashMap<>(8));
+        }
+        CircuitBreaker circuitBreaker = circuitBreakers.get(address);
+        if (circuitBreaker != null) {
+            return circuitBreaker;
+        }
+        return circuitBreakers.computeIfAbsent(address, k -> {
+            CircuitBreak annotation = method.getAnnotation(CircuitBreak.class);
+            long window = configuration.getCircuitBreakerWindow();
+            int minRequests = configuration.getCircuitBreakerMinRequests();
+            float errorRate = configuration.getCircuitBreakerErrorRate();
+            long openTime = configuration.getCircuitBreakerOpenTime();
+            int halfOpenProbes = configuration.getCircuitBreakerHalfOpenProbes();
+            if (annotation != null) {
+                window = annotation.windowMillis() > 0 ? annotation.windowMillis() : window;
+                minRequests = annotation.minRequests() > 0 ? annotation.minRequests() : minRequests;
+                errorRate = annotation.errorRate() > 0 ? annotation.errorRate() : errorRate;
+                openTime = annotation.openMillis() > 0 ? annotation.openMillis() : openTime;
+                halfOpenProbes = annotation.halfOpenProbes() > 0 ? annotation.halfOpenProbes() : halfOpenProbes;
+            }
+            return new CircuitBreaker(window, configuration.getCircuitBreakerBuckets(),
+                    minRequests, errorRate, openTime, halfOpenProbes);
+        });
+    }
 
-        // 记录成功的请求
-        return result;
+    /**
+     * 返回一个在回调线程池中完成的future，结果和异常与原future相同
+     * @param future 在io线程或时间轮线程中完成的future
+     * @return 交给业务方的future
+     */
+    private CompletableFuture<Object> completeOnCallbackExecutor(CompletableFuture<Object> future) {
+        CompletableFuture<Object> callbackFuture = new CompletableFuture<>();
+        future.whenComplete((value, throwable) -> CALLBACK_EXECUTOR.execute(() -> {
+            if (throwable == null) {
+                callbackFuture.complete(value);
+            } else {
+                callbackFuture.completeExceptionally(throwable);
+            }
+        }));
+        return callbackFuture;
     }
 
+    /**
+     * 异步模式下同步签名的方法需要返回一个默认值，基本类型不能返回null
+     * @param returnType 返回值类型
+     * @return 默认值
+     */
+    private Object defaultValue(Class<?> returnType) {
+        if (returnType.isPrimitive() && returnType != void.class) {
+            return Array.get(Array.newInstance(returnType, 1), 0);
+        }
+        return null;
+    }
 
     /**
      * 根据地址获取一个可用的通道
      * @param address 地址
-     * @return Channel 可用通道
+     * @return 可用通道
      * @author xiaonaol
      */
-    private Channel getAvailableChannel(InetSocketAddress address) {
-        // 1、尝试从缓存中获取
-        Channel channel = NrpcBootstrap.CHANNEL_CACHE.get(address);
-
-        // 2、拿不到就去建立连接
-        if (channel == null) {
-            // await 方法会阻塞，会等待连接成功在返回，netty还提供了异步处理的逻辑
-            // sync和await都是阻塞当前线程，获取返回值（连接的过程是异步的，发生数据的过程是异步的）
-            // 如果发生了异常，sync会主动在主线程抛出异常，await不会，异常在子线程中处理需要使用future中处理
-            // 使用addListener执行的异步操作
-            CompletableFuture<Channel> channelFuture = new CompletableFuture<>();
-            NettyBootstrapInitializer.getBootstrap().connect(address).addListener(
-                    (ChannelFutureListener) promise -> {
-                        if (promise.isDone()) {
-                            // 异步的，我们已经完成
-                            if (log.isDebugEnabled()) {
-                                log.debug("已经和【{}】成功建立了连接。", address);
-                            }
-                            channelFuture.complete(promise.channel());
-                        } else if (!promise.isSuccess()) {
-                            channelFuture.completeExceptionally(promise.cause());
-                        }
-                    }
-            );
-
-            // 阻塞获取channel
-            try {
-                channel = channelFuture.get(3, TimeUnit.SECONDS);
-            } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                log.error("获取通道时，发生异常：", e);
-                throw new DiscoveryException(e);
-            }
-
-            // 缓存channel
-            NrpcBootstrap.CHANNEL_CACHE.put(address, channel);
-        }
-
-        if (channel == null) {
-            log.error("获取或建立与【{}】的通道时发生了异常。", address);
-            throw new NetworkException("获取通道时发生了异常。");
-        }
-
-        return channel;
+    private CompletableFuture<Channel> getAvailableChannel(InetSocketAddress address) {
+        // 从地址对应的连接池中选择一个连接，连接池为空时异步建立连接
+        return NrpcChannelPool.getOrCreate(address).acquire();
     }
 }
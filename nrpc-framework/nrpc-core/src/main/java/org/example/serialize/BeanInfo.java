@@ -0,0 +1,274 @@
+package org.example.serialize;
+
+import org.example.exceptions.SerializeException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个类的字段描述，每个类只解析一次，供序列化器按字段读写对象
+ * 1、普通类：包含父类在内所有非static、非transient的字段，通过无参构造创建实例，没有无参构造的类不能反序列化
+ * 2、record：按照组件的顺序读写，通过规范构造器创建实例
+ * @author xiaonaol
+ * @date 2025/1/13
+ **/
+public final class BeanInfo {
+
+    private static final ClassValue<BeanInfo> CACHE = new ClassValue<>() {
+        @Override
+        protected BeanInfo computeValue(Class<?> type) {
+            return new BeanInfo(type);
+        }
+    };
+
+    private final Class<?> type;
+    private final boolean record;
+    private final BeanField[] fields;
+    private final Map<String, BeanField> fieldsByName;
+    private final Constructor<?> constructor;
+
+    private BeanInfo(Class<?> type) {
+        this.type = type;
+        this.record = type.isRecord();
+
+        List<BeanField> fieldList = new ArrayList<>();
+        try {
+            if (record) {
+                RecordComponent[] components = type.getRecordComponents();
+                Class<?>[] componentTypes = new Class<?>[components.length];
+                for (int i = 0; i < components.length; i++) {
+                    componentTypes[i] = components[i].getType();
+                    Field field = type.getDeclaredField(components[i].getName());
+                    field.setAccessible(true);
+                    fieldList.add(new BeanField(field, i));
+                }
+                constructor = type.getDeclaredConstructor(componentTypes);
+                constructor.setAccessible(true);
+            } else {
+                // 父类的字段在前
+                List<Class<?>> hierarchy = new ArrayList<>();
+                for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                    hierarchy.add(0, clazz);
+                }
+                for (Class<?> clazz : hierarchy) {
+                    for (Field field : clazz.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                            continue;
+                        }
+                        field.setAccessible(true);
+                        fieldList.add(new BeanField(field, fieldList.size()));
+                    }
+                }
+                constructor = resolveConstructor(type);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new SerializeException("无法解析类【" + type.getName() + "】的字段", e);
+        }
+
+        this.fields = fieldList.toArray(new BeanField[0]);
+        this.fieldsByName = new HashMap<>(fields.length * 2);
+        for (BeanField field : fields) {
+            // 子类的字段覆盖父类的同名字段
+            fieldsByName.put(field.getName(), field);
+        }
+    }
+
+    public static BeanInfo of(Class<?> type) {
+        return CACHE.get(type);
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public boolean isRecord() {
+        return record;
+    }
+
+    public BeanField[] getFields() {
+        return fields;
+    }
+
+    public BeanField getField(String name) {
+        return fieldsByName.get(name);
+    }
+
+    /**
+     * 创建一个空的实例，字段随后逐个设置，record不能使用
+     */
+    public Object newInstance() {
+        if (constructor == null) {
+            throw new SerializeException("类【" + type.getName() + "】没有无参构造，不能反序列化，请添加无参构造或改为record");
+        }
+        try {
+            return constructor.newInstance();
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new SerializeException("无法创建类【" + type.getName() + "】的实例", e);
+        }
+    }
+
+    /**
+     * 使用规范构造器创建record的实例
+     * @param values 按照组件顺序排列的值
+     */
+    public Object newRecord(Object[] values) {
+        try {
+            return constructor.newInstance(values);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new SerializeException("无法创建record【" + type.getName() + "】的实例", e);
+        }
+    }
+
+    /**
+     * @return 无参构造，没有时返回null，这样的类只能写出不能读取
+     */
+    private static Constructor<?> resolveConstructor(Class<?> type) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 一个字段，基本类型的字段提供不装箱的读写方法
+     */
+    public static final class BeanField {
+        private final Field field;
+        private final String name;
+        private final Class<?> type;
+        private final int index;
+
+        private BeanField(Field field, int index) {
+            this.field = field;
+            this.name = field.getName();
+            this.type = field.getType();
+            this.index = index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        /**
+         * @return 字段在类中的顺序，record中就是组件的顺序
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public Object get(Object target) {
+            try {
+                return field.get(target);
+            } catch (IllegalAccessException e) {
+                throw new SerializeException(e);
+            }
+        }
+
+        public void set(Object target, Object value) {
+            try {
+                field.set(target, value);
+            } catch (IllegalAccessException e) {
+                throw new SerializeException(e);
+            }
+        }
+
+        public int getInt(Object target) {
+            try {
+                return field.getInt(target);
+            } catch (IllegalAccessException e) {
+                throw new SerializeException(e);
+            }
+        }
+
+        public long getLong(Object target) {
+            try {
+                return field.getLong(target);
+            } catch (IllegalAccessException e) {
+                throw new SerializeException(e);
+            }
+        }
+
+        public double getDouble(Object target) {
+            try {
+                return field.getDouble(target);
+            } catch (IllegalAccessException e) {
+                throw new SerializeException(e);
+            }
+        }
+
+        public float getFloat(Object target) {
+            try {
+                return field.getFloat(target);
+            } catch (IllegalAccessException e) {
+                throw new SerializeException(e);
+            }
+        }
+
+        public boolean getBoolean(Object target) {
+            try {
+                return field.getBoolean(target);
+            } catch (IllegalAccessException e) {
+                throw new SerializeException(e);
+            }
+        }
+
+        public void setInt(Object target, int value) {
+            try {
+                field.setInt(target, value);
+            } catch (IllegalAccessException e) {
+                throw new SerializeException(e);
+            }
+        }
+
+        public void setLong(Object target, long value) {
+            try {
+                field.setLong(target, value);
+            } catch (IllegalAccessException e) {
+                throw new SerializeException(e);
+            }
+        }
+
+        public void setDouble(Object target, double value) {
+            try {
+                field.setDouble(target, value);
+            } catch (IllegalAccessException e) {
+                throw new SerializeException(e);
+            }
+        }
+
+        public void setFloat(Object target, float value) {
+            try {
+                field.setFloat(target, value);
+            } catch (IllegalAccessException e) {
+                throw new SerializeException(e);
+            }
+        }
+
+        public void setBoolean(Object target, boolean value) {
+            try {
+                field.setBoolean(target, value);
+            } catch (IllegalAccessException e) {
+                throw new SerializeException(e);
+            }
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package org.example.serialize;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * 序列化器
  * @author xiaonaol
@@ -21,4 +25,29 @@ public interface Serializer {
      * @param <T> 目标泛型
      */
     <T> T deserialize(byte[] bytes, Class<T> clazz);
+
+    /**
+     * 将对象直接序列化到输出流中，编码器会传入一个写往ByteBuf的输出流，避免中间的字节数组
+     * 默认实现适配只实现了字节数组版本的序列化器
+     * @param object       待序列化的对象
+     * @param outputStream 目标输出流
+     */
+    default void serialize(Object object, OutputStream outputStream) throws IOException {
+        byte[] bytes = serialize(object);
+        if(bytes != null) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * 直接从输入流中反序列化，解码器会传入一个读取ByteBuf的输入流，避免中间的字节数组
+     * 默认实现适配只实现了字节数组版本的序列化器
+     * @param inputStream 源输入流
+     * @param clazz       目标类的class对象
+     * @return 目标实例
+     * @param <T> 目标泛型
+     */
+    default <T> T deserialize(InputStream inputStream, Class<T> clazz) throws IOException {
+        return deserialize(inputStream.readAllBytes(), clazz);
+    }
 }
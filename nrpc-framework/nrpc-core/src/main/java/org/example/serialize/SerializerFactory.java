@@ -2,6 +2,7 @@ package org.example.serialize;
 
 import lombok.extern.slf4j.Slf4j;
 import org.example.config.ObjectWrapper;
+import org.example.serialize.impl.BinarySerializer;
 import org.example.serialize.impl.HessianSerializer;
 import org.example.serialize.impl.JdkSerializer;
 import org.example.serialize.impl.JsonSerializer;
@@ -20,14 +21,17 @@ public class SerializerFactory {
         ObjectWrapper<Serializer> jdk = new ObjectWrapper<>((byte) 1, "jdk", new JdkSerializer());
         ObjectWrapper<Serializer> json = new ObjectWrapper<>((byte) 2, "json", new JsonSerializer());
         ObjectWrapper<Serializer> hessian = new ObjectWrapper<>((byte) 3, "hessian", new HessianSerializer());
+        ObjectWrapper<Serializer> binary = new ObjectWrapper<>((byte) 4, "binary", new BinarySerializer());
 
         SERIALIZER_CACHE.put("jdk", jdk);
         SERIALIZER_CACHE.put("json", json);
         SERIALIZER_CACHE.put("hessian", hessian);
+        SERIALIZER_CACHE.put("binary", binary);
 
         SERIALIZER_CACHE_CODE.put((byte) 1, jdk);
         SERIALIZER_CACHE_CODE.put((byte) 2, json);
         SERIALIZER_CACHE_CODE.put((byte) 3, hessian);
+        SERIALIZER_CACHE_CODE.put((byte) 4, binary);
     }
 
     /**
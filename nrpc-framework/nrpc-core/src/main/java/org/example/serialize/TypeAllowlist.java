@@ -0,0 +1,172 @@
+package org.example.serialize;
+
+import org.example.NrpcBootstrap;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 反序列化时允许按名称创建的类型，对端传来的类名只有在这里登记过才会被加载和实例化，
+ * 防止通过类型标记构造任意类的实例（fastjson autoType类的问题）
+ * 1、jdk的基础类型、数组、java.util下的集合和map、日期等，jdk中的其他类本来就不能按照bean读写
+ * 2、发布和引用的服务接口中声明的参数、返回值类型，以及这些类型的字段类型（递归）
+ * 3、和声明的类型在同一个包中的子类，用于多态的参数
+ * 不在以上范围内的类名不会被加载
+ * 4、配置的serializeAllowlist中的包名或类名前缀
+ * @author xiaonaol
+ * @date 2025/1/20
+ **/
+public final class TypeAllowlist {
+
+    // 框架自身会序列化的类型
+    private static final String FRAMEWORK_PACKAGE = "org.example.transport.message.";
+
+    private static final Set<String> DECLARED_NAMES = ConcurrentHashMap.newKeySet();
+    private static final Set<Class<?>> DECLARED_TYPES = ConcurrentHashMap.newKeySet();
+    private static final Set<String> DECLARED_PACKAGES = ConcurrentHashMap.newKeySet();
+
+    private TypeAllowlist() {
+    }
+
+    /**
+     * 登记服务接口中声明的所有类型，发布和引用服务时调用
+     * @param interfaceClass 服务接口
+     */
+    public static void register(Class<?> interfaceClass) {
+        for (Method method : interfaceClass.getMethods()) {
+            for (Type type : method.getGenericParameterTypes()) {
+                registerType(type);
+            }
+            registerType(method.getGenericReturnType());
+        }
+    }
+
+    /**
+     * 加载类之前按名称预先判断，返回false时这个类一定不允许，不需要加载
+     * 返回true时还需要加载后用 {@link #isAllowed(Class)} 判断
+     */
+    static boolean mayBeAllowed(String name) {
+        // 数组的名称形如[Lcom.xx.User;
+        int start = 0;
+        while (start < name.length() && name.charAt(start) == '[') {
+            start++;
+        }
+        if (start > 0) {
+            if (name.charAt(start) != 'L') {
+                return true;
+            }
+            name = name.substring(start + 1, name.length() - 1);
+        }
+        return isJdk(name) || name.startsWith(FRAMEWORK_PACKAGE) || DECLARED_NAMES.contains(name)
+                || matchesConfigured(name) || DECLARED_PACKAGES.contains(packageName(name));
+    }
+
+    /**
+     * @param type 对端传来的类型
+     * @return 是否允许创建这个类型的实例
+     */
+    static boolean isAllowed(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        String name = type.getName();
+        if (type.isPrimitive()) {
+            return true;
+        }
+        if (isJdk(name)) {
+            TypeSupport.Kind kind;
+            try {
+                kind = TypeSupport.kind(type);
+            } catch (RuntimeException e) {
+                return false;
+            }
+            // 集合、map和日期会通过构造器实例化，只允许java.util和java.sql中的实现
+            return switch (kind) {
+                case COLLECTION, MAP, DATE -> name.startsWith("java.util.") || name.startsWith("java.sql.");
+                case BEAN -> false;
+                default -> true;
+            };
+        }
+        if (name.startsWith(FRAMEWORK_PACKAGE) || DECLARED_NAMES.contains(name) || matchesConfigured(name)) {
+            return true;
+        }
+        if (!DECLARED_PACKAGES.contains(type.getPackageName())) {
+            return false;
+        }
+        for (Class<?> declared : DECLARED_TYPES) {
+            if (declared.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void registerType(Type type) {
+        if (type instanceof Class<?> clazz) {
+            registerClass(clazz);
+        } else if (type instanceof ParameterizedType parameterizedType) {
+            registerType(parameterizedType.getRawType());
+            for (Type argument : parameterizedType.getActualTypeArguments()) {
+                registerType(argument);
+            }
+        } else if (type instanceof GenericArrayType genericArrayType) {
+            registerType(genericArrayType.getGenericComponentType());
+        } else if (type instanceof WildcardType wildcardType) {
+            for (Type bound : wildcardType.getUpperBounds()) {
+                registerType(bound);
+            }
+            for (Type bound : wildcardType.getLowerBounds()) {
+                registerType(bound);
+            }
+        } else if (type instanceof TypeVariable<?> typeVariable) {
+            for (Type bound : typeVariable.getBounds()) {
+                registerType(bound);
+            }
+        }
+    }
+
+    private static void registerClass(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive() || isJdk(type.getName()) || !DECLARED_NAMES.add(type.getName())) {
+            return;
+        }
+        DECLARED_TYPES.add(type);
+        DECLARED_PACKAGES.add(type.getPackageName());
+        // bean的字段类型也会出现在报文中
+        for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                    registerType(field.getGenericType());
+                }
+            }
+        }
+    }
+
+    private static boolean matchesConfigured(String name) {
+        for (String prefix : NrpcBootstrap.getInstance().getConfiguration().getSerializeAllowlist()) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String packageName(String name) {
+        int index = name.lastIndexOf('.');
+        return index < 0 ? "" : name.substring(0, index);
+    }
+
+    private static boolean isJdk(String name) {
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.") || name.startsWith("sun.");
+    }
+}
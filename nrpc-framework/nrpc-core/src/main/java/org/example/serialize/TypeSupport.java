@@ -0,0 +1,293 @@
+package org.example.serialize;
+
+import org.example.exceptions.SerializeException;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 序列化器共用的类型支持：类型分类、集合的默认实现、按名称加载类
+ * @author xiaonaol
+ * @date 2025/1/14
+ **/
+public final class TypeSupport {
+
+    /**
+     * 值的种类，序列化器按照种类选择读写方式
+     */
+    public enum Kind {
+        STRING, BOOLEAN, BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, CHAR, BIG_DECIMAL, BIG_INTEGER,
+        CLASS, ENUM, DATE, TEXT, BYTES, CHARS, ARRAY, COLLECTION, MAP, BEAN, OBJECT
+    }
+
+    private static final Map<String, Class<?>> CLASS_CACHE = new ConcurrentHashMap<>(64);
+    // 以字符串形式读写的jdk类型
+    private static final Map<Class<?>, Function<String, Object>> TEXT_TYPES = new HashMap<>(16);
+
+    static {
+        for (Class<?> clazz : new Class<?>[]{boolean.class, byte.class, char.class, short.class,
+                int.class, long.class, float.class, double.class, void.class}) {
+            CLASS_CACHE.put(clazz.getName(), clazz);
+        }
+        TEXT_TYPES.put(LocalDate.class, LocalDate::parse);
+        TEXT_TYPES.put(LocalDateTime.class, LocalDateTime::parse);
+        TEXT_TYPES.put(LocalTime.class, LocalTime::parse);
+        TEXT_TYPES.put(Instant.class, Instant::parse);
+        TEXT_TYPES.put(OffsetDateTime.class, OffsetDateTime::parse);
+        TEXT_TYPES.put(ZonedDateTime.class, ZonedDateTime::parse);
+        TEXT_TYPES.put(Duration.class, Duration::parse);
+        TEXT_TYPES.put(UUID.class, UUID::fromString);
+    }
+
+    private static final ClassValue<Kind> KINDS = new ClassValue<>() {
+        @Override
+        protected Kind computeValue(Class<?> type) {
+            return classify(type);
+        }
+    };
+
+    // 集合和map写出时使用的类型，不可实例化的实现（List.of、Collections.unmodifiableXxx等）替换为默认实现
+    private static final ClassValue<Class<?>> WRITE_TYPES = new ClassValue<>() {
+        @Override
+        protected Class<?> computeValue(Class<?> type) {
+            try {
+                if (Modifier.isPublic(type.getModifiers())
+                        && Modifier.isPublic(type.getConstructor().getModifiers())) {
+                    return type;
+                }
+            } catch (NoSuchMethodException e) {
+                // 没有公开的无参构造，使用默认实现
+            }
+            if (Map.class.isAssignableFrom(type)) {
+                return SortedMap.class.isAssignableFrom(type) ? TreeMap.class : LinkedHashMap.class;
+            }
+            if (Set.class.isAssignableFrom(type)) {
+                return SortedSet.class.isAssignableFrom(type) ? TreeSet.class : LinkedHashSet.class;
+            }
+            return ArrayList.class;
+        }
+    };
+
+    private TypeSupport() {
+    }
+
+    public static Kind kind(Class<?> type) {
+        return KINDS.get(type);
+    }
+
+    /**
+     * 集合和map写出时记录的类型，保证读取时可以实例化
+     */
+    public static Class<?> writeType(Class<?> type) {
+        return WRITE_TYPES.get(type);
+    }
+
+    /**
+     * 接口或者抽象的集合类型，读取时使用的实现
+     */
+    public static Class<?> defaultImplementation(Class<?> type) {
+        if (!type.isInterface() && !Modifier.isAbstract(type.getModifiers())) {
+            return type;
+        }
+        if (SortedMap.class.isAssignableFrom(type)) {
+            return TreeMap.class;
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return HashMap.class;
+        }
+        if (SortedSet.class.isAssignableFrom(type)) {
+            return TreeSet.class;
+        }
+        if (Set.class.isAssignableFrom(type)) {
+            return HashSet.class;
+        }
+        if (Queue.class.isAssignableFrom(type) && !List.class.isAssignableFrom(type)) {
+            return ArrayDeque.class;
+        }
+        if (type.isAssignableFrom(ArrayList.class)) {
+            return ArrayList.class;
+        }
+        return type;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Collection<Object> newCollection(Class<?> type) {
+        Class<?> implementation = defaultImplementation(type);
+        try {
+            return (Collection<Object>) implementation.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new SerializeException("无法创建集合【" + type.getName() + "】", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Map<Object, Object> newMap(Class<?> type) {
+        if (type == Object.class) {
+            return new LinkedHashMap<>();
+        }
+        Class<?> implementation = defaultImplementation(type);
+        try {
+            return (Map<Object, Object>) implementation.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new SerializeException("无法创建map【" + type.getName() + "】", e);
+        }
+    }
+
+    /**
+     * 解析以字符串形式写出的jdk类型（LocalDate、UUID等）
+     */
+    public static Object parseText(Class<?> type, String text) {
+        return TEXT_TYPES.get(type).apply(text);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Object enumValue(Class<?> type, String name) {
+        return Enum.valueOf((Class<? extends Enum>) type, name);
+    }
+
+    /**
+     * 基本类型的默认值
+     */
+    public static Object defaultValue(Class<?> type) {
+        return type.isPrimitive() ? Array.get(Array.newInstance(type, 1), 0) : null;
+    }
+
+    /**
+     * 按照对端传来的类名加载类，只允许 {@link TypeAllowlist} 中的类型
+     */
+    public static Class<?> resolveClass(String name) {
+        Class<?> clazz = CLASS_CACHE.get(name);
+        if (clazz != null) {
+            return clazz;
+        }
+        if (!TypeAllowlist.mayBeAllowed(name)) {
+            throw new SerializeException("类【" + name + "】不允许反序列化，需要在服务接口中声明或加入serializeAllowlist");
+        }
+        try {
+            clazz = Class.forName(name, false, Thread.currentThread().getContextClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new SerializeException("找不到类【" + name + "】", e);
+        }
+        if (!TypeAllowlist.isAllowed(clazz)) {
+            throw new SerializeException("类【" + name + "】不允许反序列化，需要在服务接口中声明或加入serializeAllowlist");
+        }
+        // 只缓存允许的类，之后登记的服务可能会放行之前拒绝的类
+        CLASS_CACHE.put(name, clazz);
+        return clazz;
+    }
+
+    public static Class<?> box(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == int.class) {
+            return Integer.class;
+        }
+        if (type == long.class) {
+            return Long.class;
+        }
+        if (type == double.class) {
+            return Double.class;
+        }
+        if (type == float.class) {
+            return Float.class;
+        }
+        if (type == boolean.class) {
+            return Boolean.class;
+        }
+        if (type == short.class) {
+            return Short.class;
+        }
+        if (type == byte.class) {
+            return Byte.class;
+        }
+        if (type == char.class) {
+            return Character.class;
+        }
+        return Void.class;
+    }
+
+    private static Kind classify(Class<?> type) {
+        if (type == String.class) {
+            return Kind.STRING;
+        }
+        if (type == Boolean.class || type == boolean.class) {
+            return Kind.BOOLEAN;
+        }
+        if (type == Integer.class || type == int.class) {
+            return Kind.INT;
+        }
+        if (type == Long.class || type == long.class) {
+            return Kind.LONG;
+        }
+        if (type == Double.class || type == double.class) {
+            return Kind.DOUBLE;
+        }
+        if (type == Float.class || type == float.class) {
+            return Kind.FLOAT;
+        }
+        if (type == Short.class || type == short.class) {
+            return Kind.SHORT;
+        }
+        if (type == Byte.class || type == byte.class) {
+            return Kind.BYTE;
+        }
+        if (type == Character.class || type == char.class) {
+            return Kind.CHAR;
+        }
+        if (type == BigDecimal.class) {
+            return Kind.BIG_DECIMAL;
+        }
+        if (type == BigInteger.class) {
+            return Kind.BIG_INTEGER;
+        }
+        if (type == Class.class) {
+            return Kind.CLASS;
+        }
+        if (type.isEnum()) {
+            return Kind.ENUM;
+        }
+        if (Date.class.isAssignableFrom(type)) {
+            return Kind.DATE;
+        }
+        if (TEXT_TYPES.containsKey(type)) {
+            return Kind.TEXT;
+        }
+        if (type == byte[].class) {
+            return Kind.BYTES;
+        }
+        if (type == char[].class) {
+            return Kind.CHARS;
+        }
+        if (type.isArray()) {
+            return Kind.ARRAY;
+        }
+        if (Collection.class.isAssignableFrom(type)) {
+            return Kind.COLLECTION;
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return Kind.MAP;
+        }
+        if (type == Object.class || type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            return Kind.OBJECT;
+        }
+        String name = type.getName();
+        if (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.") || name.startsWith("sun.")) {
+            // jdk内部的类不能通过反射访问字段
+            throw new SerializeException("不支持序列化类型【" + name + "】");
+        }
+        return Kind.BEAN;
+    }
+}
@@ -0,0 +1,471 @@
+package org.example.serialize.binary;
+
+import org.example.exceptions.SerializeException;
+import org.example.serialize.BeanInfo;
+import org.example.serialize.TypeSupport;
+import org.example.transport.message.RequestPayload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * 紧凑的二进制编解码
+ * 1、每个值以一个字节的标记开头，整数使用zigzag + varint
+ * 2、对象按照字段的声明顺序写出，不写字段名，字段的读写器按类缓存在 {@link FieldCodec} 中，基本类型的字段不装箱
+ * 3、类在一条消息里第一次出现时写出类名（对象还会带上字段结构的指纹），之后只写一个小整数；
+ *    常用的类预先编好号，不需要写出类名
+ * @author xiaonaol
+ * @date 2025/1/14
+ **/
+public final class BinaryCodec {
+
+    static final int NULL = 0;
+    static final int TRUE = 1;
+    static final int FALSE = 2;
+    static final int INT = 3;
+    static final int LONG = 4;
+    static final int DOUBLE = 5;
+    static final int FLOAT = 6;
+    static final int SHORT = 7;
+    static final int BYTE = 8;
+    static final int CHAR = 9;
+    static final int STRING = 10;
+    static final int BYTES = 11;
+    static final int CLASS = 12;
+    static final int ENUM = 13;
+    static final int BIG_DECIMAL = 14;
+    static final int BIG_INTEGER = 15;
+    static final int DATE = 16;
+    static final int TEXT = 17;
+    static final int ARRAY = 18;
+    static final int COLLECTION = 19;
+    static final int MAP = 20;
+    static final int OBJECT = 21;
+
+    // 预先编号的类，两端一致，只能在末尾追加
+    private static final Class<?>[] WELL_KNOWN_CLASSES = {
+            Object.class, String.class, Object[].class, Class.class, Class[].class,
+            boolean.class, byte.class, short.class, char.class, int.class, long.class, float.class, double.class,
+            Boolean.class, Byte.class, Short.class, Character.class, Integer.class, Long.class, Float.class, Double.class,
+            ArrayList.class, LinkedList.class, HashSet.class, LinkedHashSet.class, TreeSet.class, ArrayDeque.class,
+            HashMap.class, LinkedHashMap.class, TreeMap.class, Date.class, BigDecimal.class, BigInteger.class,
+            RequestPayload.class
+    };
+    private static final Map<Class<?>, Integer> WELL_KNOWN_IDS = new IdentityHashMap<>(64);
+
+    static {
+        for (int i = 0; i < WELL_KNOWN_CLASSES.length; i++) {
+            WELL_KNOWN_IDS.put(WELL_KNOWN_CLASSES[i], i);
+        }
+    }
+
+    // 字段结构的指纹，类名相同但字段不一致时尽早失败
+    private static final ClassValue<Integer> FINGERPRINTS = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            int hash = 1;
+            for (BeanInfo.BeanField field : BeanInfo.of(type).getFields()) {
+                hash = 31 * hash + field.getName().hashCode();
+                hash = 31 * hash + field.getType().getName().hashCode();
+            }
+            return hash;
+        }
+    };
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final ThreadLocal<BinaryCodec> CODECS = ThreadLocal.withInitial(BinaryCodec::new);
+
+    private final BinaryOutput out = new BinaryOutput(BUFFER_SIZE);
+    private final BinaryInput in = new BinaryInput(BUFFER_SIZE);
+    // 当前消息里出现过的类
+    private final Map<Class<?>, Integer> writtenIds = new IdentityHashMap<>(16);
+    private final List<Class<?>> readClasses = new ArrayList<>(16);
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * 将对象以二进制写入输出流
+     * @param object       对象
+     * @param outputStream 输出流
+     */
+    public static void write(Object object, OutputStream outputStream) throws IOException {
+        BinaryCodec codec = CODECS.get();
+        codec.out.reset(outputStream);
+        codec.writtenIds.clear();
+        codec.writeValue(object);
+        codec.out.flush();
+    }
+
+    /**
+     * 从输入流中读取一个值
+     * @param inputStream 输入流
+     * @param clazz       期望的类型
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T read(InputStream inputStream, Class<T> clazz) throws IOException {
+        BinaryCodec codec = CODECS.get();
+        codec.in.reset(inputStream);
+        codec.readClasses.clear();
+        if (!codec.in.hasMore()) {
+            return null;
+        }
+        Object value = codec.readValue();
+        if (value != null && !TypeSupport.box(clazz).isInstance(value)) {
+            throw new SerializeException("类型【" + value.getClass().getName() + "】与期望的类型【"
+                    + clazz.getName() + "】不匹配");
+        }
+        return (T) value;
+    }
+
+    BinaryOutput output() {
+        return out;
+    }
+
+    BinaryInput input() {
+        return in;
+    }
+
+    /*
+     * ----------------------------------- 写 -----------------------------------
+     */
+
+    void writeValue(Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+            return;
+        }
+
+        Class<?> type = value instanceof Enum<?> e ? e.getDeclaringClass() : value.getClass();
+        switch (TypeSupport.kind(type)) {
+            case STRING -> {
+                out.writeByte(STRING);
+                out.writeString((String) value);
+            }
+            case BOOLEAN -> out.writeByte((Boolean) value ? TRUE : FALSE);
+            case INT -> {
+                out.writeByte(INT);
+                out.writeSignedInt((Integer) value);
+            }
+            case LONG -> {
+                out.writeByte(LONG);
+                out.writeSignedLong((Long) value);
+            }
+            case DOUBLE -> {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            }
+            case FLOAT -> {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float) value);
+            }
+            case SHORT -> {
+                out.writeByte(SHORT);
+                out.writeSignedInt((Short) value);
+            }
+            case BYTE -> {
+                out.writeByte(BYTE);
+                out.writeByte((Byte) value);
+            }
+            case CHAR -> {
+                out.writeByte(CHAR);
+                out.writeVarInt((Character) value);
+            }
+            case BIG_DECIMAL -> {
+                out.writeByte(BIG_DECIMAL);
+                out.writeString(value.toString());
+            }
+            case BIG_INTEGER -> {
+                out.writeByte(BIG_INTEGER);
+                out.writeBytes(((BigInteger) value).toByteArray());
+            }
+            case CLASS -> {
+                out.writeByte(CLASS);
+                writeClass((Class<?>) value);
+            }
+            case ENUM -> {
+                out.writeByte(ENUM);
+                writeClass(type);
+                out.writeString(((Enum<?>) value).name());
+            }
+            case DATE -> {
+                out.writeByte(DATE);
+                writeClass(type);
+                out.writeSignedLong(((Date) value).getTime());
+            }
+            case TEXT -> {
+                out.writeByte(TEXT);
+                writeClass(type);
+                out.writeString(value.toString());
+            }
+            case BYTES -> {
+                out.writeByte(BYTES);
+                out.writeBytes((byte[]) value);
+            }
+            case CHARS, ARRAY -> {
+                out.writeByte(ARRAY);
+                writeClass(type.getComponentType());
+                writeArray(value, type.getComponentType());
+            }
+            case COLLECTION -> {
+                Collection<?> collection = (Collection<?>) value;
+                out.writeByte(COLLECTION);
+                writeClass(TypeSupport.writeType(type));
+                out.writeVarInt(collection.size());
+                for (Object element : collection) {
+                    writeValue(element);
+                }
+            }
+            case MAP -> {
+                Map<?, ?> map = (Map<?, ?>) value;
+                out.writeByte(MAP);
+                writeClass(TypeSupport.writeType(type));
+                out.writeVarInt(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeValue(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            }
+            case BEAN -> {
+                out.writeByte(OBJECT);
+                writeClass(type, true);
+                for (FieldCodec field : FieldCodec.of(type)) {
+                    field.write(this, value);
+                }
+            }
+            default -> throw new SerializeException("二进制序列化不支持类型【" + type.getName() + "】");
+        }
+    }
+
+    private void writeArray(Object array, Class<?> componentType) throws IOException {
+        int length = Array.getLength(array);
+        out.writeVarInt(length);
+        if (componentType == int.class) {
+            for (int value : (int[]) array) {
+                out.writeSignedInt(value);
+            }
+        } else if (componentType == long.class) {
+            for (long value : (long[]) array) {
+                out.writeSignedLong(value);
+            }
+        } else if (componentType == double.class) {
+            for (double value : (double[]) array) {
+                out.writeDouble(value);
+            }
+        } else if (componentType == float.class) {
+            for (float value : (float[]) array) {
+                out.writeFloat(value);
+            }
+        } else if (componentType == boolean.class) {
+            for (boolean value : (boolean[]) array) {
+                out.writeByte(value ? 1 : 0);
+            }
+        } else if (componentType == short.class) {
+            for (short value : (short[]) array) {
+                out.writeSignedInt(value);
+            }
+        } else if (componentType == char.class) {
+            for (char value : (char[]) array) {
+                out.writeVarInt(value);
+            }
+        } else {
+            for (Object value : (Object[]) array) {
+                writeValue(value);
+            }
+        }
+    }
+
+    /**
+     * 类的引用：偶数为已知类的编号，奇数表示紧跟着类名的新类
+     */
+    private void writeClass(Class<?> type) throws IOException {
+        writeClass(type, false);
+    }
+
+    private void writeClass(Class<?> type, boolean bean) throws IOException {
+        Integer id = WELL_KNOWN_IDS.get(type);
+        if (id == null) {
+            id = writtenIds.get(type);
+        }
+        if (id != null) {
+            out.writeVarInt(id << 1);
+            return;
+        }
+        writtenIds.put(type, WELL_KNOWN_CLASSES.length + writtenIds.size());
+        out.writeVarInt(1);
+        out.writeString(type.getName());
+        if (bean) {
+            out.writeInt(FINGERPRINTS.get(type));
+        }
+    }
+
+    /*
+     * ----------------------------------- 读 -----------------------------------
+     */
+
+    Object readValue() throws IOException {
+        int tag = in.readByte();
+        return switch (tag) {
+            case NULL -> null;
+            case TRUE -> Boolean.TRUE;
+            case FALSE -> Boolean.FALSE;
+            case INT -> in.readSignedInt();
+            case LONG -> in.readSignedLong();
+            case DOUBLE -> in.readDouble();
+            case FLOAT -> in.readFloat();
+            case SHORT -> (short) in.readSignedInt();
+            case BYTE -> (byte) in.readByte();
+            case CHAR -> (char) in.readVarInt();
+            case STRING -> in.readString();
+            case BYTES -> in.readBytes();
+            case CLASS -> readClass();
+            case ENUM -> TypeSupport.enumValue(readClass(), in.readString());
+            case BIG_DECIMAL -> new BigDecimal(in.readString());
+            case BIG_INTEGER -> new BigInteger(in.readBytes());
+            case DATE -> readDate(readClass(), in.readSignedLong());
+            case TEXT -> TypeSupport.parseText(readClass(), in.readString());
+            case ARRAY -> readArray(readClass());
+            case COLLECTION -> {
+                Collection<Object> collection = TypeSupport.newCollection(readClass());
+                for (int size = in.readLength(); size > 0; size--) {
+                    collection.add(readValue());
+                }
+                yield collection;
+            }
+            case MAP -> {
+                Map<Object, Object> map = TypeSupport.newMap(readClass());
+                for (int size = in.readLength(); size > 0; size--) {
+                    map.put(readValue(), readValue());
+                }
+                yield map;
+            }
+            case OBJECT -> readBean(readClass(true));
+            default -> throw new SerializeException("未知的二进制类型标记【" + tag + "】");
+        };
+    }
+
+    private Object readBean(Class<?> type) throws IOException {
+        BeanInfo beanInfo = BeanInfo.of(type);
+        FieldCodec[] fields = FieldCodec.of(type);
+        if (beanInfo.isRecord()) {
+            Object[] values = new Object[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                values[i] = fields[i].readValue(this);
+            }
+            return beanInfo.newRecord(values);
+        }
+        Object bean = beanInfo.newInstance();
+        for (FieldCodec field : fields) {
+            field.read(this, bean);
+        }
+        return bean;
+    }
+
+    private Object readArray(Class<?> componentType) throws IOException {
+        int length = in.readLength();
+        if (componentType == int.class) {
+            int[] values = new int[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = in.readSignedInt();
+            }
+            return values;
+        }
+        if (componentType == long.class) {
+            long[] values = new long[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = in.readSignedLong();
+            }
+            return values;
+        }
+        if (componentType == double.class) {
+            double[] values = new double[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = in.readDouble();
+            }
+            return values;
+        }
+        if (componentType == float.class) {
+            float[] values = new float[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = in.readFloat();
+            }
+            return values;
+        }
+        if (componentType == boolean.class) {
+            boolean[] values = new boolean[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = in.readByte() != 0;
+            }
+            return values;
+        }
+        if (componentType == short.class) {
+            short[] values = new short[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = (short) in.readSignedInt();
+            }
+            return values;
+        }
+        if (componentType == char.class) {
+            char[] values = new char[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = (char) in.readVarInt();
+            }
+            return values;
+        }
+        Object[] values = (Object[]) Array.newInstance(componentType, length);
+        for (int i = 0; i < length; i++) {
+            Object value = readValue();
+            if (value != null && !componentType.isInstance(value)) {
+                throw new SerializeException("数组元素【" + value.getClass().getName() + "】与数组类型【"
+                        + componentType.getName() + "】不匹配");
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    private static Date readDate(Class<?> type, long time) {
+        if (type == Date.class) {
+            return new Date(time);
+        }
+        try {
+            return (Date) type.getConstructor(long.class).newInstance(time);
+        } catch (ReflectiveOperationException e) {
+            throw new SerializeException("无法创建日期类型【" + type.getName() + "】", e);
+        }
+    }
+
+    private Class<?> readClass() throws IOException {
+        return readClass(false);
+    }
+
+    private Class<?> readClass(boolean bean) throws IOException {
+        int ref = in.readVarInt();
+        if ((ref & 1) == 0) {
+            int id = ref >>> 1;
+            if (id < WELL_KNOWN_CLASSES.length) {
+                return WELL_KNOWN_CLASSES[id];
+            }
+            id -= WELL_KNOWN_CLASSES.length;
+            if (id >= readClasses.size()) {
+                throw new SerializeException("未知的类编号【" + (ref >>> 1) + "】");
+            }
+            return readClasses.get(id);
+        }
+
+        Class<?> type = TypeSupport.resolveClass(in.readString());
+        if (bean) {
+            int fingerprint = in.readInt();
+            if (fingerprint != FINGERPRINTS.get(type)) {
+                throw new SerializeException("类【" + type.getName() + "】的字段与对端不一致");
+            }
+        }
+        readClasses.add(type);
+        return type;
+    }
+}
@@ -0,0 +1,180 @@
+package org.example.serialize.binary;
+
+import io.netty.buffer.ByteBufInputStream;
+import org.example.exceptions.SerializeException;
+import org.example.transport.message.MessageFormatConstant;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 二进制读取器，缓冲区在同一线程内复用
+ * @author xiaonaol
+ * @date 2025/1/14
+ **/
+final class BinaryInput {
+
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private InputStream inputStream;
+    // 输入流的available()是否是准确的剩余长度，解码器传入的帧和解压结果都是
+    private boolean sized;
+    private char[] chars = new char[64];
+
+    BinaryInput(int bufferSize) {
+        this.buffer = new byte[bufferSize];
+    }
+
+    void reset(InputStream inputStream) {
+        this.inputStream = inputStream;
+        this.sized = inputStream instanceof ByteArrayInputStream || inputStream instanceof ByteBufInputStream;
+        this.position = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * @return 是否还有数据
+     */
+    boolean hasMore() throws IOException {
+        return fill();
+    }
+
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        int read = inputStream.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    int readByte() throws IOException {
+        if (!fill()) {
+            throw new SerializeException("二进制数据意外结束");
+        }
+        return buffer[position++];
+    }
+
+    int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new SerializeException("varint格式错误");
+    }
+
+    /**
+     * 读取字符串、数组、集合的长度，按照长度分配内存之前先校验
+     * 每个元素至少占一个字节，长度不会超过剩余的数据量
+     */
+    int readLength() throws IOException {
+        int length = readVarInt();
+        if (length < 0 || length > MessageFormatConstant.MAX_BODY_LENGTH
+                || sized && length > limit - position + inputStream.available()) {
+            throw new SerializeException("二进制数据的长度字段错误【" + length + "】");
+        }
+        return length;
+    }
+
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new SerializeException("varint格式错误");
+    }
+
+    int readSignedInt() throws IOException {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    long readSignedLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    long readLong() throws IOException {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (readByte() & 0xFF);
+        }
+        return value;
+    }
+
+    int readInt() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (readByte() & 0xFF);
+        }
+        return value;
+    }
+
+    double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    byte[] readBytes() throws IOException {
+        int length = readLength();
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            if (!fill()) {
+                throw new SerializeException("二进制数据意外结束");
+            }
+            int count = Math.min(length - offset, limit - position);
+            System.arraycopy(buffer, position, bytes, offset, count);
+            position += count;
+            offset += count;
+        }
+        return bytes;
+    }
+
+    String readString() throws IOException {
+        int length = readLength();
+        // utf-8的字节数不会少于字符数
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length << 1)];
+        }
+        int count = 0;
+        int end = length;
+        while (end > 0) {
+            int b = readByte() & 0xFF;
+            end--;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+            } else if (b < 0xE0) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (readByte() & 0x3F));
+                end--;
+            } else if (b < 0xF0) {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((readByte() & 0x3F) << 6) | (readByte() & 0x3F));
+                end -= 2;
+            } else {
+                int codePoint = ((b & 0x07) << 18) | ((readByte() & 0x3F) << 12)
+                        | ((readByte() & 0x3F) << 6) | (readByte() & 0x3F);
+                chars[count++] = Character.highSurrogate(codePoint);
+                chars[count++] = Character.lowSurrogate(codePoint);
+                end -= 3;
+            }
+        }
+        return new String(chars, 0, count);
+    }
+}
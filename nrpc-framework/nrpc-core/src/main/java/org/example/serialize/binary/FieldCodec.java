@@ -0,0 +1,243 @@
+package org.example.serialize.binary;
+
+import org.example.exceptions.SerializeException;
+import org.example.serialize.BeanInfo;
+
+import java.io.IOException;
+
+/**
+ * 一个字段的二进制读写器，每个类只生成一次
+ * 基本类型的字段按照字段的类型直接读写，不写类型标记也不装箱，其他字段写成带标记的值
+ * @author xiaonaol
+ * @date 2025/1/14
+ **/
+abstract class FieldCodec {
+
+    private static final ClassValue<FieldCodec[]> CODECS = new ClassValue<>() {
+        @Override
+        protected FieldCodec[] computeValue(Class<?> type) {
+            BeanInfo.BeanField[] fields = BeanInfo.of(type).getFields();
+            FieldCodec[] codecs = new FieldCodec[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                codecs[i] = create(fields[i]);
+            }
+            return codecs;
+        }
+    };
+
+    protected final BeanInfo.BeanField field;
+
+    FieldCodec(BeanInfo.BeanField field) {
+        this.field = field;
+    }
+
+    /**
+     * @return 按照字段顺序排列的读写器
+     */
+    static FieldCodec[] of(Class<?> type) {
+        return CODECS.get(type);
+    }
+
+    private static FieldCodec create(BeanInfo.BeanField field) {
+        Class<?> type = field.getType();
+        if (type == int.class) {
+            return new IntField(field);
+        }
+        if (type == long.class) {
+            return new LongField(field);
+        }
+        if (type == double.class) {
+            return new DoubleField(field);
+        }
+        if (type == float.class) {
+            return new FloatField(field);
+        }
+        if (type == boolean.class) {
+            return new BooleanField(field);
+        }
+        if (type == short.class || type == byte.class || type == char.class) {
+            return new SmallField(field);
+        }
+        return new ObjectField(field);
+    }
+
+    /**
+     * 写出对象中这个字段的值
+     */
+    abstract void write(BinaryCodec codec, Object bean) throws IOException;
+
+    /**
+     * 读取一个值设置到对象的这个字段上
+     */
+    abstract void read(BinaryCodec codec, Object bean) throws IOException;
+
+    /**
+     * 读取一个值，用于record的构造参数
+     */
+    abstract Object readValue(BinaryCodec codec) throws IOException;
+
+    private static final class IntField extends FieldCodec {
+        IntField(BeanInfo.BeanField field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryCodec codec, Object bean) throws IOException {
+            codec.output().writeSignedInt(field.getInt(bean));
+        }
+
+        @Override
+        void read(BinaryCodec codec, Object bean) throws IOException {
+            field.setInt(bean, codec.input().readSignedInt());
+        }
+
+        @Override
+        Object readValue(BinaryCodec codec) throws IOException {
+            return codec.input().readSignedInt();
+        }
+    }
+
+    private static final class LongField extends FieldCodec {
+        LongField(BeanInfo.BeanField field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryCodec codec, Object bean) throws IOException {
+            codec.output().writeSignedLong(field.getLong(bean));
+        }
+
+        @Override
+        void read(BinaryCodec codec, Object bean) throws IOException {
+            field.setLong(bean, codec.input().readSignedLong());
+        }
+
+        @Override
+        Object readValue(BinaryCodec codec) throws IOException {
+            return codec.input().readSignedLong();
+        }
+    }
+
+    private static final class DoubleField extends FieldCodec {
+        DoubleField(BeanInfo.BeanField field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryCodec codec, Object bean) throws IOException {
+            codec.output().writeDouble(field.getDouble(bean));
+        }
+
+        @Override
+        void read(BinaryCodec codec, Object bean) throws IOException {
+            field.setDouble(bean, codec.input().readDouble());
+        }
+
+        @Override
+        Object readValue(BinaryCodec codec) throws IOException {
+            return codec.input().readDouble();
+        }
+    }
+
+    private static final class FloatField extends FieldCodec {
+        FloatField(BeanInfo.BeanField field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryCodec codec, Object bean) throws IOException {
+            codec.output().writeFloat(field.getFloat(bean));
+        }
+
+        @Override
+        void read(BinaryCodec codec, Object bean) throws IOException {
+            field.setFloat(bean, codec.input().readFloat());
+        }
+
+        @Override
+        Object readValue(BinaryCodec codec) throws IOException {
+            return codec.input().readFloat();
+        }
+    }
+
+    private static final class BooleanField extends FieldCodec {
+        BooleanField(BeanInfo.BeanField field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryCodec codec, Object bean) throws IOException {
+            codec.output().writeByte(field.getBoolean(bean) ? 1 : 0);
+        }
+
+        @Override
+        void read(BinaryCodec codec, Object bean) throws IOException {
+            field.setBoolean(bean, codec.input().readByte() != 0);
+        }
+
+        @Override
+        Object readValue(BinaryCodec codec) throws IOException {
+            return codec.input().readByte() != 0;
+        }
+    }
+
+    /**
+     * short、byte、char按照int读写
+     */
+    private static final class SmallField extends FieldCodec {
+        private final Class<?> type;
+
+        SmallField(BeanInfo.BeanField field) {
+            super(field);
+            this.type = field.getType();
+        }
+
+        @Override
+        void write(BinaryCodec codec, Object bean) throws IOException {
+            codec.output().writeSignedInt(field.getInt(bean));
+        }
+
+        @Override
+        void read(BinaryCodec codec, Object bean) throws IOException {
+            field.set(bean, readValue(codec));
+        }
+
+        @Override
+        Object readValue(BinaryCodec codec) throws IOException {
+            int value = codec.input().readSignedInt();
+            if (type == short.class) {
+                return (short) value;
+            }
+            if (type == byte.class) {
+                return (byte) value;
+            }
+            return (char) value;
+        }
+    }
+
+    private static final class ObjectField extends FieldCodec {
+        ObjectField(BeanInfo.BeanField field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryCodec codec, Object bean) throws IOException {
+            codec.writeValue(field.get(bean));
+        }
+
+        @Override
+        void read(BinaryCodec codec, Object bean) throws IOException {
+            field.set(bean, readValue(codec));
+        }
+
+        @Override
+        Object readValue(BinaryCodec codec) throws IOException {
+            Object value = codec.readValue();
+            if (value != null && !field.getType().isInstance(value)) {
+                throw new SerializeException("字段【" + field.getName() + "】的类型与值【"
+                        + value.getClass().getName() + "】不匹配");
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.example.serialize.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.exceptions.SerializeException;
+import org.example.serialize.Serializer;
+import org.example.serialize.binary.BinaryCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 紧凑的二进制序列化，对象按字段顺序写出、不写字段名，类名在一条消息里只写一次
+ * 两端的类需要保持一致的字段，不一致时反序列化失败
+ * @author xiaonaol
+ * @date 2025/1/14
+ **/
+@Slf4j
+public class BinarySerializer implements Serializer {
+    @Override
+    public byte[] serialize(Object object) {
+        if(object == null) {
+            return null;
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        serialize(object, baos);
+        return baos.toByteArray();
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        if(bytes == null || clazz == null) {
+            return null;
+        }
+        return deserialize(new ByteArrayInputStream(bytes), clazz);
+    }
+
+    @Override
+    public void serialize(Object object, OutputStream outputStream) {
+        if(object == null) {
+            return;
+        }
+        try {
+            BinaryCodec.write(object, outputStream);
+            if(log.isDebugEnabled()) {
+                log.debug("对象【{}】已经使用binary完成了序列化", object);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("binary序列化对象【{}】出现异常", object);
+            throw e instanceof SerializeException serializeException ? serializeException : new SerializeException(e);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(InputStream inputStream, Class<T> clazz) {
+        if(inputStream == null || clazz == null) {
+            return null;
+        }
+        try {
+            T t = BinaryCodec.read(inputStream, clazz);
+            if(log.isDebugEnabled()) {
+                log.debug("类【{}】已经使用binary完成了反序列化操作", clazz);
+            }
+            return t;
+        } catch (IOException | RuntimeException e) {
+            log.error("binary反序列化对象【{}】出现异常", clazz);
+            throw e instanceof SerializeException serializeException ? serializeException : new SerializeException(e);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.example.serialize.impl;
 
 import com.caucho.hessian.io.Hessian2Input;
 import com.caucho.hessian.io.Hessian2Output;
+import com.caucho.hessian.io.SerializerFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.example.exceptions.SerializeException;
 import org.example.serialize.Serializer;
@@ -9,42 +10,89 @@ import org.example.serialize.Serializer;
 import java.io.*;
 
 /**
+ * hessian的输入输出流按线程复用，每次使用前通过init重置引用表，用完清空预读缓冲区，反序列化失败的输入流直接丢弃；
+ * 所有流共用一个SerializerFactory
  * @author xiaonaol
  * @date 2024/11/23
  **/
 @Slf4j
 public class HessianSerializer implements Serializer {
 
+    private static final SerializerFactory SERIALIZER_FACTORY = new SerializerFactory();
+
+    private static final ThreadLocal<Streams> STREAMS = ThreadLocal.withInitial(Streams::new);
+
     @Override
     public byte[] serialize(Object object) {
         if(object == null) {
             return null;
         }
-        try(ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ) {
-            Hessian2Output hessian2Output = new Hessian2Output(baos);
+        Streams streams = STREAMS.get();
+        if(streams.inUse) {
+            // 序列化过程中再次进入（比如自定义的hessian序列化器），不能复用正在使用的流
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            serialize(object, baos);
+            return baos.toByteArray();
+        }
+        ByteArrayOutputStream baos = streams.buffer;
+        baos.reset();
+        serialize(object, baos);
+        byte[] bytes = baos.toByteArray();
+        streams.trimBuffer();
+        return bytes;
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        if(bytes == null || clazz == null) {
+            return null;
+        }
+        return deserialize(new ByteArrayInputStream(bytes), clazz);
+    }
+
+    @Override
+    public void serialize(Object object, OutputStream outputStream) {
+        if(object == null) {
+            return;
+        }
+        Streams streams = STREAMS.get();
+        Hessian2Output hessian2Output = streams.inUse ? newOutput() : streams.output;
+        boolean pooled = hessian2Output == streams.output;
+        try {
+            streams.inUse |= pooled;
+            hessian2Output.init(outputStream);
             hessian2Output.writeObject(object);
             hessian2Output.flush();
             if(log.isDebugEnabled()) {
                 log.debug("对象使用hessian【{}】已经完成了序列化", object);
             }
-            return baos.toByteArray();
         } catch (IOException e) {
             log.error("hessian序列化对象【{}】出现异常", object);
             throw new SerializeException(e);
+        } finally {
+            if(pooled) {
+                // 释放对输出流和已写对象的引用
+                hessian2Output.init(null);
+                streams.inUse = false;
+            }
         }
     }
 
     @Override
-    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
-        if(bytes == null || clazz == null) {
+    @SuppressWarnings("unchecked")
+    public <T> T deserialize(InputStream inputStream, Class<T> clazz) {
+        if(inputStream == null || clazz == null) {
             return null;
         }
-
-        try(ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-        ) {
-            Hessian2Input hessianInput = new Hessian2Input(bais);
+        Streams streams = STREAMS.get();
+        Hessian2Input hessianInput = streams.inUse ? newInput() : streams.input;
+        boolean pooled = hessianInput == streams.input;
+        boolean failed = true;
+        try {
+            streams.inUse |= pooled;
+            hessianInput.init(inputStream);
             T t = (T) hessianInput.readObject();
+            failed = false;
             if(log.isDebugEnabled()) {
                 log.debug("类【{}】已经使用hessian完成了反序列化操作", clazz);
             }
@@ -52,6 +100,59 @@ public class HessianSerializer implements Serializer {
         } catch (IOException e) {
             log.error("hessian反序列化对象【{}】出现异常", clazz);
             throw new SerializeException(e);
+        } finally {
+            if(pooled) {
+                if(failed) {
+                    // init只清理引用表，读到一半失败时预读缓冲区和分块状态都还留着，直接换一个新的流
+                    streams.input = newInput();
+                } else {
+                    discardBuffer(hessianInput);
+                }
+                hessianInput.init(null);
+                streams.inUse = false;
+            }
+        }
+    }
+
+    /**
+     * 清空预读缓冲区，报文体后面多余的字节不能留给下一次反序列化
+     */
+    private static void discardBuffer(Hessian2Input hessianInput) {
+        try {
+            hessianInput.resetBuffer();
+        } catch (IllegalStateException e) {
+            // 还有未读的字节，resetBuffer已经把它们丢弃
+        }
+    }
+
+    private static Hessian2Output newOutput() {
+        Hessian2Output output = new Hessian2Output(null);
+        output.setSerializerFactory(SERIALIZER_FACTORY);
+        return output;
+    }
+
+    private static Hessian2Input newInput() {
+        Hessian2Input input = new Hessian2Input(null);
+        input.setSerializerFactory(SERIALIZER_FACTORY);
+        return input;
+    }
+
+    /**
+     * 一个线程复用的hessian流
+     */
+    private static final class Streams {
+        // 超过这个大小的缓冲区用完后丢弃，避免一次大对象让线程一直持有大数组
+        private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+        private final Hessian2Output output = newOutput();
+        private Hessian2Input input = newInput();
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+        private boolean inUse;
+
+        private void trimBuffer() {
+            if(buffer.size() > MAX_BUFFER_SIZE) {
+                buffer = new ByteArrayOutputStream(1024);
+            }
         }
     }
 }
@@ -40,7 +40,36 @@ public class JdkSerializer implements Serializer {
             ObjectInputStream ois = new ObjectInputStream(bais);
         ) {
             log.info("使用jdk反序列化");
-            return (T) ois.readObject();
+            return clazz.cast(ois.readObject());
+        } catch (IOException | ClassNotFoundException e) {
+            log.error("jdk反序列化对象【{}】出现异常", clazz);
+            throw new SerializeException(e);
+        }
+    }
+
+    @Override
+    public void serialize(Object object, OutputStream outputStream) {
+        if(object == null) {
+            return;
+        }
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream(outputStream);
+            oos.writeObject(object);
+            oos.flush();
+        } catch (IOException e) {
+            log.error("jdk序列化对象【{}】出现异常", object);
+            throw new SerializeException(e);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(InputStream inputStream, Class<T> clazz) {
+        if(inputStream == null || clazz == null) {
+            return null;
+        }
+        try {
+            ObjectInputStream ois = new ObjectInputStream(inputStream);
+            return clazz.cast(ois.readObject());
         } catch (IOException | ClassNotFoundException e) {
             log.error("jdk反序列化对象【{}】出现异常", clazz);
             throw new SerializeException(e);
@@ -1,19 +1,72 @@
 package org.example.serialize.impl;
 
+import lombok.extern.slf4j.Slf4j;
+import org.example.exceptions.SerializeException;
 import org.example.serialize.Serializer;
+import org.example.serialize.json.JsonCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
+ * json序列化，便于跨语言调试时直接阅读报文
+ * 多态的参数和返回值会带上 "@type" 类型标记，参数类型Class<?>[]按照类的全限定名写出
  * @author xiaonaol
  * @date 2024/11/20
  **/
+@Slf4j
 public class JsonSerializer implements Serializer {
     @Override
     public byte[] serialize(Object object) {
-        return new byte[0];
+        if(object == null) {
+            return null;
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        serialize(object, baos);
+        return baos.toByteArray();
     }
 
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> clazz) {
-        return null;
+        if(bytes == null || clazz == null) {
+            return null;
+        }
+        return deserialize(new ByteArrayInputStream(bytes), clazz);
+    }
+
+    @Override
+    public void serialize(Object object, OutputStream outputStream) {
+        if(object == null) {
+            return;
+        }
+        try {
+            JsonCodec.write(object, outputStream);
+            if(log.isDebugEnabled()) {
+                log.debug("对象【{}】已经使用json完成了序列化", object);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("json序列化对象【{}】出现异常", object);
+            throw e instanceof SerializeException serializeException ? serializeException : new SerializeException(e);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(InputStream inputStream, Class<T> clazz) {
+        if(inputStream == null || clazz == null) {
+            return null;
+        }
+        try {
+            T t = JsonCodec.read(inputStream, clazz);
+            if(log.isDebugEnabled()) {
+                log.debug("类【{}】已经使用json完成了反序列化操作", clazz);
+            }
+            return t;
+        } catch (IOException | RuntimeException e) {
+            log.error("json反序列化对象【{}】出现异常", clazz);
+            throw e instanceof SerializeException serializeException ? serializeException : new SerializeException(e);
+        }
     }
 }
@@ -0,0 +1,545 @@
+package org.example.serialize.json;
+
+import org.example.exceptions.SerializeException;
+import org.example.serialize.BeanInfo;
+import org.example.serialize.TypeSupport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * json的编解码
+ * 1、字符串、布尔、int、double、null按照json的原生类型写出
+ * 2、声明的类型不足以还原实际类型时（多态参数、Object[]参数列表、集合元素），写出类型标记：
+ *    对象和map：{"@type":"com.xx.User","name":"nao"}
+ *    其他值：  {"@type":"java.lang.Long","@value":1}
+ * 3、非字符串键的map写成 {"@entries":[[k,v],...]}
+ * 4、对象只通过字段读写，不调用任何setter
+ * @author xiaonaol
+ * @date 2025/1/13
+ **/
+public final class JsonCodec {
+
+    private static final String TYPE_KEY = "@type";
+    private static final String VALUE_KEY = "@value";
+    private static final String ENTRIES_KEY = "@entries";
+
+    private static final byte[] TYPE_PREFIX = "{\"@type\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] VALUE_PREFIX = ",\"@value\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ENTRIES_PREFIX = "\"@entries\":[".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final ThreadLocal<JsonWriter> WRITERS = ThreadLocal.withInitial(() -> new JsonWriter(BUFFER_SIZE));
+    private static final ThreadLocal<JsonReader> READERS = ThreadLocal.withInitial(() -> new JsonReader(BUFFER_SIZE));
+
+    // 每个类的字段名预先编码为 "name":
+    private static final ClassValue<byte[][]> FIELD_NAMES = new ClassValue<>() {
+        @Override
+        protected byte[][] computeValue(Class<?> type) {
+            BeanInfo.BeanField[] fields = BeanInfo.of(type).getFields();
+            byte[][] names = new byte[fields.length][];
+            for (int i = 0; i < fields.length; i++) {
+                names[i] = ("\"" + fields[i].getName() + "\":").getBytes(StandardCharsets.UTF_8);
+            }
+            return names;
+        }
+    };
+
+    private JsonCodec() {
+    }
+
+    /**
+     * 将对象以json写入输出流
+     * @param object       对象
+     * @param outputStream 输出流
+     */
+    public static void write(Object object, OutputStream outputStream) throws IOException {
+        JsonWriter writer = WRITERS.get();
+        writer.reset(outputStream);
+        write(writer, object, Object.class);
+        writer.flush();
+    }
+
+    /**
+     * 从输入流中读取一个json值
+     * @param inputStream 输入流
+     * @param clazz       期望的类型
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T read(InputStream inputStream, Class<T> clazz) throws IOException {
+        JsonReader reader = READERS.get();
+        reader.reset(inputStream);
+        if (reader.peek() == -1) {
+            return null;
+        }
+        return (T) read(reader, clazz);
+    }
+
+    /*
+     * ----------------------------------- 写 -----------------------------------
+     */
+
+    private static void write(JsonWriter writer, Object value, Class<?> declared) throws IOException {
+        if (value == null) {
+            writer.writeNull();
+            return;
+        }
+
+        Class<?> type = value instanceof Enum<?> e ? e.getDeclaringClass() : value.getClass();
+        TypeSupport.Kind kind = TypeSupport.kind(type);
+        if (kind == TypeSupport.Kind.COLLECTION || kind == TypeSupport.Kind.MAP) {
+            type = TypeSupport.writeType(type);
+        }
+        // NaN和无穷大只能按字符串写出，声明为Object时需要类型标记，否则读回来是String
+        boolean typed = needsType(type, declared)
+                || declared == Object.class && value instanceof Double d && !Double.isFinite(d);
+
+        if (kind == TypeSupport.Kind.MAP) {
+            writeMap(writer, (Map<?, ?>) value, typed ? type : null);
+            return;
+        }
+        if (kind == TypeSupport.Kind.BEAN) {
+            writeBean(writer, value, type, typed);
+            return;
+        }
+
+        if (typed) {
+            writer.writeRaw(TYPE_PREFIX);
+            writer.writeString(type.getName());
+            writer.writeRaw(VALUE_PREFIX);
+        }
+        writeValue(writer, value, type, kind);
+        if (typed) {
+            writer.writeByte('}');
+        }
+    }
+
+    private static void writeValue(JsonWriter writer, Object value, Class<?> type, TypeSupport.Kind kind) throws IOException {
+        switch (kind) {
+            case STRING -> writer.writeString((String) value);
+            case BOOLEAN -> writer.writeBoolean((Boolean) value);
+            case BYTE, SHORT, INT, LONG -> writer.writeLong(((Number) value).longValue());
+            case FLOAT -> writer.writeFloat((Float) value);
+            case DOUBLE -> writer.writeDouble((Double) value);
+            case CHAR -> writer.writeString(String.valueOf((char) (Character) value));
+            case BIG_DECIMAL, BIG_INTEGER -> writer.writeAscii(value.toString());
+            case CLASS -> writer.writeString(((Class<?>) value).getName());
+            case ENUM -> writer.writeString(((Enum<?>) value).name());
+            case DATE -> writer.writeLong(((Date) value).getTime());
+            case TEXT -> writer.writeString(value.toString());
+            case BYTES -> writer.writeString(Base64.getEncoder().encodeToString((byte[]) value));
+            case CHARS -> writer.writeString(new String((char[]) value));
+            case ARRAY -> writeArray(writer, value, type.getComponentType());
+            case COLLECTION -> {
+                writer.writeByte('[');
+                boolean first = true;
+                for (Object element : (Collection<?>) value) {
+                    if (!first) {
+                        writer.writeByte(',');
+                    }
+                    first = false;
+                    write(writer, element, Object.class);
+                }
+                writer.writeByte(']');
+            }
+            default -> throw new SerializeException("json不支持序列化类型【" + type.getName() + "】");
+        }
+    }
+
+    private static void writeArray(JsonWriter writer, Object array, Class<?> componentType) throws IOException {
+        writer.writeByte('[');
+        if (componentType == int.class) {
+            int[] values = (int[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.writeByte(',');
+                }
+                writer.writeLong(values[i]);
+            }
+        } else if (componentType == long.class) {
+            long[] values = (long[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.writeByte(',');
+                }
+                writer.writeLong(values[i]);
+            }
+        } else if (componentType == double.class) {
+            double[] values = (double[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.writeByte(',');
+                }
+                writer.writeDouble(values[i]);
+            }
+        } else if (componentType.isPrimitive()) {
+            int length = Array.getLength(array);
+            TypeSupport.Kind kind = TypeSupport.kind(componentType);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    writer.writeByte(',');
+                }
+                writeValue(writer, Array.get(array, i), componentType, kind);
+            }
+        } else {
+            Object[] values = (Object[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.writeByte(',');
+                }
+                write(writer, values[i], componentType);
+            }
+        }
+        writer.writeByte(']');
+    }
+
+    private static void writeMap(JsonWriter writer, Map<?, ?> map, Class<?> type) throws IOException {
+        writer.writeByte('{');
+        boolean first = true;
+        if (type != null) {
+            writer.writeString(TYPE_KEY);
+            writer.writeByte(':');
+            writer.writeString(type.getName());
+            first = false;
+        }
+
+        boolean stringKeys = true;
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                stringKeys = false;
+                break;
+            }
+        }
+
+        if (stringKeys) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!first) {
+                    writer.writeByte(',');
+                }
+                first = false;
+                writer.writeString((String) entry.getKey());
+                writer.writeByte(':');
+                write(writer, entry.getValue(), Object.class);
+            }
+        } else {
+            if (!first) {
+                writer.writeByte(',');
+            }
+            writer.writeRaw(ENTRIES_PREFIX);
+            boolean firstEntry = true;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!firstEntry) {
+                    writer.writeByte(',');
+                }
+                firstEntry = false;
+                writer.writeByte('[');
+                write(writer, entry.getKey(), Object.class);
+                writer.writeByte(',');
+                write(writer, entry.getValue(), Object.class);
+                writer.writeByte(']');
+            }
+            writer.writeByte(']');
+        }
+        writer.writeByte('}');
+    }
+
+    private static void writeBean(JsonWriter writer, Object value, Class<?> type, boolean typed) throws IOException {
+        writer.writeByte('{');
+        boolean first = true;
+        if (typed) {
+            writer.writeString(TYPE_KEY);
+            writer.writeByte(':');
+            writer.writeString(type.getName());
+            first = false;
+        }
+
+        BeanInfo.BeanField[] fields = BeanInfo.of(type).getFields();
+        byte[][] names = FIELD_NAMES.get(type);
+        for (int i = 0; i < fields.length; i++) {
+            BeanInfo.BeanField field = fields[i];
+            Class<?> fieldType = field.getType();
+            if (fieldType.isPrimitive()) {
+                if (!first) {
+                    writer.writeByte(',');
+                }
+                first = false;
+                writer.writeRaw(names[i]);
+                // 基本类型的字段直接读取，不装箱
+                if (fieldType == int.class || fieldType == long.class
+                        || fieldType == short.class || fieldType == byte.class) {
+                    writer.writeLong(field.getLong(value));
+                } else if (fieldType == double.class) {
+                    writer.writeDouble(field.getDouble(value));
+                } else if (fieldType == float.class) {
+                    writer.writeFloat(field.getFloat(value));
+                } else if (fieldType == boolean.class) {
+                    writer.writeBoolean(field.getBoolean(value));
+                } else {
+                    writer.writeString(String.valueOf((char) field.getInt(value)));
+                }
+                continue;
+            }
+
+            Object fieldValue = field.get(value);
+            // null值的字段不写出
+            if (fieldValue == null) {
+                continue;
+            }
+            if (!first) {
+                writer.writeByte(',');
+            }
+            first = false;
+            writer.writeRaw(names[i]);
+            write(writer, fieldValue, fieldType);
+        }
+        writer.writeByte('}');
+    }
+
+    /**
+     * 读取时只凭声明的类型能否还原出实际类型，不能就需要写出类型标记
+     */
+    private static boolean needsType(Class<?> type, Class<?> declared) {
+        if (type == declared) {
+            return false;
+        }
+        if (declared.isPrimitive()) {
+            return TypeSupport.box(declared) != type;
+        }
+        if (declared == Object.class) {
+            // json原生类型读取时就能还原
+            return type != String.class && type != Boolean.class && type != Integer.class && type != Double.class;
+        }
+        return type != TypeSupport.defaultImplementation(declared);
+    }
+
+    /*
+     * ----------------------------------- 读 -----------------------------------
+     */
+
+    private static Object read(JsonReader reader, Class<?> declared) throws IOException {
+        int b = reader.peek();
+        if (b == 'n') {
+            reader.expectLiteral("null");
+            return TypeSupport.defaultValue(declared);
+        }
+
+        if (b == '{') {
+            reader.next();
+            String key = reader.nextKey(true);
+            if (TYPE_KEY.equals(key)) {
+                Class<?> type = TypeSupport.resolveClass(reader.readString());
+                if (!TypeSupport.box(declared).isAssignableFrom(type)) {
+                    throw new SerializeException("类型【" + type.getName() + "】与期望的类型【"
+                            + declared.getName() + "】不匹配");
+                }
+                key = reader.nextKey(false);
+                if (VALUE_KEY.equals(key)) {
+                    Object value = readValue(reader, type);
+                    if (reader.nextKey(false) != null) {
+                        throw new SerializeException("json格式错误，@value之后不能有其他字段");
+                    }
+                    return value;
+                }
+                return readObject(reader, type, key);
+            }
+            return readObject(reader, declared, key);
+        }
+
+        return readValue(reader, declared);
+    }
+
+    /**
+     * 读取一个对象的剩余部分
+     * @param key 已经读取的第一个键，对象已经结束时为null
+     */
+    private static Object readObject(JsonReader reader, Class<?> type, String key) throws IOException {
+        TypeSupport.Kind kind = TypeSupport.kind(type);
+        if (kind == TypeSupport.Kind.OBJECT || kind == TypeSupport.Kind.MAP) {
+            Map<Object, Object> map = TypeSupport.newMap(type);
+            if (ENTRIES_KEY.equals(key)) {
+                reader.expect('[');
+                for (boolean first = true; reader.hasNextElement(first); first = false) {
+                    reader.expect('[');
+                    Object entryKey = read(reader, Object.class);
+                    reader.expect(',');
+                    Object entryValue = read(reader, Object.class);
+                    reader.expect(']');
+                    map.put(entryKey, entryValue);
+                }
+                key = reader.nextKey(false);
+            }
+            for (; key != null; key = reader.nextKey(false)) {
+                map.put(key, read(reader, Object.class));
+            }
+            return map;
+        }
+
+        if (kind != TypeSupport.Kind.BEAN) {
+            throw new SerializeException("json对象不能转换为类型【" + type.getName() + "】");
+        }
+
+        BeanInfo beanInfo = BeanInfo.of(type);
+        if (beanInfo.isRecord()) {
+            BeanInfo.BeanField[] fields = beanInfo.getFields();
+            Object[] values = new Object[fields.length];
+            for (; key != null; key = reader.nextKey(false)) {
+                BeanInfo.BeanField field = beanInfo.getField(key);
+                if (field == null) {
+                    reader.skipValue();
+                } else {
+                    values[field.getIndex()] = read(reader, field.getType());
+                }
+            }
+            for (BeanInfo.BeanField field : fields) {
+                if (values[field.getIndex()] == null && field.getType().isPrimitive()) {
+                    values[field.getIndex()] = TypeSupport.defaultValue(field.getType());
+                }
+            }
+            return beanInfo.newRecord(values);
+        }
+
+        Object bean = beanInfo.newInstance();
+        for (; key != null; key = reader.nextKey(false)) {
+            BeanInfo.BeanField field = beanInfo.getField(key);
+            if (field == null) {
+                // 不认识的字段直接跳过
+                reader.skipValue();
+            } else if (field.getType().isPrimitive()) {
+                readPrimitiveField(reader, field, bean);
+            } else {
+                field.set(bean, read(reader, field.getType()));
+            }
+        }
+        return bean;
+    }
+
+    private static void readPrimitiveField(JsonReader reader, BeanInfo.BeanField field, Object bean) throws IOException {
+        if (reader.readNullIfPresent()) {
+            return;
+        }
+        Class<?> type = field.getType();
+        if (type == int.class) {
+            field.setInt(bean, Integer.parseInt(reader.readNumber()));
+        } else if (type == long.class) {
+            field.setLong(bean, Long.parseLong(reader.readNumber()));
+        } else if (type == double.class) {
+            field.setDouble(bean, Double.parseDouble(reader.readNumber()));
+        } else if (type == float.class) {
+            field.setFloat(bean, Float.parseFloat(reader.readNumber()));
+        } else if (type == boolean.class) {
+            field.setBoolean(bean, reader.readBoolean());
+        } else {
+            field.set(bean, readValue(reader, type));
+        }
+    }
+
+    /**
+     * 读取一个非对象形式的值
+     */
+    private static Object readValue(JsonReader reader, Class<?> type) throws IOException {
+        if (reader.readNullIfPresent()) {
+            return null;
+        }
+        TypeSupport.Kind kind = TypeSupport.kind(type);
+        return switch (kind) {
+            case STRING -> reader.peek() == '"' ? reader.readString() : reader.readNumber();
+            case BOOLEAN -> reader.readBoolean();
+            case BYTE -> Byte.parseByte(reader.readNumber());
+            case SHORT -> Short.parseShort(reader.readNumber());
+            case INT -> Integer.parseInt(reader.readNumber());
+            case LONG -> Long.parseLong(reader.readNumber());
+            case FLOAT -> Float.parseFloat(reader.readNumber());
+            case DOUBLE -> Double.parseDouble(reader.readNumber());
+            case CHAR -> reader.readString().charAt(0);
+            case BIG_DECIMAL -> new BigDecimal(reader.readNumber());
+            case BIG_INTEGER -> new BigInteger(reader.readNumber());
+            case CLASS -> TypeSupport.resolveClass(reader.readString());
+            case ENUM -> TypeSupport.enumValue(type, reader.readString());
+            case DATE -> new Date(Long.parseLong(reader.readNumber()));
+            case TEXT -> TypeSupport.parseText(type, reader.readString());
+            case BYTES -> Base64.getDecoder().decode(reader.readString());
+            case CHARS -> reader.readString().toCharArray();
+            case ARRAY -> readArray(reader, type.getComponentType());
+            case COLLECTION -> {
+                Collection<Object> collection = TypeSupport.newCollection(type);
+                reader.expect('[');
+                for (boolean first = true; reader.hasNextElement(first); first = false) {
+                    collection.add(read(reader, Object.class));
+                }
+                yield collection;
+            }
+            case MAP, BEAN -> {
+                reader.expect('{');
+                yield readObject(reader, type, reader.nextKey(true));
+            }
+            case OBJECT -> readNatural(reader);
+        };
+    }
+
+    /**
+     * 没有类型信息时按照json原生类型读取
+     */
+    private static Object readNatural(JsonReader reader) throws IOException {
+        int b = reader.peek();
+        switch (b) {
+            case '"':
+                return reader.readString();
+            case 't':
+            case 'f':
+                return reader.readBoolean();
+            case '[':
+                return readValue(reader, ArrayList.class);
+            case '{':
+                return read(reader, Object.class);
+            default:
+                String number = reader.readNumber();
+                if (number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+                    return Double.parseDouble(number);
+                }
+                long value = Long.parseLong(number);
+                return value == (int) value ? (Object) (int) value : (Object) value;
+        }
+    }
+
+    private static Object readArray(JsonReader reader, Class<?> componentType) throws IOException {
+        reader.expect('[');
+        if (componentType == int.class) {
+            int[] values = new int[16];
+            int size = 0;
+            for (boolean first = true; reader.hasNextElement(first); first = false) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size << 1);
+                }
+                values[size++] = Integer.parseInt(reader.readNumber());
+            }
+            return Arrays.copyOf(values, size);
+        }
+        if (componentType == long.class) {
+            long[] values = new long[16];
+            int size = 0;
+            for (boolean first = true; reader.hasNextElement(first); first = false) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size << 1);
+                }
+                values[size++] = Long.parseLong(reader.readNumber());
+            }
+            return Arrays.copyOf(values, size);
+        }
+
+        List<Object> elements = new ArrayList<>();
+        for (boolean first = true; reader.hasNextElement(first); first = false) {
+            elements.add(componentType.isPrimitive() ? readValue(reader, componentType) : read(reader, componentType));
+        }
+        Object array = Array.newInstance(componentType, elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            Array.set(array, i, elements.get(i));
+        }
+        return array;
+    }
+}
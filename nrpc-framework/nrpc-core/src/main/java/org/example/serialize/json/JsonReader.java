@@ -0,0 +1,257 @@
+package org.example.serialize.json;
+
+import org.example.exceptions.SerializeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 从utf-8字节流中逐个读取json记号的读取器，缓冲区在同一线程内复用
+ * @author xiaonaol
+ * @date 2025/1/13
+ **/
+final class JsonReader {
+
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private InputStream inputStream;
+    private final StringBuilder builder = new StringBuilder(64);
+
+    JsonReader(int bufferSize) {
+        this.buffer = new byte[bufferSize];
+    }
+
+    void reset(InputStream inputStream) {
+        this.inputStream = inputStream;
+        this.position = 0;
+        this.limit = 0;
+    }
+
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        int read = inputStream.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    /**
+     * 跳过空白后查看下一个字节，不移动位置
+     * @return 下一个字节，流结束时返回-1
+     */
+    int peek() throws IOException {
+        while (fill()) {
+            byte b = buffer[position];
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                position++;
+            } else {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 跳过空白后读取下一个字节
+     */
+    int next() throws IOException {
+        int b = peek();
+        if (b == -1) {
+            throw new SerializeException("json意外结束");
+        }
+        position++;
+        return b;
+    }
+
+    void expect(char c) throws IOException {
+        int b = next();
+        if (b != c) {
+            throw new SerializeException("json格式错误，期望【" + c + "】实际为【" + (char) b + "】");
+        }
+    }
+
+    /**
+     * 读取一个字面量 null/true/false，调用前已经通过peek确认了首字母
+     */
+    void expectLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (!fill() || buffer[position++] != literal.charAt(i)) {
+                throw new SerializeException("json格式错误，期望【" + literal + "】");
+            }
+        }
+    }
+
+    /**
+     * 读取null，如果下一个值是null返回true
+     */
+    boolean readNullIfPresent() throws IOException {
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return true;
+        }
+        return false;
+    }
+
+    boolean readBoolean() throws IOException {
+        int b = peek();
+        if (b == 't') {
+            expectLiteral("true");
+            return true;
+        }
+        if (b == 'f') {
+            expectLiteral("false");
+            return false;
+        }
+        if (b == '"') {
+            return Boolean.parseBoolean(readString());
+        }
+        throw new SerializeException("json格式错误，期望布尔值");
+    }
+
+    /**
+     * 读取一个数字记号，兼容以字符串写出的数字（NaN、Infinity）
+     */
+    String readNumber() throws IOException {
+        if (peek() == '"') {
+            return readString();
+        }
+        builder.setLength(0);
+        while (fill()) {
+            byte b = buffer[position];
+            if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+                builder.append((char) b);
+                position++;
+            } else {
+                break;
+            }
+        }
+        if (builder.length() == 0) {
+            throw new SerializeException("json格式错误，期望数字");
+        }
+        return builder.toString();
+    }
+
+    String readString() throws IOException {
+        expect('"');
+        builder.setLength(0);
+        while (true) {
+            if (!fill()) {
+                throw new SerializeException("json字符串意外结束");
+            }
+            int b = buffer[position++] & 0xFF;
+            if (b == '"') {
+                return builder.toString();
+            }
+            if (b == '\\') {
+                readEscape();
+            } else if (b < 0x80) {
+                builder.append((char) b);
+            } else if (b < 0xE0) {
+                builder.append((char) (((b & 0x1F) << 6) | continuation()));
+            } else if (b < 0xF0) {
+                builder.append((char) (((b & 0x0F) << 12) | (continuation() << 6) | continuation()));
+            } else {
+                int codePoint = ((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation();
+                builder.appendCodePoint(codePoint);
+            }
+        }
+    }
+
+    private int continuation() throws IOException {
+        if (!fill()) {
+            throw new SerializeException("json字符串意外结束");
+        }
+        return buffer[position++] & 0x3F;
+    }
+
+    private void readEscape() throws IOException {
+        if (!fill()) {
+            throw new SerializeException("json字符串意外结束");
+        }
+        int c = buffer[position++];
+        switch (c) {
+            case 'n' -> builder.append('\n');
+            case 'r' -> builder.append('\r');
+            case 't' -> builder.append('\t');
+            case 'b' -> builder.append('\b');
+            case 'f' -> builder.append('\f');
+            case 'u' -> {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (!fill()) {
+                        throw new SerializeException("json字符串意外结束");
+                    }
+                    value = (value << 4) | Character.digit(buffer[position++], 16);
+                }
+                builder.append((char) value);
+            }
+            default -> builder.append((char) c);
+        }
+    }
+
+    /**
+     * 读取对象中下一个键，已经到达对象末尾时返回null
+     * @param first 是否是对象中的第一个键
+     */
+    String nextKey(boolean first) throws IOException {
+        int b = peek();
+        if (b == '}') {
+            position++;
+            return null;
+        }
+        if (!first) {
+            expect(',');
+        }
+        String key = readString();
+        expect(':');
+        return key;
+    }
+
+    /**
+     * 数组中是否还有下一个元素
+     * @param first 是否是数组中的第一个元素
+     */
+    boolean hasNextElement(boolean first) throws IOException {
+        int b = peek();
+        if (b == ']') {
+            position++;
+            return false;
+        }
+        if (!first) {
+            expect(',');
+        }
+        return true;
+    }
+
+    /**
+     * 跳过一个完整的值，用于忽略不认识的字段
+     */
+    void skipValue() throws IOException {
+        int b = peek();
+        switch (b) {
+            case '{' -> {
+                position++;
+                for (boolean first = true; nextKey(first) != null; first = false) {
+                    skipValue();
+                }
+            }
+            case '[' -> {
+                position++;
+                for (boolean first = true; hasNextElement(first); first = false) {
+                    skipValue();
+                }
+            }
+            case '"' -> readString();
+            case 't' -> expectLiteral("true");
+            case 'f' -> expectLiteral("false");
+            case 'n' -> expectLiteral("null");
+            default -> readNumber();
+        }
+    }
+}
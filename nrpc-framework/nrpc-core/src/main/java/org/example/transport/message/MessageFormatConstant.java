@@ -7,10 +7,14 @@ package org.example.transport.message;
 public class MessageFormatConstant {
     public final static byte[] MAGIC = "nrpc".getBytes();
     public final static int VERSION = 1;
+    // 第2版紧凑协议，见CompactProtocol
+    public final static byte COMPACT_VERSION = 2;
     // 头部信息的长度
     public final static short HEADER_LENGTH = (short) (MAGIC.length + 1 + 2 + 4 + 1 + 1 + 1 + 8 + 8);
 
     public final static int MAX_FRAME_LENGTH = 1024 * 1024;
+    // 解压后报文体的最大长度，解压前按照报文里记录的原始长度分配内存，超过的直接拒绝，按16倍的压缩比留出余量
+    public final static int MAX_BODY_LENGTH = 16 * MAX_FRAME_LENGTH;
     public static final int VERSION_LENGTH = 1;
     // 头部信息长度占用字节数
     public static final int HEADER_FIELD_LENGTH = 2;
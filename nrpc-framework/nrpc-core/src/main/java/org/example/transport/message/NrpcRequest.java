@@ -22,6 +22,9 @@ public class NrpcRequest {
     private byte requestType;
     private byte compressType;
     private byte serializeType;
+    // 调用方希望响应使用的压缩方式，只有第2版紧凑协议携带，第1版协议按照请求的压缩方式响应
+    // compressType只表示本次请求体实际使用的压缩方式，请求体不压缩时为0
+    private byte acceptCompressType;
 
     private long timeStamp;
 
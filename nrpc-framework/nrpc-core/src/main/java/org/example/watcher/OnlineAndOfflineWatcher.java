@@ -1,17 +1,18 @@
 package org.example.watcher;
 
-import io.netty.channel.Channel;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
-import org.example.netty.initializer.NettyBootstrapInitializer;
+import org.example.netty.NrpcChannelPool;
 import org.example.NrpcBootstrap;
 import org.example.discovery.Registry;
 import org.example.loadbalancer.LoadBalancer;
 
 import java.net.InetSocketAddress;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author xiaonaol
@@ -30,25 +31,23 @@ public class OnlineAndOfflineWatcher implements Watcher {
             Registry registry = NrpcBootstrap.getInstance().getConfiguration().getRegistryConfig().getRegistry();
             List<InetSocketAddress> addresses = registry.lookup(serviceName,
                     NrpcBootstrap.getInstance().getConfiguration().getGroup());
+            NrpcBootstrap.SERVICE_ADDRESS_CACHE.put(serviceName, addresses);
             // 处理新增的节点
             for(InetSocketAddress address : addresses) {
-                // 根据地址建立连接，并且缓存
+                // 根据地址创建连接池并建立第一个连接
                 if(!NrpcBootstrap.CHANNEL_CACHE.containsKey(address)) {
-                    Channel channel = null;
-                    try {
-                        channel = NettyBootstrapInitializer.getBootstrap()
-                                .connect(address).sync().channel();
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                    NrpcBootstrap.CHANNEL_CACHE.put(address, channel);
+                    NrpcChannelPool.getOrCreate(address).acquire();
                 }
             }
 
-            // 处理下线的节点
-            for(Map.Entry<InetSocketAddress, Channel> entry : NrpcBootstrap.CHANNEL_CACHE.entrySet()) {
-                if(!addresses.contains(entry.getKey())) {
-                    NrpcBootstrap.CHANNEL_CACHE.remove(entry.getKey());
+            // 处理下线的节点，连接池被所有服务共用，只有没有任何服务还在使用这个地址时才关闭
+            Set<InetSocketAddress> inUse = new HashSet<>();
+            for(List<InetSocketAddress> serviceAddresses : NrpcBootstrap.SERVICE_ADDRESS_CACHE.values()) {
+                inUse.addAll(serviceAddresses);
+            }
+            for(Map.Entry<InetSocketAddress, NrpcChannelPool> entry : NrpcBootstrap.CHANNEL_CACHE.entrySet()) {
+                if(!inUse.contains(entry.getKey()) && NrpcBootstrap.CHANNEL_CACHE.remove(entry.getKey(), entry.getValue())) {
+                    entry.getValue().close();
                 }
             }
 
@@ -59,7 +58,8 @@ public class OnlineAndOfflineWatcher implements Watcher {
     }
 
     private String getServiceName(String path) {
+        // 路径为 /xiaonaol-metadata/providers/服务名/分组
         String[] split = path.split("/");
-        return split[split.length - 1];
+        return split[split.length - 2];
     }
 }
@@ -0,0 +1,105 @@
+package org.example.compress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.example.compress.impl.NoneCompressor;
+import org.example.serialize.Serializer;
+import org.example.serialize.SerializerFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author xiaonaol
+ * @date 2025/2/10
+ **/
+public class CompressorTest {
+
+    private static final String[] TYPES = {"gzip", "lz4", "snappy", "dict"};
+
+    private static byte[] compressible() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"nrpc\",\"status\":\"ok\"}");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        new Random(1).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void bytesRoundTrip() {
+        for (String type : TYPES) {
+            Compressor compressor = CompressorFactory.getCompressor(type).getImpl();
+            for (byte[] data : new byte[][]{new byte[0], "a".getBytes(StandardCharsets.UTF_8), compressible(), random(4096)}) {
+                assertArrayEquals(type, data, compressor.decompress(compressor.compress(data)));
+            }
+        }
+    }
+
+    @Test
+    public void streamRoundTrip() throws Exception {
+        for (String type : TYPES) {
+            Compressor compressor = CompressorFactory.getCompressor(type).getImpl();
+            byte[] data = compressible();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (OutputStream outputStream = compressor.compress(out)) {
+                outputStream.write(data, 0, 100);
+                outputStream.write(data, 100, data.length - 100);
+            }
+            assertTrue(type, out.size() < data.length);
+            byte[] actual = compressor.decompress(new ByteArrayInputStream(out.toByteArray())).readAllBytes();
+            assertArrayEquals(type, data, actual);
+        }
+    }
+
+    @Test
+    public void writeBodyKeepsSmallerEncoding() throws Exception {
+        Serializer serializer = SerializerFactory.getSerializer("hessian").getImpl();
+        byte serializeType = SerializerFactory.getSerializer("hessian").getCode();
+        String text = new String(compressible(), StandardCharsets.UTF_8);
+        byte[] noise = random(8192);
+
+        for (String type : TYPES) {
+            byte compressType = CompressorFactory.getCompressor(type).getCode();
+            for (boolean direct : new boolean[]{false, true}) {
+                for (Object body : new Object[]{text, noise}) {
+                    // 初始容量很小，压缩时需要扩容
+                    ByteBuf byteBuf = direct ? PooledByteBufAllocator.DEFAULT.directBuffer(16) : Unpooled.buffer(16);
+                    try {
+                        byteBuf.writeByte(7);
+                        byte used = CompressionPolicy.writeBody(byteBuf, body, serializeType, compressType, "test." + type);
+                        assertEquals(7, byteBuf.readByte());
+                        byte[] bytes = new byte[byteBuf.readableBytes()];
+                        byteBuf.readBytes(bytes);
+                        if (body == noise) {
+                            assertEquals(type, NoneCompressor.CODE, used);
+                        } else {
+                            assertEquals(type, compressType, used);
+                            bytes = CompressorFactory.getCompressor(used).getImpl().decompress(bytes);
+                        }
+                        Object actual = serializer.deserialize(bytes, Object.class);
+                        if (body == noise) {
+                            assertArrayEquals(type, noise, (byte[]) actual);
+                        } else {
+                            assertEquals(type, text, actual);
+                        }
+                    } finally {
+                        byteBuf.release();
+                    }
+                }
+            }
+        }
+    }
+}
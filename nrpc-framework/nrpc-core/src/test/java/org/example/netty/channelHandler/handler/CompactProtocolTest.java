@@ -0,0 +1,122 @@
+package org.example.netty.channelHandler.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import org.example.transport.message.RequestPayload;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author xiaonaol
+ * @date 2025/2/10
+ **/
+public class CompactProtocolTest {
+
+    @Test
+    public void varIntRoundTrip() {
+        int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        ByteBuf buf = Unpooled.buffer();
+        for (int value : values) {
+            CompactProtocol.writeVarInt(buf, value);
+        }
+        for (int value : values) {
+            assertEquals(value, CompactProtocol.readVarInt(buf));
+        }
+        assertFalse(buf.isReadable());
+    }
+
+    @Test
+    public void varLongRoundTrip() {
+        long[] values = {0, 1, 127, 128, 1L << 35, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        ByteBuf buf = Unpooled.buffer();
+        for (long value : values) {
+            CompactProtocol.writeVarLong(buf, value);
+        }
+        for (long value : values) {
+            assertEquals(value, CompactProtocol.readVarLong(buf));
+        }
+        assertFalse(buf.isReadable());
+    }
+
+    @Test
+    public void stringRoundTrip() {
+        ByteBuf buf = Unpooled.buffer();
+        CompactProtocol.writeString(buf, "");
+        CompactProtocol.writeString(buf, "你好nrpc");
+        assertEquals("", CompactProtocol.readString(buf));
+        assertEquals("你好nrpc", CompactProtocol.readString(buf));
+    }
+
+    @Test(expected = CorruptedFrameException.class)
+    public void rejectsLengthLongerThanFrame() {
+        ByteBuf buf = Unpooled.buffer();
+        CompactProtocol.writeVarInt(buf, 10);
+        buf.writeBytes(new byte[3]);
+        CompactProtocol.readString(buf);
+    }
+
+    @Test(expected = CorruptedFrameException.class)
+    public void rejectsNegativeLength() {
+        ByteBuf buf = Unpooled.buffer();
+        CompactProtocol.writeVarInt(buf, -1);
+        CompactProtocol.readLength(buf);
+    }
+
+    @Test
+    public void frameLengthRoundTrip() {
+        ByteBuf out = Unpooled.buffer();
+        int lengthIndex = CompactProtocol.beginFrame(out);
+        out.writeBytes(new byte[300]);
+        CompactProtocol.endFrame(out, lengthIndex);
+
+        assertTrue(CompactProtocol.isCompact(out));
+        ByteBuf frame = CompactProtocol.extractFrame(out);
+        assertNotNull(frame);
+        assertEquals(300, frame.readableBytes());
+        assertFalse(out.isReadable());
+        frame.release();
+    }
+
+    @Test
+    public void methodDefinitionIsSentUntilRegistered() {
+        EmbeddedChannel consumer = new EmbeddedChannel();
+        EmbeddedChannel provider = new EmbeddedChannel();
+        RequestPayload payload = RequestPayload.builder()
+                .interfaceName("org.example.HelloNrpc")
+                .methodName("sayHi")
+                .parametersType(new Class<?>[]{String.class, int.class})
+                .returnType(String.class)
+                .build();
+
+        // 没有登记的方法每次都携带定义
+        ByteBuf first = Unpooled.buffer();
+        String key = CompactProtocol.writeMethod(consumer, first, payload);
+        assertNotNull(key);
+        ByteBuf retry = Unpooled.buffer();
+        assertEquals(key, CompactProtocol.writeMethod(consumer, retry, payload));
+        assertEquals(first, retry);
+
+        CompactProtocol.registerMethod(consumer, key);
+        ByteBuf second = Unpooled.buffer();
+        assertNull(CompactProtocol.writeMethod(consumer, second, payload));
+        assertTrue(second.readableBytes() < first.readableBytes());
+
+        RequestPayload defined = CompactProtocol.readMethod(provider, first).toPayload(new Object[]{"nrpc", 1});
+        RequestPayload referenced = CompactProtocol.readMethod(provider, second).toPayload(null);
+        assertEquals("org.example.HelloNrpc", defined.getInterfaceName());
+        assertEquals("sayHi", defined.getMethodName());
+        assertArrayEquals(new Class<?>[]{String.class, int.class}, defined.getParametersType());
+        assertEquals(defined.getMethodName(), referenced.getMethodName());
+        assertArrayEquals(defined.getParametersType(), referenced.getParametersType());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void rejectsUnknownMethodId() {
+        ByteBuf buf = Unpooled.buffer();
+        CompactProtocol.writeVarInt(buf, 5 << 1);
+        CompactProtocol.readMethod(new EmbeddedChannel(), buf);
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.protection;
+
+import org.example.protection.CircuitBreaker.Permit;
+import org.example.protection.CircuitBreaker.State;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author xiaonaol
+ * @date 2025/2/10
+ **/
+public class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 50;
+
+    private static CircuitBreaker circuitBreaker(int halfOpenProbes) {
+        return new CircuitBreaker(10_000, 10, 4, 0.5f, OPEN_MILLIS, halfOpenProbes);
+    }
+
+    private static void open(CircuitBreaker circuitBreaker) {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.recordFailure(circuitBreaker.tryAcquire());
+        }
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void staysClosedBelowMinRequests() {
+        CircuitBreaker circuitBreaker = circuitBreaker(1);
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure(circuitBreaker.tryAcquire());
+        }
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertEquals(Permit.NORMAL, circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void staysClosedBelowErrorRate() {
+        CircuitBreaker circuitBreaker = circuitBreaker(1);
+        for (int i = 0; i < 6; i++) {
+            circuitBreaker.recordSuccess(circuitBreaker.tryAcquire());
+        }
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.recordFailure(circuitBreaker.tryAcquire());
+        }
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        circuitBreaker.recordFailure(circuitBreaker.tryAcquire());
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void rejectsWhileOpen() {
+        CircuitBreaker circuitBreaker = circuitBreaker(1);
+        open(circuitBreaker);
+        assertEquals(Permit.REJECTED, circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void successfulProbesClose() throws InterruptedException {
+        CircuitBreaker circuitBreaker = circuitBreaker(2);
+        open(circuitBreaker);
+        Thread.sleep(OPEN_MILLIS + 10);
+
+        Permit first = circuitBreaker.tryAcquire();
+        Permit second = circuitBreaker.tryAcquire();
+        assertEquals(Permit.PROBE, first);
+        assertEquals(Permit.PROBE, second);
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+        // 探测名额用完之后拒绝
+        assertEquals(Permit.REJECTED, circuitBreaker.tryAcquire());
+
+        circuitBreaker.recordSuccess(first);
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.recordSuccess(second);
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertEquals(Permit.NORMAL, circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void failedProbeReopens() throws InterruptedException {
+        CircuitBreaker circuitBreaker = circuitBreaker(1);
+        open(circuitBreaker);
+        Thread.sleep(OPEN_MILLIS + 10);
+
+        circuitBreaker.recordFailure(circuitBreaker.tryAcquire());
+        assertEquals(State.OPEN, circuitBreaker.getState());
+        assertEquals(Permit.REJECTED, circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void staleNormalPermitDoesNotAffectHalfOpen() throws InterruptedException {
+        CircuitBreaker circuitBreaker = circuitBreaker(1);
+        // 熔断之前放行、熔断之后才结束的请求
+        Permit stale = circuitBreaker.tryAcquire();
+        open(circuitBreaker);
+        Thread.sleep(OPEN_MILLIS + 10);
+
+        Permit probe = circuitBreaker.tryAcquire();
+        assertEquals(Permit.PROBE, probe);
+        circuitBreaker.recordSuccess(stale);
+        circuitBreaker.recordFailure(stale);
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+
+        circuitBreaker.recordSuccess(probe);
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void resetCloses() {
+        CircuitBreaker circuitBreaker = circuitBreaker(1);
+        open(circuitBreaker);
+        circuitBreaker.reset();
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertEquals(Permit.NORMAL, circuitBreaker.tryAcquire());
+    }
+}
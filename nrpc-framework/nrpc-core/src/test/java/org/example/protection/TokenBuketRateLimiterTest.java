@@ -0,0 +1,58 @@
+package org.example.protection;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author xiaonaol
+ * @date 2025/2/10
+ **/
+public class TokenBuketRateLimiterTest {
+
+    @Test
+    public void allowsBurstUpToCapacity() {
+        // 速率很低，测试期间不会补充令牌
+        RateLimiter rateLimiter = new TokenBuketRateLimiter(5, 0.001);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.allowRequest());
+        }
+        assertFalse(rateLimiter.allowRequest());
+        assertFalse(rateLimiter.allowRequest());
+    }
+
+    @Test
+    public void refillsOverTime() throws InterruptedException {
+        RateLimiter rateLimiter = new TokenBuketRateLimiter(1, 100);
+        assertTrue(rateLimiter.allowRequest());
+        assertFalse(rateLimiter.allowRequest());
+        Thread.sleep(50);
+        assertTrue(rateLimiter.allowRequest());
+    }
+
+    @Test
+    public void idleOnlyAfterBucketIsFullAgain() {
+        RateLimiter rateLimiter = new TokenBuketRateLimiter(2, 0.001);
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        long now = System.nanoTime();
+        assertTrue(rateLimiter.isIdle(now + TimeUnit.SECONDS.toNanos(1), idleNanos));
+
+        assertTrue(rateLimiter.allowRequest());
+        // 令牌要1000秒才能补回来
+        assertFalse(rateLimiter.isIdle(now + TimeUnit.SECONDS.toNanos(1), idleNanos));
+        assertTrue(rateLimiter.isIdle(now + TimeUnit.SECONDS.toNanos(2000), idleNanos));
+    }
+
+    @Test
+    public void customLimiterIsNeverIdle() {
+        RateLimiter rateLimiter = () -> true;
+        assertFalse(rateLimiter.isIdle(System.nanoTime(), 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveRate() {
+        new TokenBuketRateLimiter(1, 0);
+    }
+}
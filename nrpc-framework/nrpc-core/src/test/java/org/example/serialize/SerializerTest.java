@@ -0,0 +1,84 @@
+package org.example.serialize;
+
+import org.example.transport.message.RequestPayload;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author xiaonaol
+ * @date 2025/2/10
+ **/
+public class SerializerTest {
+
+    private static final String[] TYPES = {"jdk", "hessian", "binary"};
+
+    private static RequestPayload payload() {
+        List<Object> list = new ArrayList<>(Arrays.asList("a", 1, 2L));
+        Map<String, Object> map = new HashMap<>();
+        map.put("price", new BigDecimal("12.50"));
+        map.put("tags", new ArrayList<>(Arrays.asList("x", "y")));
+        return RequestPayload.builder()
+                .interfaceName("org.example.HelloNrpc")
+                .methodName("sayHi")
+                .parametersType(new Class<?>[]{String.class, int.class, List.class, Map.class})
+                .parametersValue(new Object[]{"你好", 42, list, map})
+                .returnType(String.class)
+                .build();
+    }
+
+    @Test
+    public void bytesRoundTrip() {
+        for (String type : TYPES) {
+            Serializer serializer = SerializerFactory.getSerializer(type).getImpl();
+            RequestPayload expected = payload();
+            RequestPayload actual = serializer.deserialize(serializer.serialize(expected), RequestPayload.class);
+            assertPayloadEquals(type, expected, actual);
+        }
+    }
+
+    @Test
+    public void streamRoundTrip() throws Exception {
+        for (String type : TYPES) {
+            Serializer serializer = SerializerFactory.getSerializer(type).getImpl();
+            RequestPayload expected = payload();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.serialize(expected, out);
+            RequestPayload actual = serializer.deserialize(new ByteArrayInputStream(out.toByteArray()), RequestPayload.class);
+            assertPayloadEquals(type, expected, actual);
+        }
+    }
+
+    @Test
+    public void hessianRecoversAfterCorruptInput() {
+        Serializer serializer = SerializerFactory.getSerializer("hessian").getImpl();
+        byte[] valid = serializer.serialize("hello");
+        // 截断在列表中间，读取失败时输入流里还残留着已经预读的数据
+        byte[] corrupt = Arrays.copyOf(serializer.serialize(new ArrayList<>(Arrays.asList("abc", 1, 2L, "xyz"))), 6);
+        try {
+            serializer.deserialize(corrupt, Object.class);
+            fail("截断的报文应该反序列化失败");
+        } catch (RuntimeException expected) {
+            // 复用的输入流不能残留上一次的数据
+        }
+        assertEquals("hello", serializer.deserialize(valid, String.class));
+        assertEquals("hello", serializer.deserialize(valid, String.class));
+    }
+
+    private static void assertPayloadEquals(String type, RequestPayload expected, RequestPayload actual) {
+        assertEquals(type, expected.getInterfaceName(), actual.getInterfaceName());
+        assertEquals(type, expected.getMethodName(), actual.getMethodName());
+        assertArrayEquals(type, expected.getParametersType(), actual.getParametersType());
+        assertArrayEquals(type, expected.getParametersValue(), actual.getParametersValue());
+        assertEquals(type, expected.getReturnType(), actual.getReturnType());
+    }
+}